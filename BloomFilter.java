@@ -0,0 +1,78 @@
+import java.util.Arrays;
+
+// Bloom filter over 64-bit keys: a bit array and k probes derived from one mixed hash by
+// double hashing. mightContain() never misses an added key and is wrong about an absent one
+// with probability about (1 - e^(-kn/m))^k; sized by forKeys() that is about 1% at the
+// expected count. Callers hash their own keys into a long (see MessageCodec's packed fields).
+final class BloomFilter {
+    static final int BITS_PER_KEY = 10;
+    static final int HASHES = 7;
+
+    private final long[] words;
+    private final int hashes;
+
+    BloomFilter(int bits, int hashes) {
+        this(new long[Math.max(1, (bits + 63) >>> 6)], hashes);
+    }
+
+    // Wraps words written by words(), e.g. read back from a file.
+    BloomFilter(long[] words, int hashes) {
+        if (hashes < 1) throw new IllegalArgumentException("hashes must be positive");
+        this.words = words;
+        this.hashes = hashes;
+    }
+
+    static BloomFilter forKeys(int expectedKeys) {
+        return new BloomFilter((int) Math.min(Integer.MAX_VALUE - 63, (long) Math.max(64, expectedKeys) * BITS_PER_KEY), HASHES);
+    }
+
+    void add(long key) {
+        long h = mix(key);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        long bits = (long) words.length << 6;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(long key) {
+        long h = mix(key);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        long bits = (long) words.length << 6;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    // SplitMix64 finalizer: packed fields are far from uniform, the probes need them to be.
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // 64-bit FNV-1a of a string, for keys that have no packed form.
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
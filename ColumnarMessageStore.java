@@ -0,0 +1,223 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+// Struct-of-arrays message store: one primitive column per packed Message field plus the
+// UTF-8 text, with primitive hash indexes on ID and hash. The recipient column holds
+// RecipientDictionary codes, which also carry the per-recipient row lists and counts.
+// Message objects are only materialized for the rows a caller asks for. Rows whose fields
+// did not pack (see Message.verbatim) are kept as Message objects on the side.
+// Deleted rows are tombstoned in a LiveRows, so row numbers never move.
+final class ColumnarMessageStore implements MessageStore {
+    private static final int INITIAL_ROWS = 1024;
+
+    private long[] ids = new long[INITIAL_ROWS];
+    private int[] recipients = new int[INITIAL_ROWS];
+    private long[] timestamps = new long[INITIAL_ROWS];
+    private long[] hashes = new long[INITIAL_ROWS];
+    private byte[][] texts = new byte[INITIAL_ROWS][];
+    private final LiveRows live = new LiveRows();
+    private boolean timeOrdered = true;
+    private long maxTimestamp = Long.MIN_VALUE;
+
+    private final LongRowIndex rowById = new LongRowIndex(INITIAL_ROWS);
+    private final LongRowIndex rowByHash = new LongRowIndex(INITIAL_ROWS);
+    private final RecipientDictionary dictionary = new RecipientDictionary(INITIAL_ROWS);
+    private final Map<Integer, Message> irregular = new HashMap<>();
+
+    @Override
+    public synchronized void add(Message m) {
+        if (live.rows() == ids.length) grow();
+        int row = live.add();
+        texts[row] = m.textBytes();
+        if (m.verbatim() != null) {
+            irregular.put(row, m);
+            ids[row] = timestamps[row] = hashes[row] = MessageCodec.NONE;
+            recipients[row] = RecipientDictionary.UNKNOWN;
+            return;
+        }
+        ids[row] = m.idBits();
+        timestamps[row] = m.timestampBits();
+        hashes[row] = m.hashBits();
+        if (timestamps[row] < maxTimestamp) timeOrdered = false;
+        maxTimestamp = Math.max(maxTimestamp, timestamps[row]);
+        rowById.put(ids[row], row);
+        rowByHash.put(hashes[row], row);
+        recipients[row] = dictionary.add(m.recipientBits(), row);
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        recipients = Arrays.copyOf(recipients, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+    }
+
+    @Override
+    public synchronized boolean remove(Message m) {
+        int row = rowOf(m);
+        if (row < 0) return false;
+        live.delete(row);
+        texts[row] = null;
+        if (irregular.remove(row) == null) {
+            rowById.remove(ids[row], row);
+            rowByHash.remove(hashes[row], row);
+            dictionary.removed(recipients[row]);
+        }
+        return true;
+    }
+
+    private int rowOf(Message m) {
+        long hash = MessageCodec.packHash(m.getMessageHash());
+        if (hash != MessageCodec.NONE) {
+            long id = MessageCodec.packId(m.getMessageID());
+            int row = rowByHash.find(hash, r -> ids[r] == id);
+            if (row >= 0) return row;
+        }
+        for (Map.Entry<Integer, Message> e : irregular.entrySet()) {
+            Message stored = e.getValue();
+            if (Objects.equals(stored.getMessageHash(), m.getMessageHash())
+                    && Objects.equals(stored.getMessageID(), m.getMessageID())) {
+                return e.getKey();
+            }
+        }
+        return -1;
+    }
+
+    private Message materialize(int row) {
+        Message m = irregular.get(row);
+        if (m != null) return m;
+        return new Message(ids[row], dictionary.recipient(recipients[row]), timestamps[row], hashes[row], texts[row], null);
+    }
+
+    @Override
+    public synchronized int size() {
+        return live.live();
+    }
+
+    @Override
+    public synchronized List<Message> page(int offset, int limit) {
+        List<Message> out = new ArrayList<>(Math.max(0, Math.min(limit, live.live() - offset)));
+        for (int row = live.nthLive(offset); row < live.rows() && out.size() < limit; row = live.nextLive(row + 1)) {
+            out.add(materialize(row));
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized Message findById(String messageID) {
+        long id = MessageCodec.packId(messageID);
+        if (id != MessageCodec.NONE) {
+            int row = rowById.get(id);
+            if (row >= 0) return materialize(row);
+        }
+        for (Message m : irregular.values()) {
+            if (m.getMessageID() != null && m.getMessageID().equals(messageID)) return m;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Message findByHash(String messageHash) {
+        long hash = MessageCodec.packHash(messageHash);
+        if (hash != MessageCodec.NONE) {
+            int row = rowByHash.get(hash);
+            if (row >= 0) return materialize(row);
+        }
+        for (Message m : irregular.values()) {
+            if (m.getMessageHash() != null && m.getMessageHash().equals(messageHash)) return m;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<Message> findByRecipient(String recipient) {
+        List<Message> out = new ArrayList<>();
+        dictionary.forEachRow(dictionary.codeOf(recipient), row -> {
+            if (live.isLive(row)) out.add(materialize(row));
+        });
+        for (Message m : irregular.values()) {
+            if (recipient != null && recipient.equals(m.getRecipient())) out.add(m);
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized int countByRecipient(String recipient) {
+        int count = dictionary.liveCount(dictionary.codeOf(recipient));
+        for (Message m : irregular.values()) {
+            if (recipient != null && recipient.equals(m.getRecipient())) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized List<Message> findBetween(LocalDateTime from, LocalDateTime to) {
+        long lo = MessageCodec.packDateTime(from), hi = MessageCodec.packDateTime(to);
+        List<Message> out = new ArrayList<>();
+        int rows = live.rows();
+        if (timeOrdered) {
+            for (int row = firstRowAtOrAfter(lo); row < rows; row++) {
+                long t = timestamps[row];
+                if (t == MessageCodec.NONE) continue;
+                if (t > hi) break;
+                if (live.isLive(row)) out.add(materialize(row));
+            }
+        } else {
+            List<Integer> matches = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                long t = timestamps[row];
+                if (t != MessageCodec.NONE && t >= lo && t <= hi && live.isLive(row)) matches.add(row);
+            }
+            matches.sort((a, b) -> Long.compare(timestamps[a], timestamps[b]));
+            for (int row : matches) out.add(materialize(row));
+        }
+        return out;
+    }
+
+    // Binary search over the timestamp column; irregular rows (NONE) are stepped over.
+    private int firstRowAtOrAfter(long t) {
+        int lo = 0, hi = live.rows();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int probe = mid;
+            while (probe < hi && timestamps[probe] == MessageCodec.NONE) probe++;
+            if (probe == hi) {
+                hi = mid;
+            } else if (timestamps[probe] < t) {
+                lo = probe + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public Iterator<Message> iterator() {
+        return new Iterator<Message>() {
+            private int row = live.nextLive(0);
+
+            @Override
+            public boolean hasNext() {
+                return row < live.rows();
+            }
+
+            @Override
+            public Message next() {
+                if (row >= live.rows()) throw new NoSuchElementException();
+                Message m = materialize(row);
+                row = live.nextLive(row + 1);
+                return m;
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarMessageStoreIT {
+
+    private ColumnarMessageStore store;
+
+    @BeforeEach
+    public void setUp() {
+        store = new ColumnarMessageStore();
+    }
+
+    /**
+     * Test of add and findById methods, of class ColumnarMessageStore: every field comes back
+     * exactly as stored, including old zero-padded IDs and leading zeros in recipients.
+     */
+    @Test
+    public void testRoundTripsPersistedFields() {
+        Message old = Message.restore("0098171204", "+27020470117", "Hi, How are you holding up?",
+                "2f432aa5fc60", "2025-06-17", "00:48:12");
+        store.add(old);
+        Message found = store.findById("0098171204");
+        assertEquals("0098171204", found.getMessageID());
+        assertEquals("+27020470117", found.getRecipient());
+        assertEquals("Hi, How are you holding up?", found.getMessageText());
+        assertEquals("2f432aa5fc60", found.getMessageHash());
+        assertEquals("2025-06-17", found.getDate());
+        assertEquals("00:48:12", found.getTime());
+    }
+
+    /**
+     * Test of add method, of class ColumnarMessageStore, with fields that cannot be packed.
+     */
+    @Test
+    public void testKeepsIrregularFieldsVerbatim() {
+        store.add(Message.restore("abc", "0831234567", "odd", "HASH_ERR", "17 June", null));
+        Message found = store.findById("abc");
+        assertEquals("0831234567", found.getRecipient());
+        assertEquals("HASH_ERR", found.getMessageHash());
+        assertEquals("17 June", found.getDate());
+        assertNull(found.getTime());
+        assertEquals(1, store.findByRecipient("0831234567").size());
+    }
+
+    /**
+     * Test of remove method, of class ColumnarMessageStore.
+     */
+    @Test
+    public void testRemoveHidesRowEverywhere() {
+        Message a = new Message("+27831234567", "Where are you? You are late!");
+        Message b = new Message("+27831234567", "Yohoooo, I am at your gate.");
+        store.add(a);
+        store.add(b);
+        assertTrue(store.remove(a));
+        assertFalse(store.remove(a));
+        assertEquals(1, store.size());
+        assertNull(store.findById(a.getMessageID()));
+        assertNull(store.findByHash(a.getMessageHash()));
+        assertEquals(1, store.findByRecipient("+27831234567").size());
+        assertEquals(b.getMessageID(), store.page(0, 10).get(0).getMessageID());
+        List<String> ids = new ArrayList<>();
+        for (Message m : store) ids.add(m.getMessageID());
+        assertEquals(List.of(b.getMessageID()), ids);
+    }
+
+    /**
+     * Test of countByRecipient method, of class ColumnarMessageStore, across removes and irregular rows.
+     */
+    @Test
+    public void testCountByRecipient() {
+        Message a = new Message("+27831234567", "Where are you? You are late!");
+        store.add(a);
+        store.add(new Message("+27831234567", "Yohoooo, I am at your gate."));
+        store.add(new Message("+27838884567", "It is dinner time!"));
+        store.add(Message.restore("abc", "0831234567", "odd", "HASH_ERR", "17 June", null));
+        assertEquals(2, store.countByRecipient("+27831234567"));
+        assertEquals(1, store.countByRecipient("+27838884567"));
+        assertEquals(1, store.countByRecipient("0831234567"));
+        assertEquals(0, store.countByRecipient("+27000000000"));
+        store.remove(a);
+        assertEquals(1, store.countByRecipient("+27831234567"));
+    }
+
+    /**
+     * Test of findBetween method, of class ColumnarMessageStore, with rows out of time order.
+     */
+    @Test
+    public void testFindBetween() {
+        store.add(Message.restore("0000000003", "+27831234567", "c", "00000000000c", "2025-06-17", "12:00:00"));
+        store.add(Message.restore("0000000001", "+27831234567", "a", "00000000000a", "2025-06-17", "10:00:00"));
+        store.add(Message.restore("0000000002", "+27831234567", "b", "00000000000b", "2025-06-17", "11:00:00"));
+        List<Message> found = store.findBetween(LocalDateTime.of(2025, 6, 17, 10, 30), LocalDateTime.of(2025, 6, 17, 12, 0));
+        assertEquals(2, found.size());
+        assertEquals("b", found.get(0).getMessageText());
+        assertEquals("c", found.get(1).getMessageText());
+    }
+
+    /**
+     * Test of page method, of class ColumnarMessageStore, after deletes spread over many rows:
+     * pages and iteration skip the removed rows and keep the rest in order.
+     */
+    @Test
+    public void testPageAfterDeletes() {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) batch.add(new Message("+27831234567", "Message " + i));
+        batch.forEach(store::add);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (i % 3 == 0) assertTrue(store.remove(batch.get(i)));
+            else expected.add(batch.get(i).getMessageText());
+        }
+        assertEquals(expected.size(), store.size());
+        assertEquals(expected.subList(2000, 2100), texts(store.page(2000, 100)));
+        assertEquals(expected.subList(expected.size() - 10, expected.size()), texts(store.page(expected.size() - 10, 100)));
+        assertTrue(store.page(expected.size(), 100).isEmpty());
+        assertEquals(expected, texts(store));
+    }
+
+    /**
+     * Test of findById, findByHash and remove methods, of class ColumnarMessageStore, with
+     * legacy messages that share an ID or a hash: each stays findable and removable on its own.
+     */
+    @Test
+    public void testDuplicateKeys() {
+        Message a = Message.restore("0000000001", "+27831234567", "A", "00000000000a", "2024-01-01", "10:00:00");
+        Message b = Message.restore("0000000001", "+27831234567", "B", "00000000000b", "2024-01-01", "10:00:01");
+        Message c = Message.restore("0000000002", "+27831234567", "C", "00000000000b", "2024-01-01", "10:00:02");
+        store.add(a);
+        store.add(b);
+        store.add(c);
+        assertEquals("A", store.findById("0000000001").getMessageText());
+        assertEquals("B", store.findByHash("00000000000b").getMessageText());
+        assertEquals("C", store.findById("0000000002").getMessageText());
+        assertTrue(store.remove(b));
+        assertFalse(store.remove(b));
+        assertEquals("A", store.findById("0000000001").getMessageText());
+        assertEquals("C", store.findByHash("00000000000b").getMessageText());
+        assertTrue(store.remove(a));
+        assertNull(store.findById("0000000001"));
+        assertEquals("C", store.findById("0000000002").getMessageText());
+        assertTrue(store.remove(c));
+        assertTrue(store.isEmpty());
+        assertNull(store.findByHash("00000000000b"));
+    }
+
+    private static List<String> texts(Iterable<Message> all) {
+        List<String> found = new ArrayList<>();
+        for (Message m : all) found.add(m.getMessageText());
+        return found;
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Deliveries that are scheduled but not done yet, kept on disk so that a restart schedules
+// them again; DeliveryScheduler itself only holds them in memory. The file is a log of
+// "S<TAB>sendAt<TAB>messageHash" lines, appended before the messages are stored, and
+// "D<TAB>messageHash" lines once a message has been delivered or given up on.
+//
+// A line without its newline is the tail of an interrupted write and is ignored. The log is
+// rewritten with just the pending deliveries at load, and whenever it has grown to twice
+// their number (and at least compactThreshold lines).
+final class DeliveryOutbox implements Closeable {
+    private static final int SYNC_EVERY_RECORDS = 64;
+    private static final long SYNC_EVERY_MILLIS = 1000;
+
+    private final Path file;
+    private final int compactThreshold;
+    private final Map<String, Long> pending = new LinkedHashMap<>();
+    private FileChannel channel;
+    private int records = 0;
+    private int unsyncedRecords = 0;
+    private long lastSync = System.currentTimeMillis();
+
+    DeliveryOutbox(Path file, int compactThreshold) {
+        this.file = file;
+        this.compactThreshold = compactThreshold;
+    }
+
+    // Reads the log and passes each pending delivery whose message lookup still finds to
+    // schedule, with its send-at time; deliveries of messages deleted since are dropped.
+    synchronized void load(Function<String, Message> lookup, BiConsumer<Message, Long> schedule) throws IOException {
+        pending.clear();
+        if (Files.exists(file)) {
+            String log = Files.readString(file, StandardCharsets.UTF_8);
+            int end = log.lastIndexOf('\n') + 1;
+            for (String line : log.substring(0, end).split("\n")) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3 && fields[0].equals("S")) {
+                    try {
+                        pending.put(fields[2], Long.parseLong(fields[1]));
+                    } catch (NumberFormatException e) {
+                        // A damaged line; its message is not delivered again.
+                    }
+                } else if (fields.length == 2 && fields[0].equals("D")) {
+                    pending.remove(fields[1]);
+                }
+            }
+        }
+        for (Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> e = it.next();
+            Message m = lookup.apply(e.getKey());
+            if (m == null) it.remove();
+            else schedule.accept(m, e.getValue());
+        }
+        rewrite();
+    }
+
+    // Records that batch.get(i) is to be delivered at sendAt[i].
+    synchronized void add(List<Message> batch, long[] sendAt) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            String hash = batch.get(i).getMessageHash();
+            pending.put(hash, sendAt[i]);
+            sb.append("S\t").append(sendAt[i]).append('\t').append(hash).append('\n');
+        }
+        write(sb, batch.size());
+    }
+
+    // Records that the messages no longer need delivering.
+    synchronized void remove(List<Message> batch) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (Message m : batch) {
+            String hash = m.getMessageHash();
+            if (pending.remove(hash) != null) {
+                sb.append("D\t").append(hash).append('\n');
+                count++;
+            }
+        }
+        if (count == 0) return;
+        write(sb, count);
+        if (records >= Math.max(compactThreshold, 2 * pending.size())) rewrite();
+    }
+
+    synchronized int pending() {
+        return pending.size();
+    }
+
+    private void write(CharSequence lines, int count) throws IOException {
+        if (channel == null) throw new IOException("Outbox " + file + " is not open");
+        ByteBuffer buf = StandardCharsets.UTF_8.encode(lines.toString());
+        while (buf.hasRemaining()) channel.write(buf);
+        records += count;
+        unsyncedRecords += count;
+        if (unsyncedRecords >= SYNC_EVERY_RECORDS || System.currentTimeMillis() - lastSync >= SYNC_EVERY_MILLIS) {
+            sync();
+        }
+    }
+
+    synchronized void sync() throws IOException {
+        if (unsyncedRecords == 0 || channel == null) return;
+        channel.force(false);
+        unsyncedRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    private void rewrite() throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+        List<String> lines = new ArrayList<>(pending.size());
+        for (Map.Entry<String, Long> e : pending.entrySet()) lines.add("S\t" + e.getValue() + "\t" + e.getKey() + "\n");
+        WriteBehindPersister.writeAtomically(file, writer -> {
+            for (String line : lines) writer.write(line);
+        });
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = pending.size();
+        unsyncedRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        sync();
+        channel.close();
+        channel = null;
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeliveryOutboxIT {
+
+    @TempDir
+    Path dir;
+
+    private final Map<String, Message> stored = new HashMap<>();
+
+    private Message store(String text) {
+        Message m = new Message("+27831234567", text);
+        stored.put(m.getMessageHash(), m);
+        return m;
+    }
+
+    private Map<Message, Long> reload(Path file) throws IOException {
+        Map<Message, Long> scheduled = new LinkedHashMap<>();
+        try (DeliveryOutbox outbox = new DeliveryOutbox(file, 100)) {
+            outbox.load(stored::get, scheduled::put);
+        }
+        return scheduled;
+    }
+
+    /**
+     * Test of add, remove and load methods, of class DeliveryOutbox: what is still pending is
+     * scheduled again after a restart, at its send-at time.
+     */
+    @Test
+    public void testPendingSurviveRestart() throws IOException {
+        Path file = dir.resolve("deliveries.pending");
+        Message now = store("Now");
+        Message later = store("Later");
+        Message delivered = store("Delivered");
+        try (DeliveryOutbox outbox = new DeliveryOutbox(file, 100)) {
+            outbox.load(stored::get, (m, at) -> fail("nothing pending yet"));
+            outbox.add(List.of(now, later, delivered), new long[] {0, 1_900_000_000_000L, 0});
+            outbox.remove(List.of(delivered));
+            assertEquals(2, outbox.pending());
+        }
+        Map<Message, Long> scheduled = reload(file);
+        assertEquals(2, scheduled.size());
+        assertEquals(0L, scheduled.get(now));
+        assertEquals(1_900_000_000_000L, scheduled.get(later));
+        assertEquals(2, Files.readAllLines(file).size());
+    }
+
+    /**
+     * Test of load method, of class DeliveryOutbox: a torn last line is ignored, and deliveries
+     * of messages no longer stored are dropped.
+     */
+    @Test
+    public void testTornTailAndDeletedMessages() throws IOException {
+        Path file = dir.resolve("deliveries.pending");
+        Message kept = store("Kept");
+        Message deleted = store("Deleted");
+        Message torn = store("Torn");
+        try (DeliveryOutbox outbox = new DeliveryOutbox(file, 100)) {
+            outbox.load(stored::get, (m, at) -> { });
+            outbox.add(List.of(kept, deleted), new long[] {0, 0});
+        }
+        Files.writeString(file, "S\t0\t" + torn.getMessageHash().substring(0, 5), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        stored.remove(deleted.getMessageHash());
+        assertEquals(List.of(kept), List.copyOf(reload(file).keySet()));
+        assertEquals(List.of("S\t0\t" + kept.getMessageHash()), Files.readAllLines(file));
+    }
+
+    /**
+     * Test of remove method, of class DeliveryOutbox: the log is rewritten once done entries pile up.
+     */
+    @Test
+    public void testCompacts() throws IOException {
+        Path file = dir.resolve("deliveries.pending");
+        Message pending = store("Pending");
+        try (DeliveryOutbox outbox = new DeliveryOutbox(file, 100)) {
+            outbox.load(stored::get, (m, at) -> { });
+            outbox.add(List.of(pending), new long[] {0});
+            for (int i = 0; i < 500; i++) {
+                Message m = store("Sent " + i);
+                outbox.add(List.of(m), new long[] {0});
+                outbox.remove(List.of(m));
+            }
+            assertTrue(Files.readAllLines(file).size() < 100);
+        }
+        assertEquals(List.of(pending), List.copyOf(reload(file).keySet()));
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// Deferred delivery: sent messages wait in a TimingWheel until their send-at time, then go
+// to the Sender in batches of at most maxBatch. Messages the sender reports as failed (or a
+// whole batch, if it throws) are scheduled again after an exponential backoff with jitter,
+// and handed to onGiveUp after maxAttempts.
+//
+// start() runs delivery on a daemon thread that sleeps until the next pending tick; without it,
+// runDue() delivers whatever is due by the clock, which is how the tests drive it. Pending
+// deliveries are held in memory only; DeliveryOutbox keeps them across restarts.
+final class DeliveryScheduler implements Closeable {
+    interface Sender {
+        // Delivers a batch and returns the messages that did not go through (empty if all did).
+        List<Message> deliver(List<Message> batch) throws IOException;
+    }
+
+    private static final class Delivery {
+        final Message message;
+        int attempts;
+
+        Delivery(Message message) {
+            this.message = message;
+        }
+    }
+
+    private final Sender sender;
+    private final Consumer<Message> onGiveUp;
+    private final LongSupplier clock;
+    private final TimingWheel<Delivery> wheel;
+    private final int maxBatch;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Object deliveryLock = new Object();
+    private Thread thread;
+    private boolean closed;
+
+    DeliveryScheduler(Sender sender, Consumer<Message> onGiveUp, LongSupplier clock, long tickMillis,
+            int maxBatch, int maxAttempts, long backoffMillis, long maxBackoffMillis) {
+        if (maxBatch < 1 || maxAttempts < 1 || backoffMillis < 1 || maxBackoffMillis < backoffMillis) {
+            throw new IllegalArgumentException("maxBatch, maxAttempts and backoffMillis must be positive, maxBackoffMillis at least backoffMillis");
+        }
+        this.sender = sender;
+        this.onGiveUp = onGiveUp;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(tickMillis, clock.getAsLong(), 1024);
+        this.maxBatch = maxBatch;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    // Queues m for delivery at atMillis (epoch millis); a time already past means the next tick.
+    void schedule(Message m, long atMillis) {
+        schedule(new Delivery(m), atMillis);
+    }
+
+    void scheduleAll(List<Message> batch, long atMillis) {
+        synchronized (this) {
+            for (Message m : batch) wheel.add(new Delivery(m), atMillis);
+            notifyAll();
+        }
+    }
+
+    private synchronized void schedule(Delivery d, long atMillis) {
+        wheel.add(d, atMillis);
+        notifyAll();
+    }
+
+    synchronized int pending() {
+        return wheel.size();
+    }
+
+    long delivered() { return delivered.sum(); }
+    long retried() { return retried.sum(); }
+    long failed() { return failed.sum(); }
+
+    // Delivers everything due by the clock; returns how many messages went through.
+    int runDue() {
+        synchronized (deliveryLock) {
+            List<Delivery> due = new ArrayList<>();
+            synchronized (this) {
+                wheel.advance(clock.getAsLong(), due::add);
+            }
+            int sent = 0;
+            for (int from = 0; from < due.size(); from += maxBatch) {
+                sent += deliver(due.subList(from, Math.min(from + maxBatch, due.size())));
+            }
+            return sent;
+        }
+    }
+
+    private int deliver(List<Delivery> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Delivery d : batch) {
+            d.attempts++;
+            messages.add(d.message);
+        }
+        List<Message> failures;
+        try {
+            failures = sender.deliver(messages);
+            if (failures == null) failures = Collections.emptyList();
+        } catch (IOException | RuntimeException e) {
+            failures = messages;
+        }
+        int sent = batch.size() - failures.size();
+        delivered.add(sent);
+        if (failures.isEmpty()) return sent;
+        Map<Message, Delivery> byMessage = new IdentityHashMap<>(batch.size() * 2);
+        for (Delivery d : batch) byMessage.put(d.message, d);
+        long now = clock.getAsLong();
+        for (Message m : failures) {
+            Delivery d = byMessage.get(m);
+            if (d == null) continue;
+            if (d.attempts >= maxAttempts) {
+                failed.increment();
+                giveUp(m);
+            } else {
+                retried.increment();
+                schedule(d, now + backoff(d.attempts));
+            }
+        }
+        return sent;
+    }
+
+    // A throwing callback is reported like an uncaught exception, but does not stop delivery.
+    private void giveUp(Message m) {
+        if (onGiveUp == null) return;
+        try {
+            onGiveUp.accept(m);
+        } catch (RuntimeException e) {
+            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+        }
+    }
+
+    // backoffMillis doubled per attempt up to maxBackoffMillis, then a random 50-100% of that
+    // so failures that happened together are not all retried together.
+    long backoff(int attempts) {
+        long delay = backoffMillis << Math.min(attempts - 1, 30);
+        if (delay <= 0 || delay > maxBackoffMillis) delay = maxBackoffMillis;
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this::run, "delivery-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (true) {
+            runDue();
+            synchronized (this) {
+                try {
+                    if (closed) return;
+                    // Sleep until the wheel's next non-empty tick, or until schedule() adds something
+                    // (possibly earlier) and wakes us; idle means no timeout at all.
+                    long next = wheel.nextTickMillis();
+                    if (next == Long.MAX_VALUE) {
+                        wait();
+                    } else {
+                        long delay = next - clock.getAsLong();
+                        if (delay > 0) wait(delay);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Stops the delivery thread; anything still pending is dropped.
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            t = thread;
+        }
+        if (t == null) return;
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeliverySchedulerIT {
+
+    /**
+     * Test of schedule and runDue methods, of class DeliveryScheduler: messages go out at their time, in batches.
+     */
+    @Test
+    public void testDeliversWhenDue() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        List<Integer> batchSizes = new ArrayList<>();
+        DeliveryScheduler scheduler = new DeliveryScheduler(batch -> {
+            batchSizes.add(batch.size());
+            return List.of();
+        }, null, clock::get, 10, 3, 5, 100, 1000);
+        for (int i = 0; i < 7; i++) scheduler.schedule(new Message("+27831234567", "Now " + i), 0);
+        Message later = new Message("+27831234567", "Later");
+        scheduler.schedule(later, clock.get() + 60_000);
+        clock.addAndGet(10);
+        assertEquals(7, scheduler.runDue());
+        assertEquals(List.of(3, 3, 1), batchSizes);
+        clock.addAndGet(59_000);
+        assertEquals(0, scheduler.runDue());
+        assertEquals(1, scheduler.pending());
+        clock.addAndGet(1_000);
+        assertEquals(1, scheduler.runDue());
+        assertEquals(8, scheduler.delivered());
+    }
+
+    /**
+     * Test of runDue method, of class DeliveryScheduler, retrying failures with backoff and giving up after maxAttempts.
+     */
+    @Test
+    public void testRetryAndGiveUp() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        Message flaky = new Message("+27831234567", "Flaky");
+        Message dead = new Message("+27831234568", "Dead");
+        List<Message> givenUp = new ArrayList<>();
+        int[] calls = {0};
+        DeliveryScheduler scheduler = new DeliveryScheduler(batch -> {
+            calls[0]++;
+            if (calls[0] == 1) throw new IOException("gateway down");
+            List<Message> failed = new ArrayList<>();
+            for (Message m : batch) {
+                if (m == dead || (m == flaky && calls[0] < 3)) failed.add(m);
+            }
+            return failed;
+        }, givenUp::add, clock::get, 10, 10, 4, 100, 1000);
+        scheduler.schedule(flaky, 0);
+        scheduler.schedule(dead, 0);
+        clock.addAndGet(10);
+        assertEquals(0, scheduler.runDue());
+        assertEquals(2, scheduler.pending());
+        // The first retry waits 50-100ms, doubling per attempt up to 1000ms.
+        clock.addAndGet(40);
+        assertEquals(0, scheduler.runDue());
+        clock.addAndGet(70);
+        assertEquals(0, scheduler.runDue());
+        clock.addAndGet(210);
+        assertEquals(1, scheduler.runDue());
+        clock.addAndGet(410);
+        assertEquals(0, scheduler.runDue());
+        assertEquals(List.of(dead), givenUp);
+        assertEquals(0, scheduler.pending());
+        assertEquals(1, scheduler.delivered());
+        assertEquals(5, scheduler.retried());
+        assertEquals(1, scheduler.failed());
+    }
+
+    /**
+     * Test of runDue method, of class DeliveryScheduler, with an onGiveUp callback that throws.
+     */
+    @Test
+    public void testGiveUpCallbackThrows() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        List<Throwable> reported = new ArrayList<>();
+        Thread.UncaughtExceptionHandler handler = Thread.currentThread().getUncaughtExceptionHandler();
+        Thread.currentThread().setUncaughtExceptionHandler((t, e) -> reported.add(e));
+        try {
+            DeliveryScheduler scheduler = new DeliveryScheduler(batch -> batch, m -> {
+                throw new IllegalStateException("outbox gone");
+            }, clock::get, 10, 10, 1, 100, 1000);
+            scheduler.schedule(new Message("+27831234567", "First"), 0);
+            scheduler.schedule(new Message("+27831234568", "Second"), 0);
+            clock.addAndGet(10);
+            assertEquals(0, scheduler.runDue());
+            assertEquals(2, scheduler.failed());
+            assertEquals(2, reported.size());
+        } finally {
+            Thread.currentThread().setUncaughtExceptionHandler(handler);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Duplicate detection on the send path: a client retrying a send gets back the message that
+// was already sent to that recipient with that text within the last windowMillis, instead of
+// a second copy. A 64-bit fingerprint of recipient and text is checked against a ring of
+// SLICES + 1 Bloom filters, each covering windowMillis / SLICES of sends; the oldest is
+// cleared and reused as time moves on, so a filter hit means "maybe sent within the window".
+// Only a hit is looked up in the exact recent set (fingerprint to message, in send order,
+// at most recentCapacity entries and none older than the window), which confirms it by
+// recipient and text. A Bloom false positive, or a send already evicted from the recent set,
+// goes through as a new message.
+final class DuplicateFilter {
+    static final int SLICES = 4;
+
+    private static final class Entry {
+        final String recipient;
+        final String text;
+        final Message message;
+        final long sentAt;
+
+        Entry(String recipient, String text, Message message, long sentAt) {
+            this.recipient = recipient;
+            this.text = text;
+            this.message = message;
+            this.sentAt = sentAt;
+        }
+    }
+
+    private final long windowMillis;
+    private final long sliceMillis;
+    private final int recentCapacity;
+    private final LongSupplier clock;
+    private final BloomFilter[] filters = new BloomFilter[SLICES + 1];
+    // The slice number (time / sliceMillis) each filter holds; filters[n % filters.length] holds slice n.
+    private final long[] filterSlice = new long[SLICES + 1];
+    private final LinkedHashMap<Long, Entry> recent = new LinkedHashMap<>();
+    private final LongAdder suppressed = new LongAdder();
+    private final LongAdder unconfirmed = new LongAdder();
+
+    DuplicateFilter(long windowMillis, int expectedPerWindow, int recentCapacity, LongSupplier clock) {
+        if (windowMillis < SLICES || expectedPerWindow < 1 || recentCapacity < 1) {
+            throw new IllegalArgumentException("window, expected sends and recent capacity must be positive");
+        }
+        this.windowMillis = windowMillis;
+        this.sliceMillis = windowMillis / SLICES;
+        this.recentCapacity = recentCapacity;
+        this.clock = clock;
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = BloomFilter.forKeys(Math.max(1, expectedPerWindow / SLICES));
+            filterSlice[i] = Long.MIN_VALUE;
+        }
+    }
+
+    // -Dmainapp.duplicateWindowSeconds (60; 0 turns detection off, returning null),
+    // -Dmainapp.duplicateExpected (sends per window the filters are sized for) and
+    // -Dmainapp.duplicateRecent (size of the exact recent set).
+    static DuplicateFilter fromProperty() {
+        long seconds = Long.getLong("mainapp.duplicateWindowSeconds", 60);
+        if (seconds <= 0) return null;
+        return new DuplicateFilter(seconds * 1000, Integer.getInteger("mainapp.duplicateExpected", 1 << 20),
+                Integer.getInteger("mainapp.duplicateRecent", 1 << 17), System::currentTimeMillis);
+    }
+
+    // 64-bit FNV-1a over recipient, a separator and text, mixed for the filters' probes.
+    static long fingerprint(String recipient, String text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < recipient.length(); i++) {
+            h ^= recipient.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= 0xffff;
+        h *= 0x100000001b3L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return BloomFilter.mix(h);
+    }
+
+    // The message sent to recipient with text within the window, or else the one send creates,
+    // which is remembered for later retries.
+    synchronized Message sendOnce(String recipient, String text, Supplier<Message> send) {
+        long now = clock.getAsLong();
+        long slice = Math.floorDiv(now, sliceMillis);
+        BloomFilter current = advance(slice);
+        expire(now);
+        long key = fingerprint(recipient, text);
+        if (mightContain(key, slice)) {
+            Entry e = recent.get(key);
+            if (e != null && e.recipient.equals(recipient) && e.text.equals(text)) {
+                suppressed.increment();
+                return e.message;
+            }
+            unconfirmed.increment();
+        }
+        Message m = send.get();
+        current.add(key);
+        recent.remove(key);
+        recent.put(key, new Entry(recipient, text, m, now));
+        if (recent.size() > recentCapacity) {
+            Iterator<Entry> eldest = recent.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        return m;
+    }
+
+    // Clears the filter slice reuses if it still holds an older slice, and returns it.
+    private BloomFilter advance(long slice) {
+        int i = (int) Math.floorMod(slice, (long) filters.length);
+        if (filterSlice[i] != slice) {
+            filters[i].clear();
+            filterSlice[i] = slice;
+        }
+        return filters[i];
+    }
+
+    private boolean mightContain(long key, long slice) {
+        for (int i = 0; i < filters.length; i++) {
+            if (filterSlice[i] > slice - filters.length && filters[i].mightContain(key)) return true;
+        }
+        return false;
+    }
+
+    private void expire(long now) {
+        Iterator<Entry> it = recent.values().iterator();
+        while (it.hasNext() && now - it.next().sentAt > windowMillis) it.remove();
+    }
+
+    // Stops treating these messages as sent, e.g. when storing them failed and the client
+    // will retry. Their fingerprints stay in the filters; a retry is simply unconfirmed.
+    synchronized void forget(Collection<Message> messages) {
+        if (messages.isEmpty()) return;
+        Set<Message> gone = new HashSet<>(messages);
+        recent.values().removeIf(e -> gone.contains(e.message));
+    }
+
+    // Sends answered with an earlier message.
+    long suppressed() {
+        return suppressed.sum();
+    }
+
+    // Filter hits the recent set did not confirm: false positives, or sends evicted from it.
+    long unconfirmed() {
+        return unconfirmed.sum();
+    }
+
+    synchronized int recentSize() {
+        return recent.size();
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DuplicateFilterIT {
+
+    private final long[] clock = {1_750_000_000_000L};
+
+    /**
+     * Test of sendOnce method, of class DuplicateFilter: a repeat within the window gets the
+     * earlier message, a different recipient or text does not.
+     */
+    @Test
+    public void testSuppressesRepeatWithinWindow() {
+        DuplicateFilter filter = new DuplicateFilter(60_000, 1000, 100, () -> clock[0]);
+        Message first = filter.sendOnce("+27830000001", "Running late", () -> new Message("+27830000001", "Running late"));
+        clock[0] += 30_000;
+        assertSame(first, filter.sendOnce("+27830000001", "Running late", () -> fail("sent twice")));
+        assertNotSame(first, filter.sendOnce("+27830000002", "Running late", () -> new Message("+27830000002", "Running late")));
+        assertNotSame(first, filter.sendOnce("+27830000001", "Running late!", () -> new Message("+27830000001", "Running late!")));
+        assertEquals(1, filter.suppressed());
+        clock[0] += 31_000;
+        Message again = filter.sendOnce("+27830000001", "Running late", () -> new Message("+27830000001", "Running late"));
+        assertNotSame(first, again);
+        assertEquals(1, filter.suppressed());
+    }
+
+    /**
+     * Test of sendOnce and forget methods, of class DuplicateFilter: messages that failed to
+     * store are sent again on retry, and the recent set stays within its capacity.
+     */
+    @Test
+    public void testForgetAndCapacity() {
+        DuplicateFilter filter = new DuplicateFilter(60_000, 1000, 100, () -> clock[0]);
+        Message lost = filter.sendOnce("+27830000001", "Call me", () -> new Message("+27830000001", "Call me"));
+        filter.forget(List.of(lost));
+        assertNotSame(lost, filter.sendOnce("+27830000001", "Call me", () -> new Message("+27830000001", "Call me")));
+        for (int i = 0; i < 500; i++) {
+            String cell = String.format("+2783%07d", i);
+            filter.sendOnce(cell, "Hello", () -> new Message(cell, "Hello"));
+        }
+        assertEquals(100, filter.recentSize());
+        assertEquals(0, filter.suppressed());
+    }
+
+    /**
+     * Test of build method, of class MessageBatch, with a DuplicateFilter: a repeated item is
+     * answered with the first one's message and left out of sentMessages.
+     */
+    @Test
+    public void testBatchMarksDuplicates() {
+        DuplicateFilter filter = new DuplicateFilter(60_000, 1000, 100, () -> clock[0]);
+        List<MessageBatch.Result> results = MessageBatch.build(List.of(
+                new MessageBatch.Item("+27830000001", "See you soon"),
+                new MessageBatch.Item("+27830000001", "See you soon"),
+                new MessageBatch.Item("083", "See you soon")), filter);
+        assertTrue(results.get(1).isSent());
+        assertTrue(results.get(1).isDuplicate());
+        assertSame(results.get(0).getMessage(), results.get(1).getMessage());
+        assertFalse(results.get(2).isSent());
+        assertEquals(List.of(results.get(0).getMessage()), MessageBatch.sentMessages(results));
+    }
+}
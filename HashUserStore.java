@@ -0,0 +1,40 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// UserStore backed by a concurrent hash index on username: O(1) lookups and an atomic
+// register-if-absent. A side queue keeps registration order so users.json stays stable.
+final class HashUserStore implements UserStore {
+    private final ConcurrentHashMap<String, User> byUsername = new ConcurrentHashMap<>();
+    private final Queue<User> registrationOrder = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public User find(String username) {
+        return username == null ? null : byUsername.get(username);
+    }
+
+    @Override
+    public boolean registerIfAbsent(User user) {
+        if (byUsername.putIfAbsent(user.getUsername(), user) != null) return false;
+        registrationOrder.add(user);
+        return true;
+    }
+
+    @Override
+    public User authenticate(String username, String password) {
+        User u = find(username);
+        return u != null && u.getPassword().equals(password) ? u : null;
+    }
+
+    @Override
+    public int size() {
+        return byUsername.size();
+    }
+
+    @Override
+    public Collection<User> all() {
+        return Collections.unmodifiableCollection(registrationOrder);
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashUserStoreIT {
+
+    private HashUserStore store;
+
+    @BeforeEach
+    public void setUp() {
+        store = new HashUserStore();
+    }
+
+    /**
+     * Test of registerIfAbsent method, of class HashUserStore.
+     */
+    @Test
+    public void testRegisterIfAbsentRejectsDuplicateUsername() {
+        assertTrue(store.registerIfAbsent(new User("ky_1", "Passw0rd!", "+27831234567")));
+        assertFalse(store.registerIfAbsent(new User("ky_1", "Other#123", "+27839999999")));
+        assertEquals(1, store.size());
+        assertEquals("+27831234567", store.find("ky_1").getCellNumber());
+    }
+
+    /**
+     * Test of authenticate method, of class HashUserStore.
+     */
+    @Test
+    public void testAuthenticate() {
+        store.registerIfAbsent(new User("ky_1", "Passw0rd!", "+27831234567"));
+        assertNotNull(store.authenticate("ky_1", "Passw0rd!"));
+        assertNull(store.authenticate("ky_1", "wrong"));
+        assertNull(store.authenticate("nobody", "Passw0rd!"));
+        assertNull(store.authenticate(null, "Passw0rd!"));
+    }
+
+    /**
+     * Test of all method, of class HashUserStore.
+     */
+    @Test
+    public void testAllKeepsRegistrationOrder() {
+        store.registerIfAbsent(new User("c_1", "Passw0rd!", "+27831234567"));
+        store.registerIfAbsent(new User("a_1", "Passw0rd!", "+27831234567"));
+        store.registerIfAbsent(new User("b_1", "Passw0rd!", "+27831234567"));
+        List<String> names = new ArrayList<>();
+        for (User u : store.all()) names.add(u.getUsername());
+        assertEquals(List.of("c_1", "a_1", "b_1"), names);
+    }
+}
@@ -0,0 +1,123 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Message objects in slots of an array, with a MessageIndex for lookups. A removed message
+// leaves its slot empty (see LiveRows) instead of shifting the ones after it, so removal is
+// O(1), and iterators can walk the slots while other threads add and remove messages.
+final class HeapMessageStore implements MessageStore {
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int ITERATOR_CHUNK = 256;
+
+    private Message[] slots = new Message[INITIAL_SLOTS];
+    private final LiveRows live = new LiveRows();
+    private final Map<Message, Integer> slotOf = new IdentityHashMap<>();
+    private final MessageIndex index = new MessageIndex();
+
+    @Override
+    public synchronized void add(Message m) {
+        if (live.rows() == slots.length) slots = Arrays.copyOf(slots, slots.length * 2);
+        int slot = live.add();
+        slots[slot] = m;
+        slotOf.put(m, slot);
+        index.add(m);
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Message> batch) {
+        for (Message m : batch) add(m);
+    }
+
+    @Override
+    public synchronized boolean remove(Message m) {
+        Message stored = index.find(m.getMessageHash(), m.getMessageID());
+        if (stored == null) return false;
+        index.remove(stored);
+        Integer slot = slotOf.remove(stored);
+        if (slot != null) {
+            slots[slot] = null;
+            live.delete(slot);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized int size() {
+        return live.live();
+    }
+
+    @Override
+    public synchronized List<Message> page(int offset, int limit) {
+        List<Message> out = new ArrayList<>(Math.max(0, Math.min(limit, live.live() - offset)));
+        for (int slot = live.nthLive(offset); slot < live.rows() && out.size() < limit; slot = live.nextLive(slot + 1)) {
+            out.add(slots[slot]);
+        }
+        return out;
+    }
+
+    // Copies up to ITERATOR_CHUNK messages from slot on into chunk; returns the slot after the last one.
+    private synchronized int fill(int slot, List<Message> chunk) {
+        for (slot = live.nextLive(slot); slot < live.rows() && chunk.size() < ITERATOR_CHUNK; slot = live.nextLive(slot + 1)) {
+            chunk.add(slots[slot]);
+        }
+        return slot;
+    }
+
+    @Override
+    public Message findById(String messageID) {
+        return index.findById(messageID);
+    }
+
+    @Override
+    public Message findByHash(String messageHash) {
+        return index.findByHash(messageHash);
+    }
+
+    @Override
+    public List<Message> findByRecipient(String recipient) {
+        return index.findByRecipient(recipient);
+    }
+
+    @Override
+    public int countByRecipient(String recipient) {
+        return index.countByRecipient(recipient);
+    }
+
+    @Override
+    public List<Message> findBetween(LocalDateTime from, LocalDateTime to) {
+        return index.findBetween(from, to);
+    }
+
+    // Takes the lock a chunk at a time: messages added meanwhile may or may not be seen, and
+    // one removed before its chunk is read is skipped.
+    @Override
+    public Iterator<Message> iterator() {
+        return new Iterator<Message>() {
+            private final List<Message> chunk = new ArrayList<>(ITERATOR_CHUNK);
+            private int next = 0;
+            private int slot = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (next == chunk.size()) {
+                    chunk.clear();
+                    next = 0;
+                    slot = fill(slot, chunk);
+                }
+                return next < chunk.size();
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return chunk.get(next++);
+            }
+        };
+    }
+}
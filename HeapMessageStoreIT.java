@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeapMessageStoreIT {
+
+    private static List<Message> messages(int n) {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < n; i++) batch.add(new Message("+27831234567", "Message " + i));
+        return batch;
+    }
+
+    private static List<String> texts(Iterable<Message> all) {
+        List<String> found = new ArrayList<>();
+        for (Message m : all) found.add(m.getMessageText());
+        return found;
+    }
+
+    /**
+     * Test of remove and page methods, of class HeapMessageStore: removed messages leave no
+     * gap in paging, iteration or size, and the rest keep their order.
+     */
+    @Test
+    public void testRemoveKeepsOrder() {
+        HeapMessageStore store = new HeapMessageStore();
+        List<Message> batch = messages(5000);
+        store.addAll(batch);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (i % 3 == 0) assertTrue(store.remove(batch.get(i)));
+            else expected.add(batch.get(i).getMessageText());
+        }
+        assertFalse(store.remove(batch.get(0)));
+        assertEquals(expected.size(), store.size());
+        assertEquals(expected, texts(store));
+        assertEquals(expected.subList(2000, 2100), texts(store.page(2000, 100)));
+        assertEquals(expected.subList(expected.size() - 10, expected.size()), texts(store.page(expected.size() - 10, 100)));
+        assertTrue(store.page(expected.size(), 100).isEmpty());
+        assertNull(store.findByHash(batch.get(0).getMessageHash()));
+    }
+
+    /**
+     * Test of remove method, of class HeapMessageStore, with legacy messages that share an ID.
+     */
+    @Test
+    public void testRemoveDuplicateIds() {
+        HeapMessageStore store = new HeapMessageStore();
+        Message a = Message.restore("0000000001", "+27831234567", "A", "00:0:AA", "2024-01-01", "10:00:00");
+        Message b = Message.restore("0000000001", "+27831234567", "B", "00:0:BB", "2024-01-01", "10:00:00");
+        store.add(a);
+        store.add(b);
+        assertEquals(2, store.size());
+        assertTrue(store.remove(Message.restore("0000000001", "+27831234567", "B", "00:0:BB", "2024-01-01", "10:00:00")));
+        assertEquals(List.of("A"), texts(store));
+        assertTrue(store.remove(a));
+        assertTrue(store.isEmpty());
+    }
+
+    /**
+     * Test of iterator method, of class HeapMessageStore: iterating while another thread adds
+     * and removes does not fail, and sees every message that stayed in the store throughout.
+     */
+    @Test
+    public void testIterateWhileAdding() throws InterruptedException {
+        HeapMessageStore store = new HeapMessageStore();
+        List<Message> kept = messages(10_000);
+        store.addAll(kept);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            while (!done.get()) {
+                List<Message> more = messages(100);
+                store.addAll(more);
+                store.remove(more.get(50));
+            }
+        });
+        writer.start();
+        try {
+            for (int pass = 0; pass < 5; pass++) {
+                List<String> seen = texts(store);
+                assertEquals(texts(kept), seen.subList(0, kept.size()));
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+}
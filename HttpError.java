@@ -0,0 +1,11 @@
+// An error status and message from a handler of MessageServer or ShardServer, sent back as
+// {"error": message} with that status.
+final class HttpError extends Exception {
+    private static final long serialVersionUID = 1L;
+    final int status;
+
+    HttpError(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Bulk message ingestion in stages: decode (reader thread) -> validate/build/hash (workers)
+// -> persist (committer thread). Chunks are committed strictly in input order, and the
+// bounded in-flight queue makes the reader wait when persistence falls behind.
+final class IngestPipeline {
+    enum Mode { SINGLE, PARALLEL }
+
+    interface Sink {
+        // Called with consecutive chunks of results in input order.
+        void commit(List<MessageBatch.Item> items, List<MessageBatch.Result> results) throws IOException;
+    }
+
+    // The per-item work done on the workers; MessageBatch.build unless a test stands in.
+    interface Builder {
+        MessageBatch.Result build(int index, MessageBatch.Item item);
+    }
+
+    static final class Stats {
+        final long lines;
+        final long sent;
+        final long rejected;
+        final long elapsedNanos;
+
+        private Stats(long lines, long sent, long rejected, long elapsedNanos) {
+            this.lines = lines;
+            this.sent = sent;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double messagesPerSecond() {
+            return elapsedNanos <= 0 ? 0 : sent * 1e9 / elapsedNanos;
+        }
+    }
+
+    private static final class Chunk {
+        final List<MessageBatch.Item> items;
+        final List<MessageBatch.Result> results;
+
+        Chunk(List<MessageBatch.Item> items, List<MessageBatch.Result> results) {
+            this.items = items;
+            this.results = results;
+        }
+    }
+
+    private static final Future<Chunk> END = new CompletableFuture<>();
+
+    private final Mode mode;
+    private final int workers;
+    private final int chunkSize;
+    private final int commitBatchSize;
+    private final Builder builder;
+
+    IngestPipeline(Mode mode, int workers, int chunkSize, int commitBatchSize) {
+        this(mode, workers, chunkSize, commitBatchSize, MessageBatch::build);
+    }
+
+    IngestPipeline(Mode mode, int workers, int chunkSize, int commitBatchSize, Builder builder) {
+        if (workers < 1 || chunkSize < 1 || commitBatchSize < 1) {
+            throw new IllegalArgumentException("workers, chunkSize and commitBatchSize must be positive");
+        }
+        this.mode = mode;
+        this.workers = mode == Mode.SINGLE ? 1 : workers;
+        this.chunkSize = chunkSize;
+        this.commitBatchSize = commitBatchSize;
+        this.builder = builder;
+    }
+
+    Stats run(BufferedReader reader, Sink sink) throws IOException {
+        long start = System.nanoTime();
+        long[] counts = mode == Mode.SINGLE ? runSingle(reader, sink) : runParallel(reader, sink);
+        return new Stats(counts[0], counts[1], counts[2], System.nanoTime() - start);
+    }
+
+    private long[] runSingle(BufferedReader reader, Sink sink) throws IOException {
+        long[] counts = new long[3];
+        long index = 0;
+        while (true) {
+            List<MessageBatch.Item> items = decode(reader, counts, commitBatchSize);
+            if (items.isEmpty()) break;
+            Chunk chunk = build(items, index);
+            index += items.size();
+            tally(chunk, counts);
+            sink.commit(chunk.items, chunk.results);
+        }
+        return counts;
+    }
+
+    private long[] runParallel(BufferedReader reader, Sink sink) throws IOException {
+        long[] counts = new long[3];
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        BlockingQueue<Future<Chunk>> inFlight = new ArrayBlockingQueue<>(workers * 4);
+        Committer committer = new Committer(inFlight, sink);
+        Thread committerThread = new Thread(committer, "ingest-committer");
+        committerThread.start();
+        try {
+            long index = 0;
+            while (committer.failure == null) {
+                List<MessageBatch.Item> items = decode(reader, counts, chunkSize);
+                if (items.isEmpty()) break;
+                long first = index;
+                index += items.size();
+                if (!enqueue(inFlight, pool.submit(() -> build(items, first)), committer, committerThread)) break;
+            }
+            enqueue(inFlight, END, committer, committerThread);
+            committerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            committerThread.interrupt();
+            throw new IOException("Ingestion interrupted", e);
+        } finally {
+            pool.shutdownNow();
+            // Only still waiting if the reader failed; it would never see END.
+            committerThread.interrupt();
+        }
+        if (committer.failure != null) throw committer.failure;
+        counts[1] = committer.sent;
+        counts[2] = committer.rejected;
+        return counts;
+    }
+
+    // Waits for room in the queue, but gives up once the committer has stopped, since nothing
+    // would take from it again.
+    private static boolean enqueue(BlockingQueue<Future<Chunk>> inFlight, Future<Chunk> chunk, Committer committer,
+            Thread committerThread) throws InterruptedException {
+        while (!inFlight.offer(chunk, 50, TimeUnit.MILLISECONDS)) {
+            if (committer.failure != null || !committerThread.isAlive()) return false;
+        }
+        return true;
+    }
+
+    // Drains completed chunks in submission order and groups them into commits of up to commitBatchSize.
+    private final class Committer implements Runnable {
+        private final BlockingQueue<Future<Chunk>> inFlight;
+        private final Sink sink;
+        volatile IOException failure;
+        long sent, rejected;
+
+        Committer(BlockingQueue<Future<Chunk>> inFlight, Sink sink) {
+            this.inFlight = inFlight;
+            this.sink = sink;
+        }
+
+        @Override
+        public void run() {
+            long[] counts = new long[3];
+            boolean finished = false;
+            try {
+                boolean done = false;
+                while (!done) {
+                    Future<Chunk> next = inFlight.take();
+                    if (next == END) break;
+                    List<MessageBatch.Item> items = new ArrayList<>();
+                    List<MessageBatch.Result> results = new ArrayList<>();
+                    add(next.get(), items, results, counts);
+                    while (results.size() < commitBatchSize) {
+                        next = inFlight.peek();
+                        if (next == END) {
+                            inFlight.poll();
+                            done = true;
+                            break;
+                        }
+                        if (next == null || !next.isDone()) break;
+                        inFlight.poll();
+                        add(next.get(), items, results, counts);
+                    }
+                    sink.commit(items, results);
+                    sent = counts[1];
+                    rejected = counts[2];
+                }
+                finished = true;
+            } catch (IOException e) {
+                failure = e;
+            } catch (UncheckedIOException e) {
+                failure = e.getCause();
+            } catch (RuntimeException e) {
+                failure = new IOException("Ingestion commit failed: " + e, e);
+            } catch (ExecutionException e) {
+                failure = new IOException("Ingestion worker failed: " + e.getCause(), e.getCause());
+            } catch (InterruptedException e) {
+                failure = new IOException("Ingestion interrupted", e);
+            } finally {
+                if (!finished && failure == null) failure = new IOException("Ingestion committer stopped");
+                if (failure != null) inFlight.clear();
+            }
+        }
+
+        private void add(Chunk chunk, List<MessageBatch.Item> items, List<MessageBatch.Result> results, long[] counts) {
+            items.addAll(chunk.items);
+            results.addAll(chunk.results);
+            tally(chunk, counts);
+        }
+    }
+
+    private static List<MessageBatch.Item> decode(BufferedReader reader, long[] counts, int max) throws IOException {
+        List<MessageBatch.Item> items = new ArrayList<>(Math.min(max, 4096));
+        String line;
+        while (items.size() < max && (line = reader.readLine()) != null) {
+            counts[0]++;
+            MessageBatch.Item item = MessageBatch.parseLine(line);
+            if (item != null) items.add(item);
+        }
+        return items;
+    }
+
+    private Chunk build(List<MessageBatch.Item> items, long firstIndex) {
+        List<MessageBatch.Result> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            results.add(builder.build((int) (firstIndex + i), items.get(i)));
+        }
+        return new Chunk(items, results);
+    }
+
+    private static void tally(Chunk chunk, long[] counts) {
+        for (MessageBatch.Result r : chunk.results) {
+            if (r.isSent()) counts[1]++;
+            else counts[2]++;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngestPipelineIT {
+
+    private static final int CHUNK = 50;
+    private static final int WORKERS = 4;
+
+    // Counts the lines handed out, to see how far the reader got.
+    private static final class CountingReader extends BufferedReader {
+        final AtomicInteger lines = new AtomicInteger();
+
+        CountingReader(int n) {
+            super(new StringReader(input(n)));
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            String line = super.readLine();
+            if (line != null) lines.incrementAndGet();
+            return line;
+        }
+    }
+
+    private static String input(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append("+27831234567\tMessage ").append(i).append('\n');
+        return sb.toString();
+    }
+
+    // Every third chunk is slow, so chunks finish out of order on the workers.
+    private static MessageBatch.Result unevenBuild(int index, MessageBatch.Item item) {
+        if (index % CHUNK == 0 && (index / CHUNK) % 3 == 0) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return MessageBatch.build(index, item);
+    }
+
+    /**
+     * Test of run method, of class IngestPipeline: with several workers finishing out of order,
+     * chunks are still committed in input order, each item with its own result.
+     */
+    @Test
+    public void testCommitsInInputOrder() throws IOException {
+        IngestPipeline pipeline = new IngestPipeline(IngestPipeline.Mode.PARALLEL, WORKERS, CHUNK, 2 * CHUNK,
+                IngestPipelineIT::unevenBuild);
+        List<Integer> committed = new ArrayList<>();
+        IngestPipeline.Stats stats = pipeline.run(new CountingReader(2000), (items, results) -> {
+            assertEquals(items.size(), results.size());
+            assertTrue(results.size() <= 2 * CHUNK);
+            for (int i = 0; i < results.size(); i++) {
+                MessageBatch.Result r = results.get(i);
+                assertEquals("Message " + r.getIndex(), items.get(i).getMessageText());
+                assertEquals(items.get(i).getMessageText(), r.getMessage().getMessageText());
+                committed.add(r.getIndex());
+            }
+        });
+        assertEquals(2000, committed.size());
+        for (int i = 0; i < committed.size(); i++) assertEquals(i, committed.get(i));
+        assertEquals(2000, stats.lines);
+        assertEquals(2000, stats.sent);
+        assertEquals(0, stats.rejected);
+    }
+
+    /**
+     * Test of run method, of class IngestPipeline: a worker that throws stops the run, nothing
+     * from its chunk on is committed, and the reader stops instead of reading the rest.
+     */
+    @Test
+    public void testWorkerFailureStopsRun() {
+        IngestPipeline pipeline = new IngestPipeline(IngestPipeline.Mode.PARALLEL, WORKERS, CHUNK, CHUNK, (index, item) -> {
+            if (index == 520) throw new IllegalStateException("hash service down");
+            return MessageBatch.build(index, item);
+        });
+        CountingReader reader = new CountingReader(100_000);
+        List<Integer> committed = new ArrayList<>();
+        IOException e = assertThrows(IOException.class, () -> pipeline.run(reader, (items, results) -> {
+            for (MessageBatch.Result r : results) committed.add(r.getIndex());
+        }));
+        assertTrue(e.getMessage().contains("hash service down"), e.getMessage());
+        assertEquals(500, committed.size());
+        assertTrue(reader.lines.get() < 100_000, "read " + reader.lines.get() + " lines");
+    }
+
+    /**
+     * Test of run method, of class IngestPipeline: a failed commit ends the run with its
+     * exception, and no later chunk is committed.
+     */
+    @Test
+    public void testSinkFailureStopsRun() {
+        for (IngestPipeline.Mode mode : IngestPipeline.Mode.values()) {
+            IngestPipeline pipeline = new IngestPipeline(mode, WORKERS, CHUNK, CHUNK);
+            AtomicInteger commits = new AtomicInteger();
+            IOException disk = new IOException("disk full");
+            IOException e = assertThrows(IOException.class, () -> pipeline.run(new CountingReader(10_000), (items, results) -> {
+                if (commits.incrementAndGet() == 3) throw disk;
+            }));
+            assertSame(disk, e, mode.name());
+            assertEquals(3, commits.get(), mode.name());
+        }
+    }
+
+    /**
+     * Test of run method, of class IngestPipeline: a sink that throws an unchecked exception,
+     * as the durable stores do, ends the run with it instead of leaving the reader blocked.
+     */
+    @Test
+    public void testUncheckedSinkFailureStopsRun() {
+        IOException disk = new IOException("segment unwritable");
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int lines : new int[] {100_000, 3 * CHUNK}) {
+                IngestPipeline pipeline = new IngestPipeline(IngestPipeline.Mode.PARALLEL, WORKERS, CHUNK, CHUNK);
+                IOException e = assertThrows(IOException.class, () -> pipeline.run(new CountingReader(lines), (items, results) -> {
+                    throw new UncheckedIOException(disk);
+                }));
+                assertSame(disk, e);
+                IngestPipeline failing = new IngestPipeline(IngestPipeline.Mode.PARALLEL, WORKERS, CHUNK, CHUNK);
+                e = assertThrows(IOException.class, () -> failing.run(new CountingReader(lines), (items, results) -> {
+                    throw new IllegalStateException("store closed");
+                }));
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        });
+    }
+
+    /**
+     * Test of run method, of class IngestPipeline: while commits are slow, the reader waits
+     * once the bounded in-flight queue is full instead of reading the whole input ahead.
+     */
+    @Test
+    public void testBackPressure() throws Exception {
+        IngestPipeline pipeline = new IngestPipeline(IngestPipeline.Mode.PARALLEL, WORKERS, CHUNK, CHUNK);
+        CountingReader reader = new CountingReader(20_000);
+        AtomicInteger aheadOfFirstCommit = new AtomicInteger();
+        AtomicInteger committed = new AtomicInteger();
+        IngestPipeline.Stats stats = pipeline.run(reader, (items, results) -> {
+            if (committed.get() == 0) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                aheadOfFirstCommit.set(reader.lines.get());
+            }
+            committed.addAndGet(results.size());
+        });
+        // The chunk being committed, a full queue of WORKERS * 4, and the one waiting to go in.
+        assertTrue(aheadOfFirstCommit.get() <= (WORKERS * 4 + 2) * CHUNK, "read " + aheadOfFirstCommit.get() + " lines");
+        assertEquals(20_000, committed.get());
+        assertEquals(20_000, stats.sent);
+    }
+}
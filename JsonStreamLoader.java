@@ -0,0 +1,66 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+// Decodes a top-level JSON array one element at a time, so only a single record
+// is materialized besides whatever the sink keeps.
+final class JsonStreamLoader {
+    static final int PROGRESS_EVERY = 10000;
+
+    interface Progress {
+        void report(long records, double recordsPerSecond, boolean done);
+    }
+
+    static final Progress NO_PROGRESS = (records, rate, done) -> { };
+
+    private JsonStreamLoader() { }
+
+    static <T> long load(Path file, Gson gson, Class<T> type, Consumer<? super T> sink, Progress progress)
+            throws IOException {
+        try (Reader reader = Files.newBufferedReader(file)) {
+            return load(reader, gson, type, sink, progress);
+        }
+    }
+
+    static <T> long load(Reader in, Gson gson, Class<T> type, Consumer<? super T> sink, Progress progress)
+            throws IOException {
+        JsonReader reader = new JsonReader(in);
+        long start = System.nanoTime();
+        long count = 0;
+        try {
+            JsonToken first = reader.peek();
+            if (first == JsonToken.END_DOCUMENT) return 0;
+            if (first == JsonToken.NULL) {
+                reader.nextNull();
+                return 0;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                T record = gson.fromJson(reader, type);
+                if (record != null) {
+                    sink.accept(record);
+                    count++;
+                }
+                if (count % PROGRESS_EVERY == 0 && count > 0) {
+                    progress.report(count, rate(count, start), false);
+                }
+            }
+            reader.endArray();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Malformed JSON after " + count + " records: " + e.getMessage(), e);
+        }
+        progress.report(count, rate(count, start), true);
+        return count;
+    }
+
+    private static double rate(long count, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : count * 1e9 / elapsed;
+    }
+}
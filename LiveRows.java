@@ -0,0 +1,63 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Which rows of an append-only table are still live, for stores that tombstone deletes so
+// row numbers never move. A live count per block of rows lets nthLive() skip whole blocks
+// instead of stepping over every live row before the one it wants. Not synchronized; the
+// owning store guards it.
+final class LiveRows {
+    private static final int BLOCK_BITS = 10;
+
+    private final BitSet deleted = new BitSet();
+    private int[] liveInBlock = new int[16];
+    private int rows = 0;
+    private int live = 0;
+
+    // Appends a live row and returns its number.
+    int add() {
+        int row = rows++;
+        int block = row >>> BLOCK_BITS;
+        if (block == liveInBlock.length) liveInBlock = Arrays.copyOf(liveInBlock, block * 2);
+        liveInBlock[block]++;
+        live++;
+        return row;
+    }
+
+    // Tombstones row; false if it was not live.
+    boolean delete(int row) {
+        if (!isLive(row)) return false;
+        deleted.set(row);
+        liveInBlock[row >>> BLOCK_BITS]--;
+        live--;
+        return true;
+    }
+
+    boolean isLive(int row) {
+        return row >= 0 && row < rows && !deleted.get(row);
+    }
+
+    // Rows ever added, live or not.
+    int rows() {
+        return rows;
+    }
+
+    int live() {
+        return live;
+    }
+
+    // The first live row at or after row, or rows() if there is none.
+    int nextLive(int row) {
+        return Math.min(deleted.nextClearBit(Math.max(row, 0)), rows);
+    }
+
+    // Number of the n-th live row, counting from 0, or rows() if there are not that many.
+    int nthLive(int n) {
+        if (n >= live) return rows;
+        if (deleted.isEmpty()) return Math.max(n, 0);
+        int block = 0;
+        while (n >= liveInBlock[block]) n -= liveInBlock[block++];
+        int row = nextLive(block << BLOCK_BITS);
+        for (; n > 0; n--) row = nextLive(row + 1);
+        return row;
+    }
+}
@@ -0,0 +1,339 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless load and soak test for the register, login and send flows. Each simulated user
+// runs on its own thread: it registers its account, then picks register (another account),
+// login or send by the configured mix until the run ends. With a rate set, every user
+// follows its own schedule and latency is measured from when an operation was due, so a
+// stalled store shows up in the percentiles instead of just slowing the schedule down.
+//
+// Afterwards the store is checked: every message reported sent is stored exactly once, no
+// ID is stored twice, the store and Message.getMessageCount() grew by the number sent,
+// and, where the target can reload its files, nothing was lost on the way to disk. Sends
+// answered with an earlier message (see DuplicateFilter) are counted, not checked.
+final class LoadGenerator {
+    static final String PASSWORD = "Load#2025";
+    private static final String[] WORDS = ("where are you late gate dinner time leaving without ok yes no "
+            + "meeting tonight tomorrow call me back please thanks see soon running home work").split(" ");
+
+    // The operations under test, and what the checks read afterwards.
+    interface Target {
+        // false if the username is taken.
+        boolean register(User user) throws IOException;
+
+        // null if the username or password is wrong.
+        User login(String username, String password);
+
+        List<MessageBatch.Result> send(List<MessageBatch.Item> items) throws IOException;
+
+        int userCount();
+
+        MessageStore messages();
+
+        // The messages as read back from disk after everything was saved; null if not supported.
+        MessageStore reload() throws IOException;
+    }
+
+    static final class Config {
+        int users = 16;
+        long durationMillis = 30_000;
+        long operations = 0;
+        int registerWeight = 1;
+        int loginWeight = 4;
+        int sendWeight = 15;
+        double ratePerSecond = 0;
+        int batchSize = 1;
+        long seed = 1;
+
+        // --users N --seconds S --operations N --mix register:login:send --rate OPS --batch N --seed N
+        // --operations alone runs until that many operations are done, however long it takes.
+        static Config parse(String[] args, int from) {
+            Config c = new Config();
+            boolean timed = false;
+            for (int i = from; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--users": c.users = Integer.parseInt(value); break;
+                    case "--seconds":
+                        c.durationMillis = Math.round(Double.parseDouble(value) * 1000);
+                        timed = true;
+                        break;
+                    case "--operations": c.operations = Long.parseLong(value); break;
+                    case "--rate": c.ratePerSecond = Double.parseDouble(value); break;
+                    case "--batch": c.batchSize = Integer.parseInt(value); break;
+                    case "--seed": c.seed = Long.parseLong(value); break;
+                    case "--mix":
+                        String[] w = value.split(":");
+                        if (w.length != 3) throw new IllegalArgumentException("--mix takes register:login:send weights");
+                        c.registerWeight = Integer.parseInt(w[0]);
+                        c.loginWeight = Integer.parseInt(w[1]);
+                        c.sendWeight = Integer.parseInt(w[2]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (c.operations > 0 && !timed) c.durationMillis = 0;
+            c.validate();
+            return c;
+        }
+
+        void validate() {
+            if (users < 1 || batchSize < 1) throw new IllegalArgumentException("users and batch must be positive");
+            if (registerWeight < 0 || loginWeight < 0 || sendWeight < 0 || registerWeight + loginWeight + sendWeight == 0) {
+                throw new IllegalArgumentException("mix weights must not be negative and not all zero");
+            }
+            if (durationMillis <= 0 && operations <= 0) throw new IllegalArgumentException("Set --seconds or --operations");
+            if (ratePerSecond < 0) throw new IllegalArgumentException("rate must not be negative");
+        }
+    }
+
+    static final class Report {
+        final Metrics.Timer register = new Metrics.Timer("load.register", false);
+        final Metrics.Timer login = new Metrics.Timer("load.login", false);
+        final Metrics.Timer send = new Metrics.Timer("load.send", false);
+        final LongAdder errors = new LongAdder();
+        final LongAdder usernameConflicts = new LongAdder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder duplicates = new LongAdder();
+        final List<String> problems = new ArrayList<>();
+        final List<String> checks = new ArrayList<>();
+        long elapsedNanos;
+        volatile String firstError;
+
+        boolean consistent() {
+            return problems.isEmpty();
+        }
+
+        void print(PrintStream out) {
+            double seconds = elapsedNanos / 1e9;
+            out.printf(Locale.ROOT, "%-9s %9s %10s %9s %9s %9s %9s%n", "operation", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+            for (Metrics.Timer t : new Metrics.Timer[] {register, login, send}) {
+                out.printf(Locale.ROOT, "%-9s %9d %10.1f %9.3f %9.3f %9.3f %9.3f%n", t.name().substring("load.".length()), t.count(),
+                        t.count() / seconds, t.percentile(0.50) / 1e6, t.percentile(0.99) / 1e6,
+                        t.percentile(0.999) / 1e6, t.percentile(1.0) / 1e6);
+            }
+            out.printf(Locale.ROOT, "%d message(s) sent in %.1f s (%.1f messages/s), %d error(s), %d username conflict(s), %d duplicate(s)%n",
+                    sent.sum(), seconds, sent.sum() / seconds, errors.sum(), usernameConflicts.sum(), duplicates.sum());
+            if (firstError != null) out.println("First error: " + firstError);
+            for (String check : checks) out.println("check " + check);
+            for (String problem : problems) out.println("FAILED " + problem);
+            out.println(consistent() ? "Consistent." : "INCONSISTENT.");
+        }
+    }
+
+    private final Target target;
+    private final Config config;
+    private final AtomicLong nextUser = new AtomicLong();
+
+    LoadGenerator(Target target, Config config) {
+        config.validate();
+        this.target = target;
+        this.config = config;
+    }
+
+    Report run() throws IOException, InterruptedException {
+        Report report = new Report();
+        MessageStore store = target.messages();
+        int storedBefore = store.size();
+        int usersBefore = target.userCount();
+        // Usernames are numbered from the current user count, which skips a previous run's.
+        nextUser.set(usersBefore);
+        int createdBefore = Message.getMessageCount();
+        AtomicLong remaining = new AtomicLong(config.operations > 0 ? config.operations : Long.MAX_VALUE);
+        long deadline = config.durationMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.durationMillis) : Long.MAX_VALUE;
+        long[] registered = new long[config.users];
+
+        ExecutorService pool = Executors.newFixedThreadPool(config.users);
+        List<Future<long[]>> users = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int u = 0; u < config.users; u++) {
+            long seed = config.seed * 1_000_003 + u;
+            int index = u;
+            users.add(pool.submit(() -> simulate(new Random(seed), remaining, deadline, report, registered, index)));
+        }
+        long[] ids = new long[0];
+        try {
+            for (Future<long[]> f : users) {
+                long[] mine = f.get();
+                int n = ids.length;
+                ids = Arrays.copyOf(ids, n + mine.length);
+                System.arraycopy(mine, 0, ids, n, mine.length);
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Simulated user failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+
+        long newUsers = Arrays.stream(registered).sum();
+        check(report, store, ids, storedBefore, createdBefore);
+        expect(report, "users registered", usersBefore + newUsers, target.userCount());
+        MessageStore reloaded = target.reload();
+        if (reloaded == null) {
+            report.checks.add("reload: not supported by this store, skipped");
+        } else {
+            expect(report, "messages after reload", store.size(), reloaded.size());
+            expect(report, "sent messages missing after reload", 0, missing(reloaded, ids));
+        }
+        return report;
+    }
+
+    // One simulated user; returns the packed IDs of the messages it sent.
+    private long[] simulate(Random random, AtomicLong remaining, long deadline, Report report, long[] registered, int index)
+            throws IOException {
+        long[] sentIds = new long[256];
+        int sentCount = 0;
+        User self = registerNew(random, report, System.nanoTime());
+        if (self == null) return new long[0];
+        registered[index]++;
+        long intervalNanos = config.ratePerSecond > 0 ? Math.round(1e9 * config.users / config.ratePerSecond) : 0;
+        long due = System.nanoTime() + (intervalNanos > 0 ? (long) (random.nextDouble() * intervalNanos) : 0);
+        int total = config.registerWeight + config.loginWeight + config.sendWeight;
+        while (remaining.getAndDecrement() > 0) {
+            if (intervalNanos > 0) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            } else {
+                due = System.nanoTime();
+            }
+            if (due >= deadline || System.nanoTime() >= deadline) break;
+            int pick = random.nextInt(total);
+            try {
+                if (pick < config.registerWeight) {
+                    if (registerNew(random, report, due) != null) registered[index]++;
+                } else if (pick < config.registerWeight + config.loginWeight) {
+                    User user = target.login(self.getUsername(), PASSWORD);
+                    report.login.record(System.nanoTime() - due, 0, 0);
+                    if (user == null) error(report, "login failed for " + self.getUsername());
+                } else {
+                    List<MessageBatch.Result> results = target.send(items(random));
+                    report.send.record(System.nanoTime() - due, results.size(), 0);
+                    for (MessageBatch.Result r : results) {
+                        if (!r.isSent()) {
+                            error(report, "message rejected: " + r.getError());
+                            continue;
+                        }
+                        if (r.isDuplicate()) {
+                            report.duplicates.increment();
+                            continue;
+                        }
+                        if (sentCount == sentIds.length) sentIds = Arrays.copyOf(sentIds, sentCount * 2);
+                        sentIds[sentCount++] = r.getMessage().idBits();
+                        report.sent.increment();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                error(report, e.toString());
+            }
+            due += intervalNanos;
+        }
+        return Arrays.copyOf(sentIds, sentCount);
+    }
+
+    // Usernames are "_" plus four base-36 digits (at most five characters with an underscore).
+    // A taken name is retried with the next one; each attempt is timed on its own.
+    private User registerNew(Random random, Report report, long due) throws IOException {
+        while (true) {
+            long n = nextUser.getAndIncrement();
+            if (n >= 36L * 36 * 36 * 36) {
+                error(report, "ran out of usernames");
+                return null;
+            }
+            String digits = Long.toString(n, 36);
+            User user = new User("_" + "0".repeat(4 - digits.length()) + digits, PASSWORD, cell(random));
+            boolean added = target.register(user);
+            report.register.record(System.nanoTime() - due, 0, 0);
+            if (added) return user;
+            due = System.nanoTime();
+            report.usernameConflicts.increment();
+        }
+    }
+
+    private List<MessageBatch.Item> items(Random random) {
+        List<MessageBatch.Item> items = new ArrayList<>(config.batchSize);
+        for (int i = 0; i < config.batchSize; i++) {
+            StringBuilder text = new StringBuilder();
+            int words = 1 + random.nextInt(30);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) text.append(' ');
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            items.add(new MessageBatch.Item(cell(random), text.toString()));
+        }
+        return items;
+    }
+
+    private static String cell(Random random) {
+        return String.format("+2783%07d", random.nextInt(10_000_000));
+    }
+
+    private static void error(Report report, String message) {
+        report.errors.increment();
+        if (report.firstError == null) report.firstError = message;
+    }
+
+    private static void check(Report report, MessageStore store, long[] ids, int storedBefore, int createdBefore) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int repeated = 0;
+        for (int i = 1; i < sorted.length; i++) if (sorted[i] == sorted[i - 1]) repeated++;
+        expect(report, "IDs handed out twice", 0, repeated);
+        expect(report, "messages stored", (long) storedBefore + ids.length, store.size());
+        expect(report, "messages created", (long) createdBefore + ids.length, Message.getMessageCount());
+        expect(report, "sent messages missing from the store", 0, missing(store, ids));
+        expect(report, "IDs stored twice", 0, duplicateIds(store));
+        if (report.errors.sum() > 0) report.problems.add(report.errors.sum() + " operation(s) failed");
+    }
+
+    private static long missing(MessageStore store, long[] ids) {
+        long missing = 0;
+        for (long id : ids) {
+            if (store.findById(MessageCodec.formatId(id)) == null) missing++;
+        }
+        return missing;
+    }
+
+    private static long duplicateIds(MessageStore store) {
+        long[] packed = new long[Math.max(16, store.size())];
+        int n = 0;
+        Set<String> irregular = new HashSet<>();
+        long duplicates = 0;
+        for (Message m : store) {
+            if (m.verbatim() != null) {
+                if (!irregular.add(m.getMessageID())) duplicates++;
+                continue;
+            }
+            if (n == packed.length) packed = Arrays.copyOf(packed, n * 2);
+            packed[n++] = m.idBits();
+        }
+        Arrays.sort(packed, 0, n);
+        for (int i = 1; i < n; i++) if (packed[i] == packed[i - 1]) duplicates++;
+        return duplicates;
+    }
+
+    private static void expect(Report report, String what, long expected, long actual) {
+        if (expected == actual) {
+            report.checks.add(what + ": " + actual);
+        } else {
+            report.problems.add(what + ": expected " + expected + ", found " + actual);
+        }
+    }
+}
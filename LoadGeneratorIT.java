@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadGeneratorIT {
+
+    // Stores and users in memory; when dropEvery is positive, every dropEvery-th sent message is not stored.
+    private static LoadGenerator.Target target(MessageStore store, UserStore users, int dropEvery) {
+        AtomicInteger sent = new AtomicInteger();
+        return new LoadGenerator.Target() {
+            @Override
+            public boolean register(User user) {
+                return users.registerIfAbsent(user);
+            }
+
+            @Override
+            public User login(String username, String password) {
+                return users.authenticate(username, password);
+            }
+
+            @Override
+            public List<MessageBatch.Result> send(List<MessageBatch.Item> items) {
+                List<MessageBatch.Result> results = MessageBatch.build(items);
+                for (Message m : MessageBatch.sentMessages(results)) {
+                    if (dropEvery <= 0 || sent.incrementAndGet() % dropEvery != 0) store.add(m);
+                }
+                return results;
+            }
+
+            @Override
+            public int userCount() {
+                return users.size();
+            }
+
+            @Override
+            public MessageStore messages() {
+                return store;
+            }
+
+            @Override
+            public MessageStore reload() {
+                return null;
+            }
+        };
+    }
+
+    private static LoadGenerator.Config config() {
+        return LoadGenerator.Config.parse(new String[] {"--users", "4", "--operations", "2000", "--batch", "3", "--mix", "1:2:7"}, 0);
+    }
+
+    /**
+     * Test of run method, of class LoadGenerator, against a store that keeps every message.
+     */
+    @Test
+    public void testRunIsConsistent() throws IOException, InterruptedException {
+        MessageStore store = new ColumnarMessageStore();
+        UserStore users = new HashUserStore();
+        LoadGenerator.Report report = new LoadGenerator(target(store, users, 0), config()).run();
+        assertTrue(report.consistent(), String.valueOf(report.problems));
+        assertEquals(2000, report.register.count() - 4 + report.login.count() + report.send.count());
+        assertEquals(report.send.count() * 3, report.sent.sum());
+        assertEquals(report.sent.sum(), store.size());
+        assertEquals(report.register.count(), users.size());
+        assertEquals(0, report.errors.sum());
+    }
+
+    /**
+     * Test of run method, of class LoadGenerator, against a store that loses messages.
+     */
+    @Test
+    public void testRunDetectsLostMessages() throws IOException, InterruptedException {
+        LoadGenerator.Report report = new LoadGenerator(target(new HeapMessageStore(), new HashUserStore(), 10), config()).run();
+        assertFalse(report.consistent());
+        assertTrue(report.problems.stream().anyMatch(p -> p.startsWith("sent messages missing from the store")));
+    }
+
+    /**
+     * Test of parse method, of class LoadGenerator.Config.
+     */
+    @Test
+    public void testParse() {
+        LoadGenerator.Config c = LoadGenerator.Config.parse(new String[] {"--load-test", "--seconds", "2.5", "--rate", "100"}, 1);
+        assertEquals(2500, c.durationMillis);
+        assertEquals(100.0, c.ratePerSecond);
+        assertEquals(0, config().durationMillis);
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Config.parse(new String[] {"--mix", "1:2"}, 0));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Config.parse(new String[] {"--users"}, 0));
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+// Packed key -> row index for the primitive stores' ID and hash lookups. Keys are unique for
+// new messages, but legacy data can repeat them. As in MessageIndex, the first row with a key
+// is in a LongIntHashMap and any later ones wait in an overflow list, so every row can still
+// be found and removed; get() returns the earliest. Not synchronized; the owning store
+// guards it.
+final class LongRowIndex {
+    static final int MISSING = LongIntHashMap.MISSING;
+
+    private final LongIntHashMap first;
+    private final Map<Long, List<Integer>> more = new HashMap<>();
+
+    LongRowIndex(int expected) {
+        first = new LongIntHashMap(expected);
+    }
+
+    void put(long key, int row) {
+        if (first.get(key) == MISSING) first.put(key, row);
+        else more.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+    }
+
+    int get(long key) {
+        return first.get(key);
+    }
+
+    // The earliest row under key that matches, or MISSING.
+    int find(long key, IntPredicate match) {
+        int row = first.get(key);
+        if (row == MISSING) return MISSING;
+        if (match.test(row)) return row;
+        for (int next : more.getOrDefault(key, Collections.emptyList())) {
+            if (match.test(next)) return next;
+        }
+        return MISSING;
+    }
+
+    // Removes row itself (not another row with the same key); the next one moves up.
+    boolean remove(long key, int row) {
+        List<Integer> rest = more.get(key);
+        if (first.get(key) == row) {
+            if (rest == null) first.remove(key);
+            else first.put(key, rest.remove(0));
+        } else if (rest == null || !rest.remove(Integer.valueOf(row))) {
+            return false;
+        }
+        if (rest != null && rest.isEmpty()) more.remove(key);
+        return true;
+    }
+}
@@ -1,18 +1,21 @@
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.annotations.JsonAdapter;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.io.Writer;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
+import java.nio.file.StandardOpenOption;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 
 class User {
     private final String username;
@@ -34,40 +37,75 @@ class User {
     }
 
     public static boolean isValidPassword(String password) {
-        if (password.length() < 8) return false;
-        if (!password.matches(".*[A-Z].*")) return false;
-        if (!password.matches(".*[0-9].*")) return false;
-        if (!password.matches(".*[!@#$%^&*()_+\\-=\\[\\]{};':\"\\\\|,.<>/?].*")) return false;
-        return true;
+        return Validators.isValidPassword(password);
     }
 
     public static boolean isValidCellNumber(String cell) {
-        return cell.matches("^\\+27\\d{9,10}$");
+        return Validators.isValidCellNumber(cell);
     }
 }
 
+// Fields are packed into primitives (see MessageCodec) and formatted back on demand.
+// Values that don't pack are kept as their original strings in verbatim.
+@JsonAdapter(MessageJsonAdapter.class)
 final class Message {
-    private static int messageCount = 0;
-    private final String messageID;
-    private final String recipient;
-    private final String messageText;
-    private final String messageHash;
-    private final String date;
-    private final String time;
+    private static final LongAdder messageCount = new LongAdder();
+    private static final MessageIdGenerator idGenerator = MessageIdGenerator.forThisNode();
+    static final int V_ID = 0, V_RECIPIENT = 1, V_HASH = 2, V_DATE = 3, V_TIME = 4;
+    private final long id;
+    private final long recipient;
+    private final long timestamp;
+    private final long hash;
+    private final byte[] text;
+    private final String[] verbatim;
 
     public Message(String recipient, String messageText) {
-        this.messageID = generateMessageID();
+        this.id = idGenerator.nextId();
+        this.text = messageText == null ? null : messageText.getBytes(StandardCharsets.UTF_8);
+        this.timestamp = MessageCodec.packDateTime(LocalDateTime.now());
+        long packedRecipient = MessageCodec.packRecipient(recipient);
+        this.recipient = packedRecipient;
+        String hashText = MessageHasher.defaultHasher().hash(getMessageID(), recipient, messageText,
+                MessageCodec.formatDate(timestamp), MessageCodec.formatTime(timestamp));
+        this.hash = MessageCodec.packHash(hashText);
+        if (packedRecipient == MessageCodec.NONE || hash == MessageCodec.NONE) {
+            this.verbatim = new String[5];
+            this.verbatim[V_RECIPIENT] = recipient;
+            this.verbatim[V_HASH] = hashText;
+        } else {
+            this.verbatim = null;
+        }
+        messageCount.increment();
+    }
+
+    // Rebuilds a stored message from packed columns; does not count as a new message.
+    Message(long id, long recipient, long timestamp, long hash, byte[] text, String[] verbatim) {
+        this.id = id;
         this.recipient = recipient;
-        this.messageText = messageText;
-        this.messageHash = createMessageHash();
-        LocalDateTime now = LocalDateTime.now();
-        this.date = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        this.time = now.format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        messageCount++;
+        this.timestamp = timestamp;
+        this.hash = hash;
+        this.text = text;
+        this.verbatim = verbatim;
     }
 
-    private String generateMessageID() {
-        return String.format("%010d", new java.util.Random().nextInt(1000000000));
+    // Rebuilds a stored message from its persisted strings; does not count as a new message.
+    static Message restore(String messageID, String recipient, String messageText, String messageHash, String date, String time) {
+        long id = MessageCodec.packId(messageID);
+        long packedRecipient = MessageCodec.packRecipient(recipient);
+        long hash = MessageCodec.packHash(messageHash);
+        long timestamp = MessageCodec.packDateTime(date, time);
+        String[] verbatim = null;
+        if (id == MessageCodec.NONE || packedRecipient == MessageCodec.NONE
+                || hash == MessageCodec.NONE || timestamp == MessageCodec.NONE) {
+            verbatim = new String[] {messageID, recipient, messageHash, date, time};
+        }
+        byte[] text = messageText == null ? null : messageText.getBytes(StandardCharsets.UTF_8);
+        return new Message(id, packedRecipient, timestamp, hash, text, verbatim);
+    }
+
+    // Keeps new IDs ahead of the ones already in the store.
+    static void reserveIdsAfter(MessageStore existing) {
+        idGenerator.advancePast(existing.maxId());
     }
 
     public static boolean checkRecipientCell(String cell) {
@@ -76,17 +114,8 @@ final class Message {
 
     public String createMessageHash() {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            String input = messageID + recipient + messageText + date + time;
-            byte[] hash = digest.digest(input.getBytes("UTF-8"));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if(hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString().substring(0, 12); // Shorten for display
-        } catch (Exception ex) {
+            return MessageHasher.defaultHasher().hash(getMessageID(), getRecipient(), getMessageText(), getDate(), getTime());
+        } catch (RuntimeException ex) {
             return "HASH_ERR";
         }
     }
@@ -95,30 +124,173 @@ final class Message {
         return msg.length() <= 250;
     }
 
-    public String getMessageID() { return messageID; }
-    public String getRecipient() { return recipient; }
-    public String getMessageText() { return messageText; }
-    public String getMessageHash() { return messageHash; }
-    public String getDate() { return date; }
-    public String getTime() { return time; }
-    public static int getMessageCount() { return messageCount; }
+    public String getMessageID() {
+        return id == MessageCodec.NONE ? verbatim[V_ID] : MessageCodec.formatId(id);
+    }
+
+    public String getRecipient() {
+        return recipient == MessageCodec.NONE ? verbatim[V_RECIPIENT] : MessageCodec.formatRecipient(recipient);
+    }
+
+    public String getMessageText() {
+        return text == null ? null : new String(text, StandardCharsets.UTF_8);
+    }
+
+    public String getMessageHash() {
+        return hash == MessageCodec.NONE ? verbatim[V_HASH] : MessageCodec.formatHash(hash);
+    }
+
+    public String getDate() {
+        return timestamp == MessageCodec.NONE ? verbatim[V_DATE] : MessageCodec.formatDate(timestamp);
+    }
+
+    public String getTime() {
+        return timestamp == MessageCodec.NONE ? verbatim[V_TIME] : MessageCodec.formatTime(timestamp);
+    }
+
+    public static int getMessageCount() { return messageCount.intValue(); }
+
+    // Packed fields for compact stores; MessageCodec.NONE where the value is only in verbatim.
+    long idBits() { return id; }
+    long recipientBits() { return recipient; }
+    long timestampBits() { return timestamp; }
+    long hashBits() { return hash; }
+    byte[] textBytes() { return text; }
+    String[] verbatim() { return verbatim; }
 }
 
 public class MainApp {
     private static final String USERS_FILE = "users.json";
     private static final String MESSAGES_FILE = "messages.json";
+    private static final String MESSAGES_JOURNAL_FILE = "messages.journal";
+    // Durable stores messages.json and the journal were imported into, one per line.
+    private static final String MESSAGES_IMPORTED_FILE = "messages.imported";
+    // Deliveries not done yet, so a restart picks them up again (see DeliveryOutbox).
+    private static final String DELIVERIES_FILE = "deliveries.pending";
+    private static final int JOURNAL_COMPACT_THRESHOLD = 10000;
+    private static final int SEARCH_LIMIT = 100;
+    private static final int INGEST_BATCH_SIZE = 10000;
+    private static final int INGEST_CHUNK_SIZE = 1000;
     private static User currentUser = null;
-    private static List<User> users = new ArrayList<>();
-    private static List<Message> messages = new ArrayList<>();
+    private static UserStore users = new HashUserStore();
+    private static MessageStore messages = new HeapMessageStore();
+    private static final MessageTextIndex textIndex = new MessageTextIndex();
+    private static final MessageStatistics statistics = new MessageStatistics();
+    private static final int REPORT_TOP = 10;
     private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final MessageJournal journal = new MessageJournal(
+            Paths.get(MESSAGES_FILE), Paths.get(MESSAGES_JOURNAL_FILE), gson, JOURNAL_COMPACT_THRESHOLD);
+    private static boolean headless = false;
+    // users.json and the messages.json checkpoint are saved behind the callers' backs, at most
+    // once per interval (or sooner after -Dmainapp.flushChanges changes).
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong("mainapp.flushMillis", 1000);
+    private static final int FLUSH_MAX_PENDING = Integer.getInteger("mainapp.flushChanges", 1000);
+    private static final WriteBehindPersister usersPersister = new WriteBehindPersister("users", MainApp::writeUsers,
+            FLUSH_INTERVAL_MILLIS, FLUSH_MAX_PENDING, e -> reportErrorLater("Error saving users: " + e.getMessage()));
+    private static final WriteBehindPersister messagesPersister = new WriteBehindPersister("messages", MainApp::checkpointMessages,
+            FLUSH_INTERVAL_MILLIS, FLUSH_MAX_PENDING, e -> reportErrorLater("Error saving messages: " + e.getMessage()));
+    // Sent messages are handed to the delivery stub at their send-at time (see DeliveryScheduler).
+    private static final String DELIVERY_LOG = System.getProperty("mainapp.deliveryLog");
+    private static final DeliveryScheduler delivery = startDelivery();
+    private static DeliveryOutbox outbox;
+    // Repeated sends through sendBatch within -Dmainapp.duplicateWindowSeconds (see DuplicateFilter).
+    private static final DuplicateFilter duplicates = startDuplicateFilter();
 
     public static void main(String[] args) {
+        if (args != null && args.length >= 2 && args[0].equals("--send-batch")) {
+            headless = true;
+            IngestPipeline.Mode mode = IngestPipeline.Mode.PARALLEL;
+            int workers = Runtime.getRuntime().availableProcessors();
+            for (int i = 2; i + 1 < args.length; i += 2) {
+                if (args[i].equals("--mode")) mode = IngestPipeline.Mode.valueOf(args[i + 1].toUpperCase());
+                else if (args[i].equals("--workers")) workers = Integer.parseInt(args[i + 1]);
+            }
+            loadMessages();
+            loadDeliveries();
+            try {
+                ingestFile(Paths.get(args[1]), mode, workers);
+            } catch (IOException e) {
+                reportError("Error sending batch: " + e.getMessage());
+            }
+            stopDelivery();
+            saveMessages();
+            return;
+        }
+        if (args != null && args.length >= 1 && args[0].equals("--server")) {
+            headless = true;
+            loadUsers();
+            loadMessages();
+            loadDeliveries();
+            try {
+                MessageServer server = new MessageServer(args.length >= 2 ? Integer.parseInt(args[1]) : MessageServer.DEFAULT_PORT);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.stop();
+                    shutDown();
+                }));
+                server.start();
+                System.out.println("Listening on http://localhost:" + server.getPort());
+            } catch (IOException e) {
+                reportError("Error starting server: " + e.getMessage());
+            }
+            return;
+        }
+        if (args != null && args.length >= 1 && args[0].equals("--shard-server")) {
+            headless = true;
+            loadMessages();
+            try {
+                ShardServer server = new ShardServer(args.length >= 2 ? Integer.parseInt(args[1]) : 0, shardView());
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.stop();
+                    saveMessages();
+                }));
+                server.start();
+                System.out.println("Serving shard on http://localhost:" + server.getPort());
+            } catch (IOException e) {
+                reportError("Error starting shard server: " + e.getMessage());
+            }
+            return;
+        }
+        if (args != null && args.length >= 1 && args[0].equals("--rebalance")) {
+            headless = true;
+            loadMessages();
+            if (!(messages instanceof ShardedMessageStore)) {
+                reportError("--rebalance needs -Dmainapp.store=sharded");
+                return;
+            }
+            ShardedMessageStore sharded = (ShardedMessageStore) messages;
+            int moved = sharded.rebalance();
+            System.out.println("Moved " + moved + " messages; " + messages.size() + " across " + sharded.shardNames().size() + " shards");
+            saveMessages();
+            return;
+        }
+        if (args != null && args.length >= 1 && args[0].equals("--load-test")) {
+            headless = true;
+            LoadGenerator.Config config;
+            try {
+                config = LoadGenerator.Config.parse(args, 1);
+            } catch (IllegalArgumentException e) {
+                reportError("Usage: --load-test [--users N] [--seconds S] [--operations N] [--mix register:login:send]"
+                        + " [--rate OPS] [--batch N] [--seed N]: " + e.getMessage());
+                return;
+            }
+            loadUsers();
+            loadMessages();
+            loadDeliveries();
+            boolean consistent = loadTest(config);
+            stopDelivery();
+            System.exit(consistent ? 0 : 1);
+        }
         loadUsers();
         loadMessages();
+        loadDeliveries();
         while (true) {
             String menu = "Main Menu:\n1. Register\n2. Login\n3. Exit\nEnter your choice (1-3):";
             String input = JOptionPane.showInputDialog(menu);
-            if (input == null) break;
+            if (input == null) {
+                // Closed or cancelled: still save what the write-behind threads hold.
+                shutDown();
+                return;
+            }
             switch (input) {
                 case "1":
                     registerUser();
@@ -130,8 +302,7 @@ public class MainApp {
                     break;
                 case "3":
                     JOptionPane.showMessageDialog(null, "Goodbye!");
-                    saveUsers();
-                    saveMessages();
+                    shutDown();
                     return;
                 default:
                     JOptionPane.showMessageDialog(null, "Invalid choice. Please enter 1, 2, or 3.");
@@ -176,16 +347,10 @@ public class MainApp {
             }
         }
 
-        // Check for duplicate username
-        for (User u : users) {
-            if (u.getUsername().equals(username)) {
-                JOptionPane.showMessageDialog(null, "Username already exists. Please choose another.");
-                return;
-            }
+        if (!addUser(new User(username, password, cell))) {
+            JOptionPane.showMessageDialog(null, "Username already exists. Please choose another.");
+            return;
         }
-
-        users.add(new User(username, password, cell));
-        saveUsers();
         JOptionPane.showMessageDialog(null, "Registration successful! You can now log in.");
     }
 
@@ -195,12 +360,11 @@ public class MainApp {
         String password = JOptionPane.showInputDialog("Login - Enter password:");
         if (password == null) return false;
 
-        for (User u : users) {
-            if (u.getUsername().equals(username) && u.getPassword().equals(password)) {
-                currentUser = u;
-                JOptionPane.showMessageDialog(null, "Welcome " + currentUser.getUsername() + ", it is great to see you again.");
-                return true;
-            }
+        User u = authenticate(username, password);
+        if (u != null) {
+            currentUser = u;
+            JOptionPane.showMessageDialog(null, "Welcome " + currentUser.getUsername() + ", it is great to see you again.");
+            return true;
         }
         JOptionPane.showMessageDialog(null, "Username or password incorrect, please try again.");
         return false;
@@ -208,7 +372,7 @@ public class MainApp {
 
     private static void userMenu() {
         while (true) {
-            String menu = "User Menu:\n1. Send Message(s)\n2. View Messages\n3. Logout\nEnter your choice (1-3):";
+            String menu = "User Menu:\n1. Send Message(s)\n2. View Messages\n3. Search Message by ID\n4. Search Messages by Recipient\n5. Delete Message by Hash\n6. Search Messages by Text\n7. Message Statistics\n8. Logout\nEnter your choice (1-8):";
             String input = JOptionPane.showInputDialog(menu);
             if (input == null) return;
             switch (input) {
@@ -219,11 +383,26 @@ public class MainApp {
                     showAllMessages();
                     break;
                 case "3":
+                    searchMessageByID();
+                    break;
+                case "4":
+                    searchMessagesByRecipient();
+                    break;
+                case "5":
+                    deleteMessageByHash();
+                    break;
+                case "6":
+                    searchMessagesByText();
+                    break;
+                case "7":
+                    showStatistics();
+                    break;
+                case "8":
                     JOptionPane.showMessageDialog(null, "Logged out.");
                     currentUser = null;
                     return;
                 default:
-                    JOptionPane.showMessageDialog(null, "Invalid choice. Please enter 1, 2, or 3.");
+                    JOptionPane.showMessageDialog(null, "Invalid choice. Please enter 1 to 8.");
             }
         }
     }
@@ -266,6 +445,15 @@ public class MainApp {
                 }
             }
 
+            long at;
+            while (true) {
+                String when = JOptionPane.showInputDialog("Send at (yyyy-MM-ddTHH:mm, leave blank to send now):");
+                if (when == null) return;
+                at = MessageBatch.parseSendAt(when);
+                if (at >= 0) break;
+                JOptionPane.showMessageDialog(null, MessageBatch.INVALID_SEND_AT);
+            }
+
             Message m = new Message(rec, msg);
 
             // Show message details
@@ -278,68 +466,641 @@ public class MainApp {
                 "\nTime: " + m.getTime()
             );
 
-            // Save to JSON
-            messages.add(m);
+            // Stored and journaled under the same lock as the other writers, so a background
+            // compaction never sees the store mid-change.
+            try {
+                commitAndSchedule(List.of(m), new long[] {at});
+            } catch (IOException e) {
+                reportError("Error saving messages: " + e.getMessage());
+                return;
+            }
         }
-        saveMessages();
         JOptionPane.showMessageDialog(null, "Total messages sent: " + Message.getMessageCount() + "\nMessages saved to JSON file.");
     }
 
     private static void showAllMessages() {
+        if (messages.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "No messages found.", "All Messages", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        // A table over the store: only the rows on screen are read, so large stores stay cheap to browse.
+        MessageViewer.show(messageView(null, null, false));
+    }
+
+    // Filtered (MessageTextIndex.Query syntax) and sorted view of the store for browsing and export.
+    static synchronized MessageView messageView(String filter, MessageView.Column sortBy, boolean descending) {
+        return MessageView.of(messages, textIndex, filter, sortBy, descending);
+    }
+
+    // Registers and persists an already validated user; false if the username is taken.
+    static boolean addUser(User user) {
+        long started = Metrics.REGISTER.start();
+        boolean added = users.registerIfAbsent(user);
+        if (added) usersPersister.markDirty();
+        Metrics.REGISTER.stop(started);
+        return added;
+    }
+
+    static User authenticate(String username, String password) {
+        long started = Metrics.LOGIN.start();
+        User user = users.authenticate(username, password);
+        Metrics.LOGIN.stop(started);
+        return user;
+    }
+
+    static List<Message> messagesPage(int offset, int limit) {
+        return messages.page(offset, limit);
+    }
+
+    static int messageTotal() {
+        return messages.size();
+    }
+
+    // Validates, creates and persists a batch of messages with a single journal write.
+    // Nothing is added to the store if the journal write fails.
+    // A repeat of a recent send is answered with the earlier message and not stored again.
+    static List<MessageBatch.Result> sendBatch(List<MessageBatch.Item> items) throws IOException {
+        List<MessageBatch.Result> results = MessageBatch.build(items, duplicates);
+        List<Message> sent = MessageBatch.sentMessages(results);
+        try {
+            commitAndSchedule(sent, sendAtTimes(results));
+        } catch (IOException | RuntimeException e) {
+            if (duplicates != null) duplicates.forget(sent);
+            throw e;
+        }
+        return results;
+    }
+
+    // The store as a --shard-server process serves it: reads go straight to the store, writes
+    // take the same journaled path as /send and deletes, and sync() checkpoints.
+    private static MessageStore shardView() {
+        return new MessageStore() {
+            @Override
+            public void add(Message m) {
+                addAll(List.of(m));
+            }
+
+            @Override
+            public void addAll(Collection<Message> batch) {
+                try {
+                    commitMessages(new ArrayList<>(batch));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean remove(Message m) {
+                try {
+                    return removeMessage(m);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public int size() { return messages.size(); }
+
+            @Override
+            public List<Message> page(int offset, int limit) { return messages.page(offset, limit); }
+
+            @Override
+            public Message findById(String messageID) { return messages.findById(messageID); }
+
+            @Override
+            public Message findByHash(String messageHash) { return messages.findByHash(messageHash); }
+
+            @Override
+            public List<Message> findByRecipient(String recipient) { return messages.findByRecipient(recipient); }
+
+            @Override
+            public int countByRecipient(String recipient) { return messages.countByRecipient(recipient); }
+
+            @Override
+            public List<Message> findBetween(LocalDateTime from, LocalDateTime to) { return messages.findBetween(from, to); }
+
+            @Override
+            public long maxId() { return messages.maxId(); }
+
+            @Override
+            public boolean isDurable() { return true; }
+
+            @Override
+            public void sync() throws IOException {
+                messagesPersister.flush();
+            }
+
+            @Override
+            public Iterator<Message> iterator() { return messages.iterator(); }
+        };
+    }
+
+    private static DeliveryScheduler startDelivery() {
+        DeliveryScheduler scheduler = new DeliveryScheduler(MainApp::deliver, MainApp::giveUpDelivery,
+                System::currentTimeMillis, 10, 500, 5, 1000, 60_000);
+        Metrics.gauge("delivery.pending", scheduler::pending);
+        Metrics.gauge("delivery.delivered", scheduler::delivered);
+        Metrics.gauge("delivery.retried", scheduler::retried);
+        Metrics.gauge("delivery.failed", scheduler::failed);
+        scheduler.start();
+        return scheduler;
+    }
+
+    private static DuplicateFilter startDuplicateFilter() {
+        DuplicateFilter filter = DuplicateFilter.fromProperty();
+        if (filter != null) {
+            Metrics.gauge("send.duplicates", filter::suppressed);
+            Metrics.gauge("send.duplicatesUnconfirmed", filter::unconfirmed);
+        }
+        return filter;
+    }
+
+    // Reschedules the deliveries that were pending when the last run stopped; needs the
+    // messages loaded.
+    private static void loadDeliveries() {
+        try {
+            outbox = new DeliveryOutbox(Paths.get(DELIVERIES_FILE), JOURNAL_COMPACT_THRESHOLD);
+            outbox.load(messages::findByHash, delivery::schedule);
+            Metrics.gauge("delivery.outbox", outbox::pending);
+        } catch (IOException e) {
+            reportError("Error loading pending deliveries: " + e.getMessage());
+            outbox = null;
+        }
+    }
+
+    // Stops delivery and writes out users and messages before the process exits.
+    private static void shutDown() {
+        stopDelivery();
+        saveUsers();
+        saveMessages();
+    }
+
+    // Drops what is still scheduled from memory; the outbox keeps it for the next run.
+    private static void stopDelivery() {
+        delivery.close();
+        if (outbox == null) return;
+        try {
+            outbox.close();
+        } catch (IOException e) {
+            reportError("Error saving pending deliveries: " + e.getMessage());
+        }
+    }
+
+    private static void giveUpDelivery(Message m) {
+        reportErrorLater("Giving up delivering message " + m.getMessageID() + " to " + m.getRecipient());
+        deliveryDone(List.of(m));
+    }
+
+    private static void deliveryDone(List<Message> batch) {
+        if (outbox == null) return;
+        try {
+            outbox.remove(batch);
+        } catch (IOException e) {
+            // Delivered again after a restart, which the gateway has to tolerate anyway.
+            reportErrorLater("Error saving pending deliveries: " + e.getMessage());
+        }
+    }
+
+    private static long[] sendAtTimes(List<MessageBatch.Result> results) {
+        long[] sendAt = new long[results.size()];
+        int n = 0;
+        for (MessageBatch.Result r : results) {
+            if (r.isSent() && !r.isDuplicate()) sendAt[n++] = r.getSendAt();
+        }
+        return Arrays.copyOf(sendAt, n);
+    }
+
+    // Stores sent.get(i) and queues it for delivery at sendAt[i]. The deliveries are logged
+    // to the outbox first, so a message that is stored is also delivered after a restart.
+    private static void commitAndSchedule(List<Message> sent, long[] sendAt) throws IOException {
+        if (outbox != null) outbox.add(sent, sendAt);
+        try {
+            commitMessages(sent);
+        } catch (IOException | RuntimeException e) {
+            if (outbox != null) {
+                try {
+                    outbox.remove(sent);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        for (int i = 0; i < sent.size(); i++) delivery.schedule(sent.get(i), sendAt[i]);
+    }
+
+    // Local stand-in for an SMS gateway: a delivery always succeeds, and is written as a
+    // "messageID<TAB>recipient<TAB>messageText" line to -Dmainapp.deliveryLog when that is set.
+    private static List<Message> deliver(List<Message> batch) throws IOException {
+        if (DELIVERY_LOG == null) {
+            deliveryDone(batch);
+            return Collections.emptyList();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Message m : batch) {
+            sb.append(m.getMessageID()).append('\t').append(m.getRecipient()).append('\t')
+                    .append(m.getMessageText().replace('\n', ' ')).append('\n');
+        }
+        Files.writeString(Paths.get(DELIVERY_LOG), sb, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        deliveryDone(batch);
+        return Collections.emptyList();
+    }
+
+    private static synchronized void commitMessages(List<Message> sent) throws IOException {
+        long started = Metrics.SEND.start();
+        if (!messages.isDurable()) journal.append(sent);
+        messages.addAll(sent);
+        textIndex.addAll(sent);
+        statistics.addAll(sent);
+        messagesPersister.markDirty(sent.size());
+        Metrics.SEND.stop(started, sent.size(), 0);
+    }
+
+    // Drives registration, login and sending headlessly (see LoadGenerator), saves everything,
+    // reads the messages back through the journal and reports whether anything went missing.
+    // Run it in a scratch directory: the accounts and messages it creates are saved.
+    static boolean loadTest(LoadGenerator.Config config) {
+        LoadGenerator.Target target = new LoadGenerator.Target() {
+            @Override
+            public boolean register(User user) throws IOException {
+                if (!User.isValidUsername(user.getUsername()) || !User.isValidPassword(user.getPassword())
+                        || !User.isValidCellNumber(user.getCellNumber())) {
+                    throw new IllegalArgumentException("Invalid registration for " + user.getUsername());
+                }
+                return addUser(user);
+            }
+
+            @Override
+            public User login(String username, String password) {
+                return authenticate(username, password);
+            }
+
+            @Override
+            public List<MessageBatch.Result> send(List<MessageBatch.Item> items) throws IOException {
+                return sendBatch(items);
+            }
+
+            @Override
+            public int userCount() {
+                return users.size();
+            }
+
+            @Override
+            public MessageStore messages() {
+                return messages;
+            }
+
+            @Override
+            public MessageStore reload() throws IOException {
+                saveUsers();
+                saveMessages();
+                if (messages.isDurable()) return null;
+                MessageStore reloaded = new HeapMessageStore();
+                try (MessageJournal reader = new MessageJournal(Paths.get(MESSAGES_FILE), Paths.get(MESSAGES_JOURNAL_FILE),
+                        gson, JOURNAL_COMPACT_THRESHOLD)) {
+                    reader.load(reloaded, JsonStreamLoader.NO_PROGRESS);
+                }
+                return reloaded;
+            }
+        };
+        try {
+            LoadGenerator.Report report = new LoadGenerator(target, config).run();
+            report.print(System.out);
+            return report.consistent();
+        } catch (IOException e) {
+            reportError("Load test failed: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Sends every "recipient<TAB>message" line of a file through the ingestion pipeline.
+    static IngestPipeline.Stats ingestFile(Path file, IngestPipeline.Mode mode, int workers) throws IOException {
+        IngestPipeline pipeline = new IngestPipeline(mode, workers, INGEST_CHUNK_SIZE, INGEST_BATCH_SIZE);
+        IngestPipeline.Stats stats;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            stats = pipeline.run(reader, (items, results) -> {
+                commitAndSchedule(MessageBatch.sentMessages(results), sendAtTimes(results));
+                for (int i = 0; i < results.size(); i++) {
+                    MessageBatch.Result r = results.get(i);
+                    if (!r.isSent()) {
+                        System.err.println("Rejected item " + (r.getIndex() + 1) + " (" + items.get(i).getRecipient() + "): " + r.getError());
+                    }
+                }
+            });
+        }
+        System.out.printf("Read %d lines: %d messages sent, %d rejected (%.0f messages/s, %s, %d worker(s))%n",
+                stats.lines, stats.sent, stats.rejected, stats.messagesPerSecond(),
+                mode.name().toLowerCase(), mode == IngestPipeline.Mode.SINGLE ? 1 : workers);
+        return stats;
+    }
+
+    private static void reportError(String message) {
+        if (headless) {
+            System.err.println(message);
+        } else {
+            JOptionPane.showMessageDialog(null, message);
+        }
+    }
+
+    // For background threads: the dialog is shown on the event dispatch thread, so the caller
+    // goes on with its work instead of waiting for someone to close it.
+    private static void reportErrorLater(String message) {
+        if (headless) {
+            System.err.println(message);
+        } else {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, message));
+        }
+    }
+
+    private static void searchMessagesByText() {
+        String query = JOptionPane.showInputDialog("Enter words to search for. Use \"quotes\" for a phrase, OR for alternatives,\n"
+                + "and recipient:+27..., from:yyyy-MM-dd or to:yyyy-MM-dd to narrow the results:");
+        if (query == null) return;
+        List<Message> found;
+        try {
+            found = searchMessages(query, SEARCH_LIMIT);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, e.getMessage());
+            return;
+        }
+        if (found.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "No messages match " + query + ".");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Message m : found) {
+            appendMessage(sb, m);
+        }
+        JTextArea textArea = new JTextArea(sb.toString());
+        textArea.setEditable(false);
+        textArea.setCaretPosition(0);
+        JScrollPane scrollPane = new JScrollPane(textArea);
+        scrollPane.setPreferredSize(new java.awt.Dimension(600, 400));
+        String title = found.size() == SEARCH_LIMIT ? "First " + SEARCH_LIMIT + " matches" : found.size() + " match(es)";
+        JOptionPane.showMessageDialog(null, scrollPane, title, JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    // Keyword search over message text; see MessageTextIndex.Query for the syntax.
+    static synchronized List<Message> searchMessages(String query, int limit) {
+        return textIndex.search(messages, MessageTextIndex.Query.parse(query), limit);
+    }
+
+    private static void showStatistics() {
+        JTextArea textArea = new JTextArea(statisticsReport());
+        textArea.setEditable(false);
+        textArea.setCaretPosition(0);
+        JScrollPane scrollPane = new JScrollPane(textArea);
+        scrollPane.setPreferredSize(new java.awt.Dimension(600, 400));
+        JOptionPane.showMessageDialog(null, scrollPane, "Message Statistics", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    // Read from aggregates kept up to date on every send and delete; see MessageStatistics.
+    static synchronized String statisticsReport() {
+        return statistics.report(messages, REPORT_TOP);
+    }
+
+    static synchronized Map<String, Object> statisticsSummary(int top) {
+        return statistics.summary(messages, top);
+    }
+
+    private static void appendMessage(StringBuilder sb, Message m) {
+        sb.append("Message ID: ").append(m.getMessageID()).append("\n");
+        sb.append("Recipient: ").append(m.getRecipient()).append("\n");
+        sb.append("Message: ").append(m.getMessageText()).append("\n");
+        sb.append("Hash: ").append(m.getMessageHash()).append("\n");
+        sb.append("Date: ").append(m.getDate()).append("\n");
+        sb.append("Time: ").append(m.getTime()).append("\n");
+        sb.append("--------------------------------------------------\n");
+    }
+
+    private static void searchMessageByID() {
+        String id = JOptionPane.showInputDialog("Enter message ID:");
+        if (id == null) return;
+        Message m = messages.findById(id.trim());
+        if (m == null) {
+            JOptionPane.showMessageDialog(null, "No message found with ID " + id + ".");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        appendMessage(sb, m);
+        JOptionPane.showMessageDialog(null, sb.toString(), "Message " + id, JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private static void searchMessagesByRecipient() {
+        String rec = JOptionPane.showInputDialog("Enter recipient cell number (e.g. +27839868976):");
+        if (rec == null) return;
+        List<Message> found = messages.findByRecipient(rec.trim());
+        if (found.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "No messages found for " + rec + ".");
+            return;
+        }
         StringBuilder sb = new StringBuilder();
-        int count = 0;
-        for (Message m : messages) {
-            sb.append("Message ID: ").append(m.getMessageID()).append("\n");
-            sb.append("Recipient: ").append(m.getRecipient()).append("\n");
-            sb.append("Message: ").append(m.getMessageText()).append("\n");
-            sb.append("Hash: ").append(m.getMessageHash()).append("\n");
-            sb.append("Date: ").append(m.getDate()).append("\n");
-            sb.append("Time: ").append(m.getTime()).append("\n");
-            sb.append("--------------------------------------------------\n");
-            count++;
-        }
-        if (count == 0) {
-            sb.append("No messages found.");
+        for (Message m : found) {
+            appendMessage(sb, m);
         }
         JTextArea textArea = new JTextArea(sb.toString());
         textArea.setEditable(false);
+        textArea.setCaretPosition(0);
         JScrollPane scrollPane = new JScrollPane(textArea);
         scrollPane.setPreferredSize(new java.awt.Dimension(600, 400));
-        JOptionPane.showMessageDialog(null, scrollPane, "All Messages", JOptionPane.INFORMATION_MESSAGE);
+        JOptionPane.showMessageDialog(null, scrollPane, found.size() + " message(s) to " + rec, JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private static void deleteMessageByHash() {
+        String hash = JOptionPane.showInputDialog("Enter message hash:");
+        if (hash == null) return;
+        Message m = messages.findByHash(hash.trim());
+        if (m == null) {
+            JOptionPane.showMessageDialog(null, "No message found with hash " + hash + ".");
+            return;
+        }
+        boolean removed;
+        try {
+            removed = removeMessage(m);
+        } catch (IOException | RuntimeException e) {
+            // Durable stores fail with UncheckedIOException.
+            reportError("Error deleting message: " + e.getMessage());
+            return;
+        }
+        if (!removed) {
+            JOptionPane.showMessageDialog(null, "No message found with hash " + hash + ".");
+            return;
+        }
+        JOptionPane.showMessageDialog(null, "Message \"" + m.getMessageText() + "\" successfully deleted.");
     }
 
     // JSON persistence
     private static void saveUsers() {
-        try (Writer writer = Files.newBufferedWriter(Paths.get(USERS_FILE))) {
-            gson.toJson(users, writer);
+        try {
+            usersPersister.close();
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error saving users: " + e.getMessage());
+            reportError("Error saving users: " + e.getMessage());
+        }
+    }
+
+    private static void writeUsers() throws IOException {
+        long started = Metrics.SAVE_USERS.start();
+        WriteBehindPersister.writeAtomically(Paths.get(USERS_FILE), writer -> gson.toJson(users.all(), writer));
+        Metrics.SAVE_USERS.stop(started, users.size(), fileSize(USERS_FILE));
+    }
+
+    private static long fileSize(String file) {
+        try {
+            return Files.size(Paths.get(file));
+        } catch (IOException e) {
+            return 0;
         }
     }
 
     private static void loadUsers() {
-        try (Reader reader = Files.newBufferedReader(Paths.get(USERS_FILE))) {
-            users = gson.fromJson(reader, new TypeToken<List<User>>(){}.getType());
-            if (users == null) users = new ArrayList<>();
+        users = new HashUserStore();
+        Metrics.gauge("users.registered", () -> users.size());
+        if (!Files.exists(Paths.get(USERS_FILE))) return;
+        try {
+            long started = Metrics.LOAD_USERS.start();
+            JsonStreamLoader.load(Paths.get(USERS_FILE), gson, User.class, users::registerIfAbsent, loadProgress("users"));
+            Metrics.LOAD_USERS.stop(started, users.size(), fileSize(USERS_FILE));
         } catch (IOException e) {
-            users = new ArrayList<>();
+            // The next save would replace users.json with only the users read before the error.
+            usersPersister.hold(new IOException("Not saving " + USERS_FILE + ", it could not be loaded in full: " + e.getMessage()));
+            if (headless) {
+                reportError("Error loading users: " + e.getMessage());
+                System.exit(1);
+            }
+            int choice = JOptionPane.showConfirmDialog(null, "Error loading users: " + e.getMessage()
+                    + "\nOnly " + users.size() + " user(s) could be read. Continue, and save " + USERS_FILE
+                    + " with just those users?\nChoose No to exit and leave the file as it is.",
+                    "Error loading users", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (choice != JOptionPane.YES_OPTION) System.exit(1);
+            usersPersister.release();
         }
     }
 
+    private static JsonStreamLoader.Progress loadProgress(String what) {
+        return (records, rate, done) -> System.out.printf("%s %d %s (%.0f records/s)%n",
+                done ? "Loaded" : "Loading...", records, what, rate);
+    }
+
+    // Messages are journaled: new messages are appended, the full list is only
+    // rewritten when the journal is compacted into messages.json. A durable store
+    // (-Dmainapp.store=mapped) is its own file and is only synced. Both happen in
+    // checkpointMessages, on the write-behind thread.
+    private static synchronized boolean removeMessage(Message m) throws IOException {
+        if (!messages.remove(m)) return false;
+        textIndex.remove(m);
+        statistics.remove(m);
+        if (!messages.isDurable()) journal.appendDelete(m);
+        messagesPersister.markDirty();
+        return true;
+    }
+
+    // Also the journal's timed group sync: appends only force the file once enough records
+    // have piled up, so the last few reach the disk here, within one interval.
+    private static void checkpointMessages() throws IOException {
+        if (outbox != null) outbox.sync();
+        boolean compact;
+        synchronized (MainApp.class) {
+            if (messages.isDurable()) {
+                messages.sync();
+                return;
+            }
+            compact = journal.needsCompaction(messages.size());
+        }
+        if (compact) compactMessages();
+        else journal.sync();
+    }
+
+    // Only copying the store and rotating the journal hold the lock; senders carry on while
+    // the snapshot is written.
+    private static void compactMessages() throws IOException {
+        long started = Metrics.SAVE_MESSAGES.start();
+        List<Message> snapshot;
+        synchronized (MainApp.class) {
+            snapshot = new ArrayList<>(messages.size());
+            for (Message m : messages) snapshot.add(m);
+            journal.rotate();
+        }
+        journal.writeSnapshot(snapshot);
+        Metrics.SAVE_MESSAGES.stop(started, snapshot.size(), fileSize(MESSAGES_FILE));
+    }
+
+    // Not synchronized: closing the persister waits for a checkpoint that needs the lock.
     private static void saveMessages() {
-        try (Writer writer = Files.newBufferedWriter(Paths.get(MESSAGES_FILE))) {
-            gson.toJson(messages, writer);
+        try {
+            messagesPersister.close();
+            if (messages.isDurable()) {
+                messages.close();
+                return;
+            }
+            // Held after a failed load: close() has already refused any changes, and with none
+            // the files on disk are left exactly as they were.
+            if (!messagesPersister.isHeld()) compactMessages();
+            journal.close();
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error saving messages: " + e.getMessage());
+            reportError("Error saving messages: " + e.getMessage());
         }
     }
 
+    private static List<String> importedStores() throws IOException {
+        Path marker = Paths.get(MESSAGES_IMPORTED_FILE);
+        return Files.exists(marker) ? Files.readAllLines(marker, StandardCharsets.UTF_8) : Collections.emptyList();
+    }
+
     private static void loadMessages() {
-        try (Reader reader = Files.newBufferedReader(Paths.get(MESSAGES_FILE))) {
-            messages = gson.fromJson(reader, new TypeToken<List<Message>>(){}.getType());
-            if (messages == null) messages = new ArrayList<>();
+        try {
+            long started = Metrics.LOAD_MESSAGES.start();
+            messages = MessageStore.fromProperty();
+            Metrics.gauge("messages.stored", () -> messages.size());
+            if (messages instanceof TieredMessageStore) {
+                TieredMessageStore tiered = (TieredMessageStore) messages;
+                Metrics.gauge("messages.hot", tiered::hotSize);
+                Metrics.gauge("messages.hotHits", tiered::hotHits);
+                Metrics.gauge("messages.hotMisses", tiered::hotMisses);
+                Metrics.gauge("messages.segments", tiered::segmentCount);
+            }
+            // A durable store is read from messages.json and the journal once, the first time
+            // it is opened, and then listed in messages.imported; an empty store is not a sign
+            // that it was never imported, as every message may have been deleted since.
+            long bytes = 0;
+            String imported = MessageStore.describeProperty();
+            if (!messages.isDurable()) {
+                bytes = fileSize(MESSAGES_FILE) + fileSize(MESSAGES_JOURNAL_FILE);
+                journal.load(messages, loadProgress("messages"));
+            } else if (!importedStores().contains(imported)) {
+                // A store opened before the marker existed already holds its messages.
+                if (messages.isEmpty()) {
+                    bytes = fileSize(MESSAGES_FILE) + fileSize(MESSAGES_JOURNAL_FILE);
+                    journal.load(messages, loadProgress("messages"));
+                }
+                messages.sync();
+                Files.writeString(Paths.get(MESSAGES_IMPORTED_FILE), imported + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            Metrics.LOAD_MESSAGES.stop(started, messages.size(), bytes);
+            Message.reserveIdsAfter(messages);
+            textIndex.invalidate();
+            statistics.invalidate();
         } catch (IOException e) {
-            messages = new ArrayList<>();
+            // Compacting would replace messages.json and the journal with only the messages
+            // read before the error.
+            messagesPersister.hold(new IOException("Not saving " + MESSAGES_FILE + ", it could not be loaded in full: " + e.getMessage()));
+            if (headless) {
+                reportError("Error loading messages: " + e.getMessage());
+                System.exit(1);
+            }
+            int choice = JOptionPane.showConfirmDialog(null, "Error loading messages: " + e.getMessage()
+                    + "\nOnly " + messages.size() + " message(s) could be read. Continue, and save " + MESSAGES_FILE
+                    + " with just those messages?\nChoose No to exit and leave the file as it is.",
+                    "Error loading messages", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (choice != JOptionPane.YES_OPTION) System.exit(1);
+            messagesPersister.release();
+            Message.reserveIdsAfter(messages);
+            textIndex.invalidate();
+            statistics.invalidate();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,462 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+// Message store whose records live in fixed-size memory-mapped segment files rather than on
+// the Java heap. The heap only holds a primitive index: one (segment, position) offset per
+// row, ID and hash -> row, and a RecipientDictionary of recipient -> rows. Opening the store maps the segments and
+// walks the fixed-width record headers to rebuild that index; no JSON is parsed and no
+// Message is created. Lookups compare packed fields in the mapping and only copy out the
+// rows they return. The store persists itself, so MainApp does not journal it.
+//
+// Segment: [int MAGIC][int VERSION], then records up to the first zero length word.
+// Record:  [int length][byte flags][long id][long recipient][long timestamp][long hash]
+//          [int text length or -1][text UTF-8], and for VERBATIM rows five more
+//          [int length or -1][UTF-8] strings: ID, recipient, hash, date, time.
+// The length word is written after the rest of the record, so a record torn by the process
+// dying mid-add reads as the end of the segment and is overwritten by the next add. That
+// only holds while the pages survive in the OS page cache: the OS writes dirty pages back in
+// no set order, so after a power loss only what sync() forced is known to be whole. Deletes
+// set the DELETED flag in place. close() unmaps the segments; the store is unusable after.
+final class MappedMessageStore implements MessageStore {
+    static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+    private static final int MAGIC = 0x4d534753; // "MSGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_BYTES = 1 + 4 * 8 + 4;
+    private static final byte DELETED = 1;
+    private static final byte VERBATIM = 2;
+    private static final int INITIAL_ROWS = 1024;
+    // Field offsets from the start of a record (its length word).
+    private static final int AT_FLAGS = 4, AT_ID = 5, AT_RECIPIENT = 13, AT_TIMESTAMP = 21, AT_HASH = 29, AT_TEXT = 37;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final BitSet dirtySegments = new BitSet();
+    private int writePosition;
+
+    private long[] offsets = new long[INITIAL_ROWS];
+    private final LiveRows live = new LiveRows();
+    private boolean closed;
+    private final BitSet irregular = new BitSet();
+    private boolean timeOrdered = true;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private long maxId = 0;
+
+    private final LongRowIndex rowById = new LongRowIndex(INITIAL_ROWS);
+    private final LongRowIndex rowByHash = new LongRowIndex(INITIAL_ROWS);
+    private final RecipientDictionary dictionary = new RecipientDictionary(INITIAL_ROWS);
+
+    MappedMessageStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    MappedMessageStore(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes < HEADER_BYTES + 4 + FIXED_BYTES) throw new IllegalArgumentException("Segment too small");
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        for (int n = 0; Files.exists(segmentFile(n)); n++) {
+            MappedByteBuffer segment = map(segmentFile(n), false);
+            if (segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION) {
+                throw new IOException(segmentFile(n) + " is not a message segment");
+            }
+            segments.add(segment);
+            writePosition = scan(n, segment);
+        }
+        if (segments.isEmpty()) newSegment();
+    }
+
+    private Path segmentFile(int n) {
+        return directory.resolve(String.format("segment-%05d.seg", n));
+    }
+
+    // Existing segments are mapped at their own size, so a changed segmentBytes only affects new ones.
+    private MappedByteBuffer map(Path file, boolean create) throws IOException {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = create ? segmentBytes : channel.size();
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void newSegment() throws IOException {
+        int n = segments.size();
+        MappedByteBuffer segment = map(segmentFile(n), true);
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segments.add(segment);
+        dirtySegments.set(n);
+        writePosition = HEADER_BYTES;
+    }
+
+    // Indexes the records of one segment from their headers; returns the end of the last whole record.
+    private int scan(int n, MappedByteBuffer segment) {
+        int pos = HEADER_BYTES;
+        while (pos + 4 <= segment.capacity()) {
+            int length = segment.getInt(pos);
+            if (length < FIXED_BYTES || length > segment.capacity() - pos - 4) break;
+            int row = newRow(n, pos);
+            byte flags = segment.get(pos + AT_FLAGS);
+            if ((flags & DELETED) != 0) {
+                live.delete(row);
+            } else {
+                index(row, segment, pos, flags);
+            }
+            pos += 4 + length;
+        }
+        return pos;
+    }
+
+    private int newRow(int segment, int pos) {
+        int row = live.add();
+        if (row == offsets.length) offsets = Arrays.copyOf(offsets, row * 2);
+        offsets[row] = (long) segment << 32 | pos;
+        return row;
+    }
+
+    private void index(int row, MappedByteBuffer segment, int pos, byte flags) {
+        if ((flags & VERBATIM) != 0) {
+            irregular.set(row);
+            return;
+        }
+        long timestamp = segment.getLong(pos + AT_TIMESTAMP);
+        if (timestamp < maxTimestamp) timeOrdered = false;
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        maxId = Math.max(maxId, segment.getLong(pos + AT_ID));
+        rowById.put(segment.getLong(pos + AT_ID), row);
+        rowByHash.put(segment.getLong(pos + AT_HASH), row);
+        dictionary.add(segment.getLong(pos + AT_RECIPIENT), row);
+    }
+
+    private MappedByteBuffer segmentOf(int row) {
+        checkOpen();
+        return segments.get((int) (offsets[row] >>> 32));
+    }
+
+    // An unmapped segment must never be touched again: that would crash the JVM, not throw.
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("Message store is closed");
+    }
+
+    private static int positionOf(long offset) {
+        return (int) offset;
+    }
+
+    private long field(int row, int at) {
+        return segmentOf(row).getLong(positionOf(offsets[row]) + at);
+    }
+
+    private long timestampOf(int row) {
+        return irregular.get(row) ? MessageCodec.NONE : field(row, AT_TIMESTAMP);
+    }
+
+    @Override
+    public synchronized void add(Message m) {
+        String[] verbatim = m.verbatim();
+        byte[][] strings = null;
+        int length = FIXED_BYTES + (m.textBytes() == null ? 0 : m.textBytes().length);
+        if (verbatim != null) {
+            strings = new byte[verbatim.length][];
+            for (int i = 0; i < verbatim.length; i++) {
+                strings[i] = verbatim[i] == null ? null : verbatim[i].getBytes(StandardCharsets.UTF_8);
+                length += 4 + (strings[i] == null ? 0 : strings[i].length);
+            }
+        }
+        checkOpen();
+        if (HEADER_BYTES + 4 + length > segmentBytes) {
+            throw new IllegalArgumentException("Message " + m.getMessageID() + " is larger than a segment");
+        }
+        if (writePosition + 4 + length > segments.get(segments.size() - 1).capacity()) {
+            try {
+                newSegment();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int n = segments.size() - 1;
+        MappedByteBuffer segment = segments.get(n);
+        int pos = writePosition;
+        byte flags = verbatim == null ? 0 : VERBATIM;
+        segment.put(pos + AT_FLAGS, flags);
+        segment.putLong(pos + AT_ID, m.idBits());
+        segment.putLong(pos + AT_RECIPIENT, m.recipientBits());
+        segment.putLong(pos + AT_TIMESTAMP, m.timestampBits());
+        segment.putLong(pos + AT_HASH, m.hashBits());
+        int at = putBytes(segment, pos + AT_TEXT, m.textBytes());
+        if (strings != null) {
+            for (byte[] s : strings) at = putBytes(segment, at, s);
+        }
+        segment.putInt(pos, length);
+        writePosition = pos + 4 + length;
+        dirtySegments.set(n);
+        int row = newRow(n, pos);
+        index(row, segment, pos, flags);
+    }
+
+    private static int putBytes(MappedByteBuffer segment, int at, byte[] bytes) {
+        if (bytes == null) {
+            segment.putInt(at, -1);
+            return at + 4;
+        }
+        segment.putInt(at, bytes.length);
+        segment.put(at + 4, bytes);
+        return at + 4 + bytes.length;
+    }
+
+    @Override
+    public synchronized boolean remove(Message m) {
+        int row = rowOf(m);
+        if (row < 0) return false;
+        MappedByteBuffer segment = segmentOf(row);
+        int pos = positionOf(offsets[row]);
+        segment.put(pos + AT_FLAGS, (byte) (segment.get(pos + AT_FLAGS) | DELETED));
+        dirtySegments.set((int) (offsets[row] >>> 32));
+        live.delete(row);
+        if (!irregular.get(row)) {
+            rowById.remove(field(row, AT_ID), row);
+            rowByHash.remove(field(row, AT_HASH), row);
+            dictionary.removed(dictionary.codeOf(field(row, AT_RECIPIENT)));
+        }
+        return true;
+    }
+
+    private int rowOf(Message m) {
+        long hash = MessageCodec.packHash(m.getMessageHash());
+        if (hash != MessageCodec.NONE) {
+            long id = MessageCodec.packId(m.getMessageID());
+            int row = rowByHash.find(hash, r -> field(r, AT_ID) == id);
+            if (row >= 0) return row;
+        }
+        for (int row = irregular.nextSetBit(0); row >= 0; row = irregular.nextSetBit(row + 1)) {
+            if (!live.isLive(row)) continue;
+            Message stored = materialize(row);
+            if (Objects.equals(stored.getMessageHash(), m.getMessageHash())
+                    && Objects.equals(stored.getMessageID(), m.getMessageID())) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private Message materialize(int row) {
+        MappedByteBuffer segment = segmentOf(row);
+        int pos = positionOf(offsets[row]);
+        int at = pos + AT_TEXT;
+        byte[] text = readBytes(segment, at);
+        at += 4 + (text == null ? 0 : text.length);
+        String[] verbatim = null;
+        if (irregular.get(row)) {
+            verbatim = new String[5];
+            for (int i = 0; i < verbatim.length; i++) {
+                byte[] s = readBytes(segment, at);
+                at += 4 + (s == null ? 0 : s.length);
+                verbatim[i] = s == null ? null : new String(s, StandardCharsets.UTF_8);
+            }
+        }
+        return new Message(segment.getLong(pos + AT_ID), segment.getLong(pos + AT_RECIPIENT),
+                segment.getLong(pos + AT_TIMESTAMP), segment.getLong(pos + AT_HASH), text, verbatim);
+    }
+
+    private static byte[] readBytes(MappedByteBuffer segment, int at) {
+        int length = segment.getInt(at);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        segment.get(at + 4, bytes);
+        return bytes;
+    }
+
+    @Override
+    public synchronized int size() {
+        return live.live();
+    }
+
+    @Override
+    public synchronized List<Message> page(int offset, int limit) {
+        List<Message> out = new ArrayList<>(Math.max(0, Math.min(limit, live.live() - offset)));
+        for (int row = live.nthLive(offset); row < live.rows() && out.size() < limit; row = live.nextLive(row + 1)) {
+            out.add(materialize(row));
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized Message findById(String messageID) {
+        long id = MessageCodec.packId(messageID);
+        if (id != MessageCodec.NONE) {
+            int row = rowById.get(id);
+            if (row >= 0) return materialize(row);
+        }
+        for (int row = irregular.nextSetBit(0); row >= 0; row = irregular.nextSetBit(row + 1)) {
+            if (!live.isLive(row)) continue;
+            Message m = materialize(row);
+            if (m.getMessageID() != null && m.getMessageID().equals(messageID)) return m;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Message findByHash(String messageHash) {
+        long hash = MessageCodec.packHash(messageHash);
+        if (hash != MessageCodec.NONE) {
+            int row = rowByHash.get(hash);
+            if (row >= 0) return materialize(row);
+        }
+        for (int row = irregular.nextSetBit(0); row >= 0; row = irregular.nextSetBit(row + 1)) {
+            if (!live.isLive(row)) continue;
+            Message m = materialize(row);
+            if (m.getMessageHash() != null && m.getMessageHash().equals(messageHash)) return m;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<Message> findByRecipient(String recipient) {
+        List<Message> out = new ArrayList<>();
+        dictionary.forEachRow(dictionary.codeOf(recipient), row -> {
+            if (live.isLive(row)) out.add(materialize(row));
+        });
+        for (int row = irregular.nextSetBit(0); row >= 0; row = irregular.nextSetBit(row + 1)) {
+            if (!live.isLive(row)) continue;
+            Message m = materialize(row);
+            if (recipient != null && recipient.equals(m.getRecipient())) out.add(m);
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized int countByRecipient(String recipient) {
+        int count = dictionary.liveCount(dictionary.codeOf(recipient));
+        for (int row = irregular.nextSetBit(0); row >= 0; row = irregular.nextSetBit(row + 1)) {
+            if (live.isLive(row) && recipient != null && recipient.equals(materialize(row).getRecipient())) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized List<Message> findBetween(LocalDateTime from, LocalDateTime to) {
+        long lo = MessageCodec.packDateTime(from), hi = MessageCodec.packDateTime(to);
+        List<Message> out = new ArrayList<>();
+        int rows = live.rows();
+        if (timeOrdered) {
+            for (int row = firstRowAtOrAfter(lo); row < rows; row++) {
+                long t = timestampOf(row);
+                if (t == MessageCodec.NONE) continue;
+                if (t > hi) break;
+                if (live.isLive(row)) out.add(materialize(row));
+            }
+        } else {
+            List<Integer> matches = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                long t = timestampOf(row);
+                if (t != MessageCodec.NONE && t >= lo && t <= hi && live.isLive(row)) matches.add(row);
+            }
+            matches.sort((a, b) -> Long.compare(timestampOf(a), timestampOf(b)));
+            for (int row : matches) out.add(materialize(row));
+        }
+        return out;
+    }
+
+    // Binary search over the mapped timestamps; irregular rows are stepped over.
+    private int firstRowAtOrAfter(long t) {
+        int lo = 0, hi = live.rows();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int probe = mid;
+            while (probe < hi && irregular.get(probe)) probe++;
+            if (probe == hi) {
+                hi = mid;
+            } else if (timestampOf(probe) < t) {
+                lo = probe + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public synchronized long maxId() {
+        return maxId;
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    // Writes the dirty segment pages back to their files.
+    @Override
+    public synchronized void sync() {
+        checkOpen();
+        for (int n = dirtySegments.nextSetBit(0); n >= 0; n = dirtySegments.nextSetBit(n + 1)) {
+            segments.get(n).force();
+        }
+        dirtySegments.clear();
+    }
+
+    // Forces what is dirty and unmaps every segment.
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        sync();
+        closed = true;
+        for (MappedByteBuffer segment : segments) unmap(segment);
+        segments.clear();
+    }
+
+    // MappedByteBuffer has no public unmap; Unsafe.invokeCleaner releases the mapping now
+    // rather than whenever the buffer is collected, and the GC is left to it if that fails.
+    private static void unmap(MappedByteBuffer segment) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), segment);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Unmapped when the buffer is garbage collected.
+        }
+    }
+
+    // Steps are taken under the store's lock, so a close() cannot unmap a segment mid-read.
+    @Override
+    public synchronized Iterator<Message> iterator() {
+        return new Iterator<Message>() {
+            private int row = live.nextLive(0);
+
+            @Override
+            public boolean hasNext() {
+                synchronized (MappedMessageStore.this) {
+                    return row < live.rows();
+                }
+            }
+
+            @Override
+            public Message next() {
+                synchronized (MappedMessageStore.this) {
+                    if (row >= live.rows()) throw new NoSuchElementException();
+                    Message m = materialize(row);
+                    row = live.nextLive(row + 1);
+                    return m;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedMessageStoreIT {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Test of add method, of class MappedMessageStore: records survive reopening the segments,
+     * including ones that spill into a second segment.
+     */
+    @Test
+    public void testReopenRestoresRecords() throws IOException {
+        MappedMessageStore store = new MappedMessageStore(dir, 1024);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Message m = new Message("+27831234567", "Message number " + i);
+            store.add(m);
+            ids.add(m.getMessageID());
+        }
+        store.sync();
+
+        MappedMessageStore reopened = new MappedMessageStore(dir, 1024);
+        assertEquals(50, reopened.size());
+        assertEquals(store.maxId(), reopened.maxId());
+        List<String> found = new ArrayList<>();
+        for (Message m : reopened) found.add(m.getMessageID());
+        assertEquals(ids, found);
+        assertEquals("Message number 7", reopened.findById(ids.get(7)).getMessageText());
+        assertEquals(50, reopened.findByRecipient("+27831234567").size());
+    }
+
+    /**
+     * Test of remove method, of class MappedMessageStore: the delete is kept in the segment.
+     */
+    @Test
+    public void testRemoveIsPersisted() throws IOException {
+        MappedMessageStore store = new MappedMessageStore(dir);
+        Message a = new Message("+27831234567", "Where are you? You are late!");
+        Message b = new Message("+27831234567", "Yohoooo, I am at your gate.");
+        store.add(a);
+        store.add(b);
+        assertTrue(store.remove(a));
+        assertFalse(store.remove(a));
+        store.sync();
+
+        MappedMessageStore reopened = new MappedMessageStore(dir);
+        assertEquals(1, reopened.size());
+        assertNull(reopened.findByHash(a.getMessageHash()));
+        assertEquals(b.getMessageID(), reopened.page(0, 10).get(0).getMessageID());
+    }
+
+    /**
+     * Test of add method, of class MappedMessageStore, with fields that cannot be packed.
+     */
+    @Test
+    public void testKeepsIrregularFieldsVerbatim() throws IOException {
+        MappedMessageStore store = new MappedMessageStore(dir);
+        store.add(Message.restore("abc", "0831234567", "odd", "HASH_ERR", "17 June", null));
+        store.sync();
+
+        Message found = new MappedMessageStore(dir).findById("abc");
+        assertEquals("0831234567", found.getRecipient());
+        assertEquals("odd", found.getMessageText());
+        assertEquals("HASH_ERR", found.getMessageHash());
+        assertEquals("17 June", found.getDate());
+        assertNull(found.getTime());
+    }
+
+    /**
+     * Test of page and close methods, of class MappedMessageStore: pages after deletes skip the
+     * removed rows, also once reopened, and a closed store refuses to be used.
+     */
+    @Test
+    public void testPageAfterDeletesAndClose() throws IOException {
+        MappedMessageStore store = new MappedMessageStore(dir, 64 << 10);
+        List<String> expected = new ArrayList<>();
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) batch.add(new Message("+27831234567", "Message " + i));
+        store.addAll(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            if (i % 3 == 0) assertTrue(store.remove(batch.get(i)));
+            else expected.add(batch.get(i).getMessageText());
+        }
+        assertEquals(expected.subList(1500, 1600), texts(store.page(1500, 100)));
+        assertTrue(store.page(expected.size(), 10).isEmpty());
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.page(0, 10));
+        assertThrows(IllegalStateException.class, () -> store.add(batch.get(0)));
+
+        MappedMessageStore reopened = new MappedMessageStore(dir, 64 << 10);
+        assertEquals(expected.size(), reopened.size());
+        assertEquals(expected.subList(expected.size() - 5, expected.size()), texts(reopened.page(expected.size() - 5, 10)));
+        assertEquals(expected, texts(reopened));
+        reopened.close();
+    }
+
+    /**
+     * Test of findById and remove methods, of class MappedMessageStore, with legacy messages
+     * that share an ID: each stays findable and removable on its own, also once reopened.
+     */
+    @Test
+    public void testDuplicateIds() throws IOException {
+        MappedMessageStore store = new MappedMessageStore(dir);
+        Message a = Message.restore("0000000001", "+27831234567", "A", "00000000000a", "2024-01-01", "10:00:00");
+        Message b = Message.restore("0000000001", "+27831234567", "B", "00000000000b", "2024-01-01", "10:00:01");
+        store.add(a);
+        store.add(b);
+        assertEquals("A", store.findById("0000000001").getMessageText());
+        assertEquals("B", store.findByHash("00000000000b").getMessageText());
+        assertTrue(store.remove(a));
+        assertEquals("B", store.findById("0000000001").getMessageText());
+        store.close();
+
+        MappedMessageStore reopened = new MappedMessageStore(dir);
+        assertEquals("B", reopened.findById("0000000001").getMessageText());
+        assertNull(reopened.findByHash("00000000000a"));
+        assertTrue(reopened.remove(b));
+        assertNull(reopened.findById("0000000001"));
+        reopened.close();
+    }
+
+    private static List<String> texts(Iterable<Message> all) {
+        List<String> found = new ArrayList<>();
+        for (Message m : all) found.add(m.getMessageText());
+        return found;
+    }
+}
@@ -0,0 +1,583 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Cold tier of TieredMessageStore: immutable segment files, one or more per day of send time,
+// each a short header followed by a Deflater-compressed run of records. The header holds the
+// segment's ID and time ranges and a BloomFilter over its IDs, hashes and recipients, so a
+// lookup only inflates segments that may hold a match and a time range only the days it
+// covers. Only the headers' fixed part is kept in memory; filters and inflated segments are
+// read on demand into small LRU caches, so the heap does not grow with the archive.
+//
+// Segment files are never modified. A delete is a tombstone (segment, record number)
+// appended to deleted.log, so it hides that one record even when legacy messages share an ID; segments past the retention period are deleted whole. A day's last segment
+// still under targetSize is merged with the next batch for that day into a new segment,
+// which names the one it replaces, so a day of trickling writes does not become hundreds of
+// tiny files and a crash between writing the new one and deleting the old one is undone at
+// the next open.
+//
+// File:   [int MAGIC][int VERSION][long day][int sequence][int replaces or -1][int count]
+//         [long minId][long maxId][long minTimestamp][long maxTimestamp][int hashes]
+//         [int filterWords][long filter...][deflated records]
+// Record: [byte flags][long id][long recipient][long timestamp][long hash][int text length
+//         or -1][text UTF-8], and for VERBATIM records five [int length or -1][UTF-8] strings.
+final class MessageArchive {
+    static final long UNDATED = Long.MIN_VALUE;
+    static final int FILTER_CACHE = 256;
+    static final int SEGMENT_CACHE = 4;
+    private static final int MAGIC = 0x4d534741; // "MSGA"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4 + 8 * 4 + 4 + 4;
+    private static final byte VERBATIM = 1;
+    private static final String TOMBSTONES = "deleted.log";
+    // Salts keeping the three kinds of key apart in one filter.
+    private static final long ID_KEY = 0x1d8e4e27c47d124fL, HASH_KEY = 0x2545f4914f6cdd1dL, RECIPIENT_KEY = 0x5851f42d4c957f2dL;
+
+    static final class Segment {
+        final Path file;
+        final long day;
+        final int sequence;
+        final int replaces;
+        final int count;
+        final long minId, maxId, minTimestamp, maxTimestamp;
+        final int hashes, filterWords;
+        final BitSet deletedRows = new BitSet();
+        int deleted;
+
+        private Segment(Path file, long day, int sequence, int replaces, int count, long minId, long maxId,
+                long minTimestamp, long maxTimestamp, int hashes, int filterWords) {
+            this.file = file;
+            this.day = day;
+            this.sequence = sequence;
+            this.replaces = replaces;
+            this.count = count;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.hashes = hashes;
+            this.filterWords = filterWords;
+        }
+
+        int live() {
+            return count - deleted;
+        }
+
+        String name() {
+            return file.getFileName().toString();
+        }
+    }
+
+    private static final Comparator<Segment> ORDER = Comparator.<Segment>comparingLong(s -> s.day).thenComparingInt(s -> s.sequence);
+
+    private final Path directory;
+    private final int targetSize;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, Segment> byName = new HashMap<>();
+    private final LinkedHashMap<Segment, BloomFilter> filters = lru(FILTER_CACHE);
+    private final LinkedHashMap<Segment, List<Message>> inflated = lru(SEGMENT_CACHE);
+    private DataOutputStream tombstones;
+    private FileChannel tombstoneChannel;
+
+    MessageArchive(Path directory, int targetSize) throws IOException {
+        if (targetSize < 1) throw new IllegalArgumentException("targetSize must be positive");
+        this.directory = directory;
+        this.targetSize = targetSize;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.seg")) {
+            for (Path file : files) add(readHeader(file));
+        }
+        // Finish merges a crash interrupted: drop segments that a newer one replaces.
+        for (Segment s : new ArrayList<>(segments)) {
+            if (s.replaces < 0) continue;
+            Segment replaced = byName.get(fileName(s.day, s.replaces));
+            if (replaced != null) {
+                segments.remove(replaced);
+                byName.remove(replaced.name());
+                Files.deleteIfExists(replaced.file);
+            }
+        }
+        segments.sort(ORDER);
+        Path log = directory.resolve(TOMBSTONES);
+        if (Files.exists(log)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+                while (true) {
+                    String segment;
+                    int row;
+                    try {
+                        segment = in.readUTF();
+                        row = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    Segment s = byName.get(segment);
+                    if (s != null && row >= 0 && row < s.count) markDeleted(s, row);
+                }
+            }
+        }
+        openTombstones();
+    }
+
+    private static <K, V> LinkedHashMap<K, V> lru(int capacity) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static void markDeleted(Segment s, int row) {
+        if (s.deletedRows.get(row)) return;
+        s.deletedRows.set(row);
+        s.deleted++;
+    }
+
+    private void add(Segment s) {
+        segments.add(s);
+        byName.put(s.name(), s);
+    }
+
+    private void openTombstones() throws IOException {
+        tombstoneChannel = FileChannel.open(directory.resolve(TOMBSTONES), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        tombstones = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(tombstoneChannel)));
+    }
+
+    static long dayOf(Message m) {
+        long t = m.timestampBits();
+        return t == MessageCodec.NONE ? UNDATED : Math.floorDiv(t, 86400);
+    }
+
+    private static String fileName(long day, int sequence) {
+        return String.format("%s-%04d.seg", day == UNDATED ? "undated" : LocalDate.ofEpochDay(day).toString(), sequence);
+    }
+
+    // Writes batch as new segments, one per day it covers, merging each day's part into that
+    // day's last segment while the two fit in targetSize.
+    void write(List<Message> batch) throws IOException {
+        TreeMap<Long, List<Message>> byDay = new TreeMap<>();
+        for (Message m : batch) byDay.computeIfAbsent(dayOf(m), d -> new ArrayList<>()).add(m);
+        boolean mergedDeletes = false;
+        for (Map.Entry<Long, List<Message>> e : byDay.entrySet()) {
+            long day = e.getKey();
+            Segment last = null;
+            for (Segment s : segments) {
+                if (s.day == day && (last == null || s.sequence > last.sequence)) last = s;
+            }
+            int sequence = last == null ? 0 : last.sequence + 1;
+            if (last != null && last.live() + e.getValue().size() <= targetSize) {
+                List<Message> merged = new ArrayList<>(last.live() + e.getValue().size());
+                List<Message> records = records(last);
+                for (int i = 0; i < records.size(); i++) {
+                    if (!last.deletedRows.get(i)) merged.add(records.get(i));
+                }
+                merged.addAll(e.getValue());
+                add(writeSegment(day, sequence, last.sequence, merged));
+                segments.remove(last);
+                byName.remove(last.name());
+                filters.remove(last);
+                inflated.remove(last);
+                Files.deleteIfExists(last.file);
+                mergedDeletes |= last.deleted > 0;
+            } else {
+                add(writeSegment(day, sequence, -1, e.getValue()));
+            }
+        }
+        segments.sort(ORDER);
+        if (mergedDeletes) rewriteTombstones();
+    }
+
+    private Segment writeSegment(long day, int sequence, int replaces, List<Message> records) throws IOException {
+        Path file = directory.resolve(fileName(day, sequence));
+        BloomFilter filter = BloomFilter.forKeys(records.size() * 3);
+        long minId = Long.MAX_VALUE, maxId = Long.MIN_VALUE, minTs = Long.MAX_VALUE, maxTs = Long.MIN_VALUE;
+        for (Message m : records) {
+            filter.add(idKey(m.getMessageID()));
+            filter.add(hashKey(m.getMessageHash()));
+            filter.add(recipientKey(m.getRecipient()));
+            if (m.idBits() != MessageCodec.NONE) {
+                minId = Math.min(minId, m.idBits());
+                maxId = Math.max(maxId, m.idBits());
+            }
+            if (m.timestampBits() != MessageCodec.NONE) {
+                minTs = Math.min(minTs, m.timestampBits());
+                maxTs = Math.max(maxTs, m.timestampBits());
+            }
+        }
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(day);
+            out.writeInt(sequence);
+            out.writeInt(replaces);
+            out.writeInt(records.size());
+            out.writeLong(minId);
+            out.writeLong(maxId);
+            out.writeLong(minTs);
+            out.writeLong(maxTs);
+            out.writeInt(filter.hashes());
+            out.writeInt(filter.words().length);
+            for (long w : filter.words()) out.writeLong(w);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try {
+                DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 1 << 16);
+                DataOutputStream body = new DataOutputStream(deflated);
+                for (Message m : records) writeRecord(body, m);
+                body.flush();
+                deflated.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Segment s = new Segment(file, day, sequence, replaces, records.size(), minId, maxId, minTs, maxTs,
+                filter.hashes(), filter.words().length);
+        filters.put(s, filter);
+        return s;
+    }
+
+    private static Segment readHeader(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), FIXED_HEADER_BYTES))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException(file + " is not an archive segment");
+            return new Segment(file, in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readLong(),
+                    in.readLong(), in.readLong(), in.readInt(), in.readInt());
+        }
+    }
+
+    private BloomFilter filter(Segment s) {
+        BloomFilter f = filters.get(s);
+        if (f != null) return f;
+        try (FileChannel channel = FileChannel.open(s.file, StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate(s.filterWords * 8);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, FIXED_HEADER_BYTES + bytes.position()) < 0) throw new EOFException(s.file.toString());
+            }
+            long[] words = new long[s.filterWords];
+            bytes.flip();
+            bytes.asLongBuffer().get(words);
+            f = new BloomFilter(words, s.hashes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        filters.put(s, f);
+        return f;
+    }
+
+    // Every record of the segment, deleted ones included.
+    private List<Message> records(Segment s) {
+        List<Message> records = inflated.get(s);
+        if (records != null) return records;
+        records = new ArrayList<>(s.count);
+        Inflater inflater = new Inflater();
+        try (InputStream file = Files.newInputStream(s.file)) {
+            file.skipNBytes(FIXED_HEADER_BYTES + 8L * s.filterWords);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(file, inflater, 1 << 16)));
+            for (int i = 0; i < s.count; i++) records.add(readRecord(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            inflater.end();
+        }
+        inflated.put(s, records);
+        return records;
+    }
+
+    static long idKey(String messageID) {
+        long packed = MessageCodec.packId(messageID);
+        return (packed == MessageCodec.NONE ? BloomFilter.hash(String.valueOf(messageID)) : packed) ^ ID_KEY;
+    }
+
+    static long hashKey(String messageHash) {
+        long packed = MessageCodec.packHash(messageHash);
+        return (packed == MessageCodec.NONE ? BloomFilter.hash(String.valueOf(messageHash)) : packed) ^ HASH_KEY;
+    }
+
+    static long recipientKey(String recipient) {
+        long packed = MessageCodec.packRecipient(recipient);
+        return (packed == MessageCodec.NONE ? BloomFilter.hash(String.valueOf(recipient)) : packed) ^ RECIPIENT_KEY;
+    }
+
+    // Live records of the segments whose filter passes key and that match.
+    private List<Message> find(long key, Predicate<Segment> mayHold, Predicate<Message> matches, int max) {
+        List<Message> out = new ArrayList<>();
+        for (Segment s : segments) {
+            if (s.live() == 0 || !mayHold.test(s) || !filter(s).mightContain(key)) continue;
+            List<Message> records = records(s);
+            for (int i = 0; i < records.size(); i++) {
+                Message m = records.get(i);
+                if (!s.deletedRows.get(i) && matches.test(m)) {
+                    out.add(m);
+                    if (out.size() == max) return out;
+                }
+            }
+        }
+        return out;
+    }
+
+    Message findById(String messageID) {
+        long packed = MessageCodec.packId(messageID);
+        List<Message> found = find(idKey(messageID),
+                s -> packed == MessageCodec.NONE || (packed >= s.minId && packed <= s.maxId),
+                m -> m.getMessageID().equals(messageID), 1);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // True if a live record has both m's ID and hash.
+    boolean contains(Message m) {
+        long packed = m.idBits();
+        return !find(idKey(m.getMessageID()), s -> packed == MessageCodec.NONE || (packed >= s.minId && packed <= s.maxId),
+                stored -> stored.getMessageID().equals(m.getMessageID())
+                        && Objects.equals(stored.getMessageHash(), m.getMessageHash()), 1).isEmpty();
+    }
+
+    Message findByHash(String messageHash) {
+        List<Message> found = find(hashKey(messageHash), s -> true, m -> messageHash.equals(m.getMessageHash()), 1);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    List<Message> findByRecipient(String recipient) {
+        return find(recipientKey(recipient), s -> true, m -> recipient.equals(m.getRecipient()), Integer.MAX_VALUE);
+    }
+
+    // Live records sent between the two epoch-second times, inclusive, day by day.
+    List<Message> findBetween(long from, long to) {
+        List<Message> out = new ArrayList<>();
+        for (Segment s : segments) {
+            if (s.live() == 0 || s.day == UNDATED || s.maxTimestamp < from || s.minTimestamp > to) continue;
+            List<Message> records = records(s);
+            for (int i = 0; i < records.size(); i++) {
+                long t = records.get(i).timestampBits();
+                if (t != MessageCodec.NONE && t >= from && t <= to && !s.deletedRows.get(i)) out.add(records.get(i));
+            }
+        }
+        return out;
+    }
+
+    // Tombstones the first live record with m's ID and hash; false if there is none.
+    boolean remove(Message m) throws IOException {
+        String id = m.getMessageID();
+        long packed = MessageCodec.packId(id);
+        for (Segment s : segments) {
+            if (s.live() == 0 || (packed != MessageCodec.NONE && (packed < s.minId || packed > s.maxId))) continue;
+            if (!filter(s).mightContain(idKey(id))) continue;
+            List<Message> records = records(s);
+            for (int i = 0; i < records.size(); i++) {
+                Message stored = records.get(i);
+                if (!s.deletedRows.get(i) && stored.getMessageID().equals(id)
+                        && Objects.equals(stored.getMessageHash(), m.getMessageHash())) {
+                    tombstones.writeUTF(s.name());
+                    tombstones.writeInt(i);
+                    tombstones.flush();
+                    markDeleted(s, i);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Deletes every segment of a day before firstKeptDay (undated ones are kept); returns how
+    // many messages went with them.
+    int dropBefore(long firstKeptDay) throws IOException {
+        int dropped = 0;
+        boolean any = false;
+        for (Iterator<Segment> it = segments.iterator(); it.hasNext(); ) {
+            Segment s = it.next();
+            if (s.day == UNDATED || s.day >= firstKeptDay) continue;
+            Files.deleteIfExists(s.file);
+            it.remove();
+            byName.remove(s.name());
+            filters.remove(s);
+            inflated.remove(s);
+            dropped += s.live();
+            any |= s.deleted > 0;
+        }
+        if (any) rewriteTombstones();
+        return dropped;
+    }
+
+    // Keeps only the tombstones of segments that still exist.
+    private void rewriteTombstones() throws IOException {
+        Path log = directory.resolve(TOMBSTONES);
+        tombstones.close();
+        Path temp = directory.resolve(TOMBSTONES + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (Segment s : segments) {
+                for (int row = s.deletedRows.nextSetBit(0); row >= 0; row = s.deletedRows.nextSetBit(row + 1)) {
+                    out.writeUTF(s.name());
+                    out.writeInt(row);
+                }
+            }
+        }
+        Files.move(temp, log, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        openTombstones();
+    }
+
+    int size() {
+        int total = 0;
+        for (Segment s : segments) total += s.live();
+        return total;
+    }
+
+    long maxId() {
+        long max = 0;
+        for (Segment s : segments) max = Math.max(max, s.maxId);
+        return max;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    // Live records from the offset-th on, skipping whole segments by their live counts.
+    List<Message> page(int offset, int limit) {
+        List<Message> out = new ArrayList<>(Math.min(limit, 1024));
+        for (Segment s : segments) {
+            if (out.size() == limit) break;
+            if (offset >= s.live()) {
+                offset -= s.live();
+                continue;
+            }
+            List<Message> records = records(s);
+            for (int i = 0; i < records.size(); i++) {
+                if (s.deletedRows.get(i)) continue;
+                if (offset > 0) {
+                    offset--;
+                } else {
+                    out.add(records.get(i));
+                    if (out.size() == limit) break;
+                }
+            }
+        }
+        return out;
+    }
+
+    // Live records in day order, inflating one segment at a time.
+    Iterator<Message> iterator() {
+        List<Segment> snapshot = new ArrayList<>(segments);
+        return new Iterator<Message>() {
+            private int segment = 0;
+            private Segment current;
+            private List<Message> records = List.of();
+            private int i = 0;
+            private Message next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    if (i < records.size()) {
+                        Message m = records.get(i);
+                        if (!current.deletedRows.get(i++)) next = m;
+                    } else if (segment < snapshot.size()) {
+                        current = snapshot.get(segment++);
+                        records = current.live() == 0 ? List.of() : records(current);
+                        i = 0;
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Message m = next;
+                next = null;
+                return m;
+            }
+        };
+    }
+
+    void sync() throws IOException {
+        tombstones.flush();
+        tombstoneChannel.force(false);
+    }
+
+    void close() throws IOException {
+        tombstones.close();
+    }
+
+    static void writeRecord(DataOutput out, Message m) throws IOException {
+        String[] verbatim = m.verbatim();
+        out.writeByte(verbatim == null ? 0 : VERBATIM);
+        out.writeLong(m.idBits());
+        out.writeLong(m.recipientBits());
+        out.writeLong(m.timestampBits());
+        out.writeLong(m.hashBits());
+        writeBytes(out, m.textBytes());
+        if (verbatim != null) {
+            for (String s : verbatim) writeBytes(out, s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static Message readRecord(DataInput in) throws IOException {
+        byte flags = in.readByte();
+        long id = in.readLong(), recipient = in.readLong(), timestamp = in.readLong(), hash = in.readLong();
+        byte[] text = readBytes(in);
+        String[] verbatim = null;
+        if ((flags & VERBATIM) != 0) {
+            verbatim = new String[5];
+            for (int i = 0; i < verbatim.length; i++) {
+                byte[] b = readBytes(in);
+                verbatim[i] = b == null ? null : new String(b, StandardCharsets.UTF_8);
+            }
+        }
+        return new Message(id, recipient, timestamp, hash, text, verbatim);
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,144 @@
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Headless message creation: validates and builds a batch of messages without any prompts.
+// Persisting the accepted messages is left to MainApp.sendBatch so a batch is one journal write.
+final class MessageBatch {
+    static final String INVALID_RECIPIENT = "Cell phone number incorrectly formatted or does not contain international code.";
+    static final String INVALID_MESSAGE = "Message exceeds 250 characters, please reduce size.";
+    static final String INVALID_SEND_AT = "Send time must be formatted as yyyy-MM-ddTHH:mm[:ss].";
+    static final String MISSING_TAB = "Line must be the recipient, a TAB, then the message.";
+    // Result.getSendAt() of a message to be delivered straight away.
+    static final long NOW = 0;
+
+    static final class Item {
+        private final String recipient;
+        private final String messageText;
+        // Local date and time to deliver at, e.g. "2025-06-01T08:30"; null or blank for now.
+        private final String sendAt;
+        // Why the input line could not be read as an item, or null.
+        private final String error;
+
+        Item(String recipient, String messageText) {
+            this(recipient, messageText, null);
+        }
+
+        Item(String recipient, String messageText, String sendAt) {
+            this(recipient, messageText, sendAt, null);
+        }
+
+        private Item(String recipient, String messageText, String sendAt, String error) {
+            this.recipient = recipient;
+            this.messageText = messageText;
+            this.sendAt = sendAt;
+            this.error = error;
+        }
+
+        String getRecipient() { return recipient; }
+        String getMessageText() { return messageText; }
+        String getSendAt() { return sendAt; }
+        String getError() { return error; }
+    }
+
+    static final class Result {
+        private final int index;
+        private final Message message;
+        private final String error;
+        private final long sendAt;
+        private final boolean duplicate;
+
+        private Result(int index, Message message, String error, long sendAt, boolean duplicate) {
+            this.index = index;
+            this.message = message;
+            this.error = error;
+            this.sendAt = sendAt;
+            this.duplicate = duplicate;
+        }
+
+        int getIndex() { return index; }
+        boolean isSent() { return message != null; }
+        // The created message, or null when the item was rejected.
+        Message getMessage() { return message; }
+        // Why the item was rejected, or null when it was sent.
+        String getError() { return error; }
+        // Epoch millis to deliver at, or NOW.
+        long getSendAt() { return sendAt; }
+        // True when getMessage() is an earlier message with the same recipient and text (see
+        // DuplicateFilter); it is already stored and scheduled.
+        boolean isDuplicate() { return duplicate; }
+    }
+
+    private MessageBatch() { }
+
+    static Result build(int index, Item item) {
+        return build(index, item, null);
+    }
+
+    // With duplicates set, a repeat of a recent send is answered with the earlier message.
+    static Result build(int index, Item item, DuplicateFilter duplicates) {
+        long started = Metrics.VALIDATE.start();
+        String error = null;
+        long sendAt = parseSendAt(item.getSendAt());
+        if (item.getError() != null) {
+            error = item.getError();
+        } else if (item.getRecipient() == null || !Message.checkRecipientCell(item.getRecipient())) {
+            error = INVALID_RECIPIENT;
+        } else if (item.getMessageText() == null || !Message.isValidMessage(item.getMessageText())) {
+            error = INVALID_MESSAGE;
+        } else if (sendAt < 0) {
+            error = INVALID_SEND_AT;
+        }
+        Metrics.VALIDATE.stop(started);
+        if (error != null) return new Result(index, null, error, NOW, false);
+        if (duplicates == null) return new Result(index, new Message(item.getRecipient(), item.getMessageText()), null, sendAt, false);
+        Message[] created = new Message[1];
+        Message m = duplicates.sendOnce(item.getRecipient(), item.getMessageText(),
+                () -> created[0] = new Message(item.getRecipient(), item.getMessageText()));
+        return new Result(index, m, null, sendAt, m != created[0]);
+    }
+
+    // Epoch millis of a local "yyyy-MM-ddTHH:mm[:ss]" time, NOW for null or blank, -1 if malformed.
+    static long parseSendAt(String sendAt) {
+        if (sendAt == null || sendAt.isBlank()) return NOW;
+        try {
+            return Math.max(1, LocalDateTime.parse(sendAt.trim()).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    // One result per item, in input order.
+    static List<Result> build(List<Item> items) {
+        return build(items, null);
+    }
+
+    static List<Result> build(List<Item> items, DuplicateFilter duplicates) {
+        List<Result> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            results.add(build(i, items.get(i), duplicates));
+        }
+        return results;
+    }
+
+    // The new messages of a batch: sent and not duplicates.
+    static List<Message> sentMessages(List<Result> results) {
+        List<Message> sent = new ArrayList<>(results.size());
+        for (Result r : results) {
+            if (r.isSent() && !r.isDuplicate()) sent.add(r.getMessage());
+        }
+        return sent;
+    }
+
+    // Parses one "recipient<TAB>message" line of a batch file; returns null for blank lines.
+    // A line without a TAB gives an item that build() rejects with MISSING_TAB; its recipient
+    // is the whole line, for the report.
+    static Item parseLine(String line) {
+        if (line.isBlank()) return null;
+        int tab = line.indexOf('\t');
+        if (tab < 0) return new Item(line.trim(), null, null, MISSING_TAB);
+        return new Item(line.substring(0, tab).trim(), line.substring(tab + 1));
+    }
+}
@@ -0,0 +1,127 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageBatchIT {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Test of parseLine method, of class MessageBatch.
+     */
+    @Test
+    public void testParseLine() {
+        assertNull(MessageBatch.parseLine("   "));
+        MessageBatch.Item item = MessageBatch.parseLine(" +27831234567 \tHi Mike,\tsee you at 8");
+        assertEquals("+27831234567", item.getRecipient());
+        assertEquals("Hi Mike,\tsee you at 8", item.getMessageText());
+        assertNull(item.getError());
+        assertEquals("", MessageBatch.parseLine("+27831234567\t").getMessageText());
+    }
+
+    /**
+     * Test of parseLine and build methods, of class MessageBatch: a line without a TAB is
+     * rejected, not sent as an empty message.
+     */
+    @Test
+    public void testMissingTabIsRejected() {
+        MessageBatch.Item item = MessageBatch.parseLine("+27831234567 Hi Mike");
+        assertEquals(MessageBatch.MISSING_TAB, item.getError());
+        assertEquals("+27831234567 Hi Mike", item.getRecipient());
+        MessageBatch.Result result = MessageBatch.build(0, item);
+        assertFalse(result.isSent());
+        assertEquals(MessageBatch.MISSING_TAB, result.getError());
+        assertEquals(MessageBatch.MISSING_TAB, MessageBatch.build(0, MessageBatch.parseLine("+27831234567")).getError());
+    }
+
+    /**
+     * Test of build method, of class MessageBatch: one result per item, in input order, each
+     * sent or rejected on its own.
+     */
+    @Test
+    public void testBuildPerItemResults() {
+        LocalDateTime at = LocalDateTime.of(2030, 6, 1, 8, 30);
+        List<MessageBatch.Result> results = MessageBatch.build(List.of(
+                new MessageBatch.Item("+27831234567", "Hi Mike"),
+                new MessageBatch.Item("0831234567", "No international code"),
+                new MessageBatch.Item("+27831234567", "x".repeat(251)),
+                new MessageBatch.Item("+27831234567", "Later", "2030-06-01T08:30"),
+                new MessageBatch.Item("+27831234567", "Whenever", "next Tuesday"),
+                new MessageBatch.Item(null, null)));
+        assertEquals(6, results.size());
+        for (int i = 0; i < results.size(); i++) assertEquals(i, results.get(i).getIndex());
+        assertTrue(results.get(0).isSent());
+        assertEquals("Hi Mike", results.get(0).getMessage().getMessageText());
+        assertEquals(MessageBatch.NOW, results.get(0).getSendAt());
+        assertEquals(MessageBatch.INVALID_RECIPIENT, results.get(1).getError());
+        assertEquals(MessageBatch.INVALID_MESSAGE, results.get(2).getError());
+        assertTrue(results.get(3).isSent());
+        assertEquals(at.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), results.get(3).getSendAt());
+        assertEquals(MessageBatch.INVALID_SEND_AT, results.get(4).getError());
+        assertEquals(MessageBatch.INVALID_RECIPIENT, results.get(5).getError());
+        assertNull(results.get(1).getMessage());
+        assertEquals(List.of(results.get(0).getMessage(), results.get(3).getMessage()), MessageBatch.sentMessages(results));
+    }
+
+    /**
+     * Test of sendBatch method, of class MainApp, through POST /send of a --server process:
+     * the accepted messages of a batch are journaled in a single write, the rejected ones not
+     * at all.
+     */
+    @Test
+    public void testSendBatchIsOneJournalWrite() throws Exception {
+        Process server = MessageServerIT.startServer(dir);
+        try {
+            String base = "http://localhost:" + MessageServerIT.readPort(server, dir);
+            HttpClient http = HttpClient.newHttpClient();
+            post(http, base + "/register", null, "{\"username\":\"al_ce\",\"password\":\"Passw0rd!\",\"cellNumber\":\"+27831234567\"}");
+            String token = JsonParser.parseString(post(http, base + "/login", null,
+                    "{\"username\":\"al_ce\",\"password\":\"Passw0rd!\"}")).getAsJsonObject().get("token").getAsString();
+            JsonArray results = JsonParser.parseString(post(http, base + "/send", token, "{\"messages\":["
+                    + "{\"recipient\":\"+27831234567\",\"messageText\":\"One\"},"
+                    + "{\"recipient\":\"083\",\"messageText\":\"Rejected\"},"
+                    + "{\"recipient\":\"+27831234567\",\"messageText\":\"Two\"}]}")).getAsJsonObject().getAsJsonArray("results");
+            assertEquals(3, results.size());
+            assertEquals(MessageBatch.INVALID_RECIPIENT, results.get(1).getAsJsonObject().get("error").getAsString());
+            String metrics = MessageServerIT.request(http, "GET", base + "/metrics?format=text", null, null).body();
+            assertTrue(metrics.contains("send.count 1\n"), metrics);
+            assertTrue(metrics.contains("send.records 2\n"), metrics);
+
+            // Killed outright, so the messages are only in the journal, not a snapshot.
+            server.destroyForcibly().waitFor();
+            HeapMessageStore stored = new HeapMessageStore();
+            try (MessageJournal journal = new MessageJournal(dir.resolve("messages.json"), dir.resolve("messages.journal"),
+                    new Gson(), 10000)) {
+                journal.load(stored, JsonStreamLoader.NO_PROGRESS);
+            }
+            List<String> texts = new ArrayList<>();
+            for (Message m : stored) texts.add(m.getMessageText());
+            assertEquals(List.of("One", "Two"), texts);
+            for (int i : new int[] {0, 2}) {
+                JsonObject message = results.get(i).getAsJsonObject().getAsJsonObject("message");
+                assertNotNull(stored.findByHash(message.get("messageHash").getAsString()));
+            }
+        } finally {
+            server.destroyForcibly().waitFor();
+        }
+    }
+
+    private static String post(HttpClient http, String url, String token, String body) throws IOException, InterruptedException {
+        HttpResponse<String> response = MessageServerIT.request(http, "POST", url, token, body);
+        assertEquals(200, response.statusCode(), response.body());
+        return response.body();
+    }
+}
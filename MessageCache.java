@@ -0,0 +1,187 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded cache of messages by ID (and by hash), with W-TinyLFU eviction: new entries go
+// into a small LRU window; what falls out of the window competes with the least recently
+// used entry of the main LRU region, and the one a frequency sketch has seen more often
+// stays. Recent messages get a chance in the window, and a burst of one-off reads cannot
+// flush out the messages that are read again and again.
+//
+// Entries not touched for idleMillis are dropped by expire(). Not thread-safe;
+// TieredMessageStore guards it.
+final class MessageCache {
+    private static final class Entry {
+        final Message message;
+        long lastAccess;
+        boolean inWindow;
+
+        Entry(Message message, long now) {
+            this.message = message;
+            this.lastAccess = now;
+        }
+    }
+
+    private final int capacity;
+    private final int windowCapacity;
+    private final long idleMillis;
+    // Access-ordered, so the eldest entry is the least recently used.
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Entry> byHash = new HashMap<>();
+    private final FrequencySketch sketch;
+    private long hits;
+    private long misses;
+
+    MessageCache(int capacity, long idleMillis) {
+        if (capacity < 1 || idleMillis < 1) throw new IllegalArgumentException("capacity and idleMillis must be positive");
+        this.capacity = capacity;
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.idleMillis = idleMillis;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    Message get(String messageID, long now) {
+        sketch.increment(BloomFilter.hash(messageID));
+        Entry e = window.get(messageID);
+        if (e == null) e = main.get(messageID);
+        return hit(e, now);
+    }
+
+    Message getByHash(String messageHash, long now) {
+        Entry e = byHash.get(messageHash);
+        if (e != null) {
+            String id = e.message.getMessageID();
+            sketch.increment(BloomFilter.hash(id));
+            // Touch it in its LRU region too.
+            if (e.inWindow) window.get(id);
+            else main.get(id);
+        }
+        return hit(e, now);
+    }
+
+    private Message hit(Entry e, long now) {
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        e.lastAccess = now;
+        return e.message;
+    }
+
+    void put(Message m, long now) {
+        String id = m.getMessageID();
+        if (window.containsKey(id) || main.containsKey(id)) return;
+        sketch.increment(BloomFilter.hash(id));
+        Entry e = new Entry(m, now);
+        e.inWindow = true;
+        window.put(id, e);
+        byHash.put(m.getMessageHash(), e);
+        if (window.size() <= windowCapacity) return;
+        Iterator<Map.Entry<String, Entry>> eldest = window.entrySet().iterator();
+        Map.Entry<String, Entry> candidate = eldest.next();
+        eldest.remove();
+        candidate.getValue().inWindow = false;
+        if (main.size() < capacity - windowCapacity) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        Map.Entry<String, Entry> victim = main.entrySet().iterator().next();
+        if (sketch.frequency(BloomFilter.hash(candidate.getKey())) > sketch.frequency(BloomFilter.hash(victim.getKey()))) {
+            main.remove(victim.getKey());
+            byHash.remove(victim.getValue().message.getMessageHash());
+            main.put(candidate.getKey(), candidate.getValue());
+        } else {
+            byHash.remove(candidate.getValue().message.getMessageHash());
+        }
+    }
+
+    void remove(Message m) {
+        Entry e = window.remove(m.getMessageID());
+        if (e == null) e = main.remove(m.getMessageID());
+        if (e != null) byHash.remove(e.message.getMessageHash());
+    }
+
+    // Drops entries idle for longer than idleMillis; each region is in access order, so this
+    // stops at the first entry still in use.
+    int expire(long now) {
+        return expire(window, now) + expire(main, now);
+    }
+
+    private int expire(LinkedHashMap<String, Entry> region, long now) {
+        int expired = 0;
+        Iterator<Entry> it = region.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (now - e.lastAccess <= idleMillis) break;
+            it.remove();
+            byHash.remove(e.message.getMessageHash());
+            expired++;
+        }
+        return expired;
+    }
+
+    void clear() {
+        window.clear();
+        main.clear();
+        byHash.clear();
+    }
+
+    int size() {
+        return window.size() + main.size();
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    // Count-min sketch of 4-bit counters, four rows, halved every 10 x capacity increments so
+    // that old popularity fades.
+    private static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private final byte[][] counters = new byte[ROWS][];
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, Math.min(capacity, 1 << 24)) * 2 - 1);
+            for (int r = 0; r < ROWS; r++) counters[r] = new byte[width];
+            mask = width - 1;
+            sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * capacity);
+        }
+
+        void increment(long key) {
+            long h = BloomFilter.mix(key);
+            for (int r = 0; r < ROWS; r++) {
+                int i = index(h, r);
+                if (counters[r][i] < 15) counters[r][i]++;
+            }
+            if (++additions >= sampleSize) halve();
+        }
+
+        int frequency(long key) {
+            long h = BloomFilter.mix(key);
+            int min = 15;
+            for (int r = 0; r < ROWS; r++) min = Math.min(min, counters[r][index(h, r)]);
+            return min;
+        }
+
+        private int index(long h, int row) {
+            return (int) BloomFilter.mix(h + row * 0x9e3779b97f4a7c15L) & mask;
+        }
+
+        private void halve() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) row[i] >>= 1;
+            }
+            additions /= 2;
+        }
+    }
+}
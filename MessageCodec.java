@@ -0,0 +1,157 @@
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Packs the string fields of a Message into longs and formats them back. Every pack method
+// returns NONE when the text would not round-trip exactly; such fields are kept verbatim.
+final class MessageCodec {
+    static final long NONE = Long.MIN_VALUE;
+    static final int ID_MIN_DIGITS = 10;
+    static final int HASH_CHARS = 12;
+    private static final int RECIPIENT_COUNT_BITS = 5;
+    private static final int RECIPIENT_MAX_DIGITS = 17;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private MessageCodec() { }
+
+    // Message IDs are decimal, zero-padded to at least ten digits.
+    static long packId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 19) return NONE;
+        long v = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9' || v > (Long.MAX_VALUE - (c - '0')) / 10) return NONE;
+            v = v * 10 + (c - '0');
+        }
+        int digits = Math.max(ID_MIN_DIGITS, digitCount(v));
+        return digits == id.length() ? v : NONE;
+    }
+
+    static String formatId(long id) {
+        String s = Long.toString(id);
+        if (s.length() >= ID_MIN_DIGITS) return s;
+        return "0".repeat(ID_MIN_DIGITS - s.length()) + s;
+    }
+
+    // "+<digits>" as (digits value << 5) | digit count, so leading zeros survive.
+    static long packRecipient(String recipient) {
+        if (recipient == null) return NONE;
+        int n = recipient.length() - 1;
+        if (n < 1 || n > RECIPIENT_MAX_DIGITS || recipient.charAt(0) != '+') return NONE;
+        long v = 0;
+        for (int i = 1; i <= n; i++) {
+            char c = recipient.charAt(i);
+            if (c < '0' || c > '9') return NONE;
+            v = v * 10 + (c - '0');
+        }
+        return (v << RECIPIENT_COUNT_BITS) | n;
+    }
+
+    static String formatRecipient(long packed) {
+        int n = (int) (packed & ((1 << RECIPIENT_COUNT_BITS) - 1));
+        long v = packed >>> RECIPIENT_COUNT_BITS;
+        char[] c = new char[n + 1];
+        c[0] = '+';
+        for (int i = n; i >= 1; i--) {
+            c[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return new String(c);
+    }
+
+    // The 12 lowercase hex chars of a message hash as a 48-bit value.
+    static long packHash(String hash) {
+        if (hash == null || hash.length() != HASH_CHARS) return NONE;
+        long v = 0;
+        for (int i = 0; i < HASH_CHARS; i++) {
+            char c = hash.charAt(i);
+            int d;
+            if (c >= '0' && c <= '9') d = c - '0';
+            else if (c >= 'a' && c <= 'f') d = c - 'a' + 10;
+            else return NONE;
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    static String formatHash(long hash) {
+        char[] c = new char[HASH_CHARS];
+        for (int i = HASH_CHARS - 1; i >= 0; i--) {
+            c[i] = HEX[(int) (hash & 0xf)];
+            hash >>>= 4;
+        }
+        return new String(c);
+    }
+
+    // "yyyy-MM-dd" + "HH:mm:ss" local wall-clock time as seconds since 1970-01-01T00:00 (no zone).
+    static long packDateTime(String date, String time) {
+        if (date == null || time == null || date.length() != 10 || time.length() != 8) return NONE;
+        if (date.charAt(4) != '-' || date.charAt(7) != '-' || time.charAt(2) != ':' || time.charAt(5) != ':') return NONE;
+        int year = digits(date, 0, 4), month = digits(date, 5, 2), day = digits(date, 8, 2);
+        int hour = digits(time, 0, 2), minute = digits(time, 3, 2), second = digits(time, 6, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) return NONE;
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeException e) {
+            return NONE;
+        }
+    }
+
+    static long packDateTime(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static LocalDateTime toLocalDateTime(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+    }
+
+    static String formatDate(long epochSeconds) {
+        LocalDate d = LocalDate.ofEpochDay(Math.floorDiv(epochSeconds, 86400));
+        if (d.getYear() < 0 || d.getYear() > 9999) return d.toString();
+        char[] c = new char[10];
+        put(c, 0, d.getYear(), 4);
+        c[4] = '-';
+        put(c, 5, d.getMonthValue(), 2);
+        c[7] = '-';
+        put(c, 8, d.getDayOfMonth(), 2);
+        return new String(c);
+    }
+
+    static String formatTime(long epochSeconds) {
+        int s = (int) Math.floorMod(epochSeconds, 86400L);
+        char[] c = new char[8];
+        put(c, 0, s / 3600, 2);
+        c[2] = ':';
+        put(c, 3, s / 60 % 60, 2);
+        c[5] = ':';
+        put(c, 6, s % 60, 2);
+        return new String(c);
+    }
+
+    private static int digitCount(long v) {
+        int n = 1;
+        while (v >= 10) {
+            v /= 10;
+            n++;
+        }
+        return n;
+    }
+
+    private static int digits(String s, int from, int len) {
+        int v = 0;
+        for (int i = from; i < from + len; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static void put(char[] c, int at, int value, int width) {
+        for (int i = at + width - 1; i >= at; i--) {
+            c[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
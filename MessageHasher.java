@@ -0,0 +1,142 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Message hash: the first 12 hex chars of a digest over the UTF-8 bytes of
+// messageID + recipient + messageText + date + time (null fields hash as "null").
+// Digests and the encode buffer are cached per thread, and only the hex prefix is built.
+final class MessageHasher {
+    static final int HASH_CHARS = 12;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final MessageHasher DEFAULT = new MessageHasher(Algorithm.fromProperty());
+
+    enum Algorithm {
+        // Compatible with hashes already stored in messages.json.
+        SHA_256,
+        // 64-bit FNV-1a with a final mix; not cryptographic, much cheaper, fine for dedup.
+        FNV_1A_64;
+
+        static Algorithm fromProperty() {
+            String configured = System.getProperty("mainapp.hash", "sha256");
+            switch (configured.toLowerCase()) {
+                case "sha256":
+                case "sha-256":
+                    return SHA_256;
+                case "fnv":
+                case "fnv64":
+                    return FNV_1A_64;
+                default:
+                    throw new IllegalArgumentException("Unknown mainapp.hash algorithm: " + configured);
+            }
+        }
+    }
+
+    private static final class Scratch {
+        final MessageDigest sha256;
+        byte[] buffer = new byte[1024];
+        final char[] hex = new char[HASH_CHARS];
+
+        Scratch() {
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Algorithm algorithm;
+
+    MessageHasher(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    static MessageHasher defaultHasher() {
+        return DEFAULT;
+    }
+
+    Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    String hash(String messageID, String recipient, String messageText, String date, String time) {
+        long started = Metrics.HASH.start();
+        Scratch s = SCRATCH.get();
+        int len = encode(s, 0, messageID);
+        len = encode(s, len, recipient);
+        len = encode(s, len, messageText);
+        len = encode(s, len, date);
+        len = encode(s, len, time);
+        if (algorithm == Algorithm.SHA_256) {
+            s.sha256.update(s.buffer, 0, len);
+            byte[] digest = s.sha256.digest();
+            for (int i = 0; i < HASH_CHARS / 2; i++) {
+                s.hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+                s.hex[2 * i + 1] = HEX[digest[i] & 0xf];
+            }
+        } else {
+            long h = fnv1a64(s.buffer, len);
+            for (int i = 0; i < HASH_CHARS; i++) {
+                s.hex[i] = HEX[(int) (h >>> (60 - 4 * i)) & 0xf];
+            }
+        }
+        String hash = new String(s.hex);
+        Metrics.HASH.stop(started);
+        return hash;
+    }
+
+    private static long fnv1a64(byte[] data, int len) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < len; i++) {
+            h ^= data[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        // murmur3 fmix64, so the leading hex chars depend on every input byte
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Appends the UTF-8 bytes of value at pos, the way String.getBytes(UTF_8) would
+    // (unpaired surrogates become '?'); returns the new length.
+    private static int encode(Scratch s, int pos, String value) {
+        if (value == null) value = "null";
+        int n = value.length();
+        if (s.buffer.length - pos < n * 3) {
+            byte[] grown = new byte[Math.max(s.buffer.length * 2, pos + n * 3)];
+            System.arraycopy(s.buffer, 0, grown, 0, pos);
+            s.buffer = grown;
+        }
+        byte[] b = s.buffer;
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                b[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xc0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < n ? value.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int cp = Character.toCodePoint(c, low);
+                    b[pos++] = (byte) (0xf0 | (cp >> 18));
+                    b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    b[pos++] = (byte) (0x80 | (cp & 0x3f));
+                    i++;
+                } else {
+                    b[pos++] = '?';
+                }
+            } else {
+                b[pos++] = (byte) (0xe0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,62 @@
+import java.security.MessageDigest;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageHasherIT {
+
+    // The hash as Message.createMessageHash used to build it.
+    private static String referenceHash(String id, String recipient, String text, String date, String time) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        String input = id + recipient + text + date + time;
+        byte[] hash = digest.digest(input.getBytes("UTF-8"));
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : hash) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) hexString.append('0');
+            hexString.append(hex);
+        }
+        return hexString.toString().substring(0, 12);
+    }
+
+    /**
+     * Test of hash method, of class MessageHasher, against the original SHA-256 code.
+     */
+    @Test
+    public void testSha256MatchesOriginalHash() throws Exception {
+        MessageHasher hasher = new MessageHasher(MessageHasher.Algorithm.SHA_256);
+        Random random = new Random(42);
+        for (int k = 0; k < 20000; k++) {
+            String text = randomText(random, random.nextInt(300));
+            String id = Long.toString(random.nextLong() & Long.MAX_VALUE);
+            assertEquals(referenceHash(id, "+27831234567", text, "2025-06-17", "22:56:01"),
+                    hasher.hash(id, "+27831234567", text, "2025-06-17", "22:56:01"), text);
+        }
+        assertEquals(referenceHash("0123456789", "+27831234567", "Hi", null, null),
+                hasher.hash("0123456789", "+27831234567", "Hi", null, null));
+    }
+
+    /**
+     * Test of hash method, of class MessageHasher, with the FNV-1a option.
+     */
+    @Test
+    public void testFnvHashIsStableHex() {
+        MessageHasher hasher = new MessageHasher(MessageHasher.Algorithm.FNV_1A_64);
+        String a = hasher.hash("1", "+27831234567", "Hello", "2025-06-17", "22:56:01");
+        assertEquals(a, hasher.hash("1", "+27831234567", "Hello", "2025-06-17", "22:56:01"));
+        assertNotEquals(a, hasher.hash("1", "+27831234567", "Hellp", "2025-06-17", "22:56:01"));
+        assertTrue(a.matches("[0-9a-f]{12}"));
+    }
+
+    private static String randomText(Random random, int len) {
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 6) sb.append((char) (' ' + random.nextInt(95)));
+            else if (kind < 8) sb.append((char) random.nextInt(0x800));
+            else if (kind < 9) sb.append((char) random.nextInt(0x10000));
+            else sb.appendCodePoint(0x10000 + random.nextInt(0x10000));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,77 @@
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lock-free, time-ordered message IDs (a 63-bit positive long):
+// [41 bits ms since 2025-01-01][10 bits node][3 bits stripe][9 bits sequence].
+// Threads are spread over stripes so they rarely CAS the same word. A stripe that runs out
+// of sequence numbers, or sees the clock go backwards, moves on to the next millisecond
+// instead of blocking, so IDs never repeat.
+final class MessageIdGenerator {
+    static final long EPOCH_MILLIS = 1735689600000L; // 2025-01-01T00:00:00Z
+    private static final int SEQUENCE_BITS = 9;
+    private static final int STRIPE_BITS = 3;
+    private static final int NODE_BITS = 10;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private final int node;
+    // Per stripe: (millis since epoch << SEQUENCE_BITS) | last sequence used.
+    private final AtomicLong[] stripes = new AtomicLong[STRIPES];
+
+    MessageIdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        this.node = node;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new AtomicLong();
+    }
+
+    // Node from the mainapp.node system property, else derived from the host name.
+    static MessageIdGenerator forThisNode() {
+        String configured = System.getProperty("mainapp.node");
+        if (configured != null) return new MessageIdGenerator(Integer.parseInt(configured));
+        int node;
+        try {
+            node = InetAddress.getLocalHost().getHostName().hashCode() & MAX_NODE;
+        } catch (Exception e) {
+            node = 0;
+        }
+        return new MessageIdGenerator(node);
+    }
+
+    long nextId() {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        AtomicLong state = stripes[stripe];
+        while (true) {
+            long current = state.get();
+            long lastMillis = current >>> SEQUENCE_BITS;
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            long next;
+            if (now > lastMillis) {
+                next = now << SEQUENCE_BITS;
+            } else if ((current & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = current + 1;
+            } else {
+                next = (lastMillis + 1) << SEQUENCE_BITS;
+            }
+            if (state.compareAndSet(current, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                return (millis << (NODE_BITS + STRIPE_BITS + SEQUENCE_BITS))
+                        | ((long) node << (STRIPE_BITS + SEQUENCE_BITS))
+                        | ((long) stripe << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    // Makes every later ID sort after the given one, e.g. the newest ID loaded at startup,
+    // so a restart with a clock that has stepped back cannot reissue an ID.
+    void advancePast(long id) {
+        long millis = id >>> (NODE_BITS + STRIPE_BITS + SEQUENCE_BITS);
+        long floor = ((millis + 1) << SEQUENCE_BITS) - 1;
+        for (AtomicLong state : stripes) {
+            state.accumulateAndGet(floor, Math::max);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageIdGeneratorIT {
+
+    /**
+     * Test of nextId method, of class MessageIdGenerator, from several threads at once.
+     */
+    @Test
+    public void testNextIdIsUniqueAcrossThreads() throws InterruptedException {
+        MessageIdGenerator generator = new MessageIdGenerator(7);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int k = 0; k < 50000; k++) {
+                    assertTrue(ids.add(generator.nextId()));
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(8 * 50000, ids.size());
+    }
+
+    /**
+     * Test of nextId method, of class MessageIdGenerator, on a single thread.
+     */
+    @Test
+    public void testNextIdIsIncreasingOnOneThread() {
+        MessageIdGenerator generator = new MessageIdGenerator(7);
+        long previous = generator.nextId();
+        for (int k = 0; k < 100000; k++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertTrue(id > 0);
+            previous = id;
+        }
+    }
+
+    /**
+     * Test of advancePast method, of class MessageIdGenerator.
+     */
+    @Test
+    public void testAdvancePast() {
+        MessageIdGenerator generator = new MessageIdGenerator(7);
+        long future = generator.nextId() + (60000L << 22);
+        generator.advancePast(future);
+        assertTrue(generator.nextId() > future);
+    }
+
+    /**
+     * Test of the node range check in the constructor of class MessageIdGenerator.
+     */
+    @Test
+    public void testRejectsNodeOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new MessageIdGenerator(MessageIdGenerator.MAX_NODE + 1));
+        assertThrows(IllegalArgumentException.class, () -> new MessageIdGenerator(-1));
+    }
+}
@@ -0,0 +1,182 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Secondary indexes over the message store: keys on ID and hash, a multimap on recipient and
+// a sorted index on send time. add/remove keep all four in step.
+//
+// IDs and hashes are unique for new messages, but legacy data can repeat them. The first
+// message with a key is in byId/byHash and any later ones wait in moreById/moreByHash, so
+// every one of them can still be found and removed; lookups by key return the earliest.
+final class MessageIndex {
+    private final Map<String, Message> byId = new HashMap<>();
+    private final Map<String, Message> byHash = new HashMap<>();
+    private final Map<String, List<Message>> moreById = new HashMap<>();
+    private final Map<String, List<Message>> moreByHash = new HashMap<>();
+    private final Map<String, Set<Message>> byRecipient = new HashMap<>();
+    private final NavigableMap<Long, Set<Message>> byTime = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size = 0;
+
+    void add(Message m) {
+        lock.writeLock().lock();
+        try {
+            put(byId, moreById, m.getMessageID(), m);
+            put(byHash, moreByHash, m.getMessageHash(), m);
+            size++;
+            byRecipient.computeIfAbsent(m.getRecipient(), k -> new LinkedHashSet<>()).add(m);
+            byTime.computeIfAbsent(timeKey(m), k -> new LinkedHashSet<>()).add(m);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void addAll(Collection<Message> messages) {
+        for (Message m : messages) add(m);
+    }
+
+    boolean remove(Message m) {
+        lock.writeLock().lock();
+        try {
+            if (!delete(byHash, moreByHash, m.getMessageHash(), m)) return false;
+            delete(byId, moreById, m.getMessageID(), m);
+            size--;
+            Set<Message> forRecipient = byRecipient.get(m.getRecipient());
+            if (forRecipient != null && forRecipient.remove(m) && forRecipient.isEmpty()) {
+                byRecipient.remove(m.getRecipient());
+            }
+            Long key = timeKey(m);
+            Set<Message> atTime = byTime.get(key);
+            if (atTime != null && atTime.remove(m) && atTime.isEmpty()) {
+                byTime.remove(key);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void put(Map<String, Message> first, Map<String, List<Message>> more, String key, Message m) {
+        if (first.putIfAbsent(key, m) != null) more.computeIfAbsent(key, k -> new ArrayList<>(1)).add(m);
+    }
+
+    // Removes m itself (not another message with the same key); the next one moves up.
+    private static boolean delete(Map<String, Message> first, Map<String, List<Message>> more, String key, Message m) {
+        List<Message> rest = more.get(key);
+        if (first.get(key) == m) {
+            if (rest == null) first.remove(key);
+            else first.put(key, rest.remove(0));
+        } else if (rest == null || !rest.remove(m)) {
+            return false;
+        }
+        if (rest != null && rest.isEmpty()) more.remove(key);
+        return true;
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            byId.clear();
+            byHash.clear();
+            moreById.clear();
+            moreByHash.clear();
+            size = 0;
+            byRecipient.clear();
+            byTime.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    Message findById(String messageID) {
+        lock.readLock().lock();
+        try {
+            return byId.get(messageID);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Message findByHash(String messageHash) {
+        lock.readLock().lock();
+        try {
+            return byHash.get(messageHash);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The indexed message with both this hash and this ID, or null.
+    Message find(String messageHash, String messageID) {
+        lock.readLock().lock();
+        try {
+            Message m = byHash.get(messageHash);
+            if (m == null || Objects.equals(m.getMessageID(), messageID)) return m;
+            for (Message more : moreByHash.getOrDefault(messageHash, Collections.emptyList())) {
+                if (Objects.equals(more.getMessageID(), messageID)) return more;
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<Message> findByRecipient(String recipient) {
+        lock.readLock().lock();
+        try {
+            Set<Message> found = byRecipient.get(recipient);
+            return found == null ? Collections.emptyList() : new ArrayList<>(found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int countByRecipient(String recipient) {
+        lock.readLock().lock();
+        try {
+            Set<Message> found = byRecipient.get(recipient);
+            return found == null ? 0 : found.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Messages sent between from and to, both inclusive, in send-time order.
+    List<Message> findBetween(LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            List<Message> found = new ArrayList<>();
+            for (Set<Message> atTime : byTime.subMap(MessageCodec.packDateTime(from), true, MessageCodec.packDateTime(to), true).values()) {
+                found.addAll(atTime);
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The packed send time; undated messages (NONE) sort first.
+    private static Long timeKey(Message m) {
+        return m.timestampBits();
+    }
+}
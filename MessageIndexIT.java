@@ -0,0 +1,75 @@
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageIndexIT {
+
+    private MessageIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new MessageIndex();
+    }
+
+    /**
+     * Test of add method, of class MessageIndex.
+     */
+    @Test
+    public void testAddIndexesEveryKey() {
+        Message m = new Message("+27831234567", "Hi Mike, can you join us for dinner tonight?");
+        index.add(m);
+        assertSame(m, index.findById(m.getMessageID()));
+        assertSame(m, index.findByHash(m.getMessageHash()));
+        assertEquals(List.of(m), index.findByRecipient("+27831234567"));
+        LocalDateTime now = LocalDateTime.now();
+        assertTrue(index.findBetween(now.minusMinutes(1), now.plusMinutes(1)).contains(m));
+        assertTrue(index.findBetween(now.plusMinutes(1), now.plusMinutes(2)).isEmpty());
+    }
+
+    /**
+     * Test of remove method, of class MessageIndex.
+     */
+    @Test
+    public void testRemoveKeepsIndexesConsistent() {
+        Message a = new Message("+27831234567", "Where are you? You are late!");
+        Message b = new Message("+27831234567", "Yohoooo, I am at your gate.");
+        index.add(a);
+        index.add(b);
+        assertTrue(index.remove(a));
+        assertFalse(index.remove(a));
+        assertNull(index.findById(a.getMessageID()));
+        assertNull(index.findByHash(a.getMessageHash()));
+        assertEquals(List.of(b), index.findByRecipient("+27831234567"));
+        LocalDateTime now = LocalDateTime.now();
+        assertEquals(List.of(b), index.findBetween(now.minusMinutes(1), now.plusMinutes(1)));
+        assertEquals(1, index.size());
+    }
+
+    /**
+     * Test of add and remove methods, of class MessageIndex, with legacy messages that repeat
+     * an ID or a hash: none is lost, and each can be removed on its own.
+     */
+    @Test
+    public void testDuplicateKeys() {
+        Message first = Message.restore("0000000001", "+27831234567", "First", "00:0:FIRSTFIRST", "2024-01-01", "10:00:00");
+        Message sameId = Message.restore("0000000001", "+27831234567", "Second", "00:1:SECONDSECOND", "2024-01-01", "10:00:01");
+        Message sameBoth = Message.restore("0000000001", "+27831234567", "First", "00:0:FIRSTFIRST", "2024-01-01", "10:00:00");
+        index.add(first);
+        index.add(sameId);
+        index.add(sameBoth);
+        assertEquals(3, index.size());
+        assertSame(first, index.findById("0000000001"));
+        assertSame(sameId, index.find("00:1:SECONDSECOND", "0000000001"));
+        assertNull(index.find("00:1:SECONDSECOND", "0000000002"));
+        assertTrue(index.remove(first));
+        assertSame(sameId, index.findById("0000000001"));
+        assertSame(sameBoth, index.findByHash("00:0:FIRSTFIRST"));
+        assertTrue(index.remove(sameBoth));
+        assertFalse(index.remove(sameBoth));
+        assertNull(index.findByHash("00:0:FIRSTFIRST"));
+        assertEquals(List.of(sameId), index.findByRecipient("+27831234567"));
+        assertEquals(1, index.size());
+    }
+}
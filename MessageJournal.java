@@ -0,0 +1,262 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only message log: snapshot (messages.json) + tail of length-prefixed records.
+// Record layout: [int length][length bytes of JSON][int crc32 of the JSON bytes].
+// A record is either a message or a {"deleted": "<messageHash>"} tombstone.
+//
+// Compaction is split so appends need not wait for the snapshot to be written: rotate()
+// freezes the current tail as <journal>.old and starts an empty one, then writeSnapshot()
+// writes the state as of the rotation and deletes the frozen tail. Load replays snapshot,
+// frozen tail, then tail; replay skips messages already present, so a crash between the
+// snapshot's rename and the frozen tail's deletion cannot duplicate anything.
+final class MessageJournal implements Closeable {
+    private static final int SYNC_EVERY_RECORDS = 64;
+    private static final long SYNC_EVERY_MILLIS = 1000;
+    private static final int HEADER_BYTES = 4;
+    private static final int TRAILER_BYTES = 4;
+    private static final String TOMBSTONE_FIELD = "deleted";
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Path frozenFile;
+    private final Object snapshotLock = new Object();
+    private final Gson snapshotGson;
+    private final Gson recordGson = new Gson();
+    private final int compactThreshold;
+    private FileChannel channel;
+    private int journalRecords = 0;
+    private int unsyncedRecords = 0;
+    private long lastSync = System.currentTimeMillis();
+
+    MessageJournal(Path snapshotFile, Path journalFile, Gson snapshotGson, int compactThreshold) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.frozenFile = journalFile.resolveSibling(journalFile.getFileName() + ".old");
+        this.snapshotGson = snapshotGson;
+        this.compactThreshold = compactThreshold;
+    }
+
+    // Reads the snapshot, replays the journal tail and opens the journal for appending.
+    // A torn or corrupt record ends the replay; the file is truncated back to the last good record.
+    // A frozen tail left by an unfinished compaction is replayed first and compacted away.
+    void load(MessageStore store, JsonStreamLoader.Progress progress) throws IOException {
+        boolean unfinished;
+        synchronized (this) {
+            if (Files.exists(snapshotFile)) {
+                JsonStreamLoader.load(snapshotFile, snapshotGson(), Message.class, store::add, progress);
+            }
+            unfinished = Files.exists(frozenFile);
+            if (unfinished) {
+                try (FileChannel frozen = FileChannel.open(frozenFile, StandardOpenOption.READ)) {
+                    replay(frozen, store);
+                }
+            }
+            channel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            journalRecords = 0;
+            long goodEnd = replay(channel, store);
+            if (goodEnd < channel.size()) {
+                channel.truncate(goodEnd);
+                channel.force(true);
+            }
+            channel.position(goodEnd);
+        }
+        if (unfinished) compact(store);
+    }
+
+    private long replay(FileChannel channel, MessageStore store) throws IOException {
+        long size = channel.size();
+        long pos = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        while (pos + HEADER_BYTES + TRAILER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, pos);
+            int length = header.getInt(0);
+            if (length < 0 || pos + HEADER_BYTES + length + TRAILER_BYTES > size) break;
+            ByteBuffer body = ByteBuffer.allocate(length + TRAILER_BYTES);
+            readFully(channel, body, pos + HEADER_BYTES);
+            crc.reset();
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != body.getInt(length)) break;
+            try {
+                JsonObject record = JsonParser.parseString(
+                        new String(body.array(), 0, length, StandardCharsets.UTF_8)).getAsJsonObject();
+                if (record.has(TOMBSTONE_FIELD)) {
+                    Message gone = store.findByHash(record.get(TOMBSTONE_FIELD).getAsString());
+                    if (gone != null) store.remove(gone);
+                } else {
+                    Message m = recordGson.fromJson(record, Message.class);
+                    Message present = store.findByHash(m.getMessageHash());
+                    if (present == null || !present.getMessageID().equals(m.getMessageID())) store.add(m);
+                }
+            } catch (JsonParseException | IllegalStateException e) {
+                break;
+            }
+            journalRecords++;
+            pos += HEADER_BYTES + length + TRAILER_BYTES;
+        }
+        return pos;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos + buf.position());
+            if (n < 0) throw new IOException("Unexpected end of " + journalFile);
+        }
+    }
+
+    synchronized void append(List<Message> batch) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(batch.size());
+        for (Message m : batch) {
+            encoded.add(recordGson.toJson(m).getBytes(StandardCharsets.UTF_8));
+        }
+        write(encoded);
+    }
+
+    synchronized void appendDelete(Message m) throws IOException {
+        JsonObject tombstone = new JsonObject();
+        tombstone.addProperty(TOMBSTONE_FIELD, m.getMessageHash());
+        write(Collections.singletonList(recordGson.toJson(tombstone).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Writes the records in one call. Forces to disk once enough records or time have
+    // accumulated; records written after that are forced by the next sync().
+    private void write(List<byte[]> encoded) throws IOException {
+        if (encoded.isEmpty()) return;
+        if (channel == null) throw new IOException("Journal " + journalFile + " is not open");
+        int total = 0;
+        for (byte[] json : encoded) total += HEADER_BYTES + json.length + TRAILER_BYTES;
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        CRC32 crc = new CRC32();
+        for (byte[] json : encoded) {
+            crc.reset();
+            crc.update(json);
+            buf.putInt(json.length).put(json).putInt((int) crc.getValue());
+        }
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        journalRecords += encoded.size();
+        unsyncedRecords += encoded.size();
+        if (unsyncedRecords >= SYNC_EVERY_RECORDS
+                || System.currentTimeMillis() - lastSync >= SYNC_EVERY_MILLIS) {
+            sync();
+        }
+    }
+
+    // Forces any records not yet on disk; meant to be called periodically, so a quiet tail
+    // is not left unsynced until the next append.
+    synchronized void sync() throws IOException {
+        if (unsyncedRecords == 0 || channel == null) return;
+        channel.force(false);
+        unsyncedRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    // Compacts once the journal is as long as the store itself (and at least compactThreshold),
+    // so rewriting the snapshot stays amortized O(1) per appended record.
+    synchronized boolean needsCompaction(int storeSize) {
+        return journalRecords >= Math.max(compactThreshold, storeSize);
+    }
+
+    // Writes the full store as a new snapshot and empties the journal. all must not change
+    // meanwhile; callers that keep appending use rotate() and writeSnapshot() instead.
+    void compact(Iterable<Message> all) throws IOException {
+        synchronized (snapshotLock) {
+            rotate();
+            writeSnapshot(all);
+        }
+    }
+
+    // Freezes the records appended so far as the frozen tail and starts an empty journal. The
+    // next writeSnapshot() must hold the state as of this call. If the frozen tail of a failed
+    // compaction is still there, the current records are added to it.
+    synchronized void rotate() throws IOException {
+        if (channel == null) throw new IOException("Journal " + journalFile + " is not open");
+        channel.force(true);
+        if (Files.exists(frozenFile)) {
+            try (FileChannel frozen = FileChannel.open(frozenFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long size = channel.size();
+                for (long pos = 0; pos < size; ) pos += channel.transferTo(pos, size - pos, frozen);
+                frozen.force(true);
+            }
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        } else {
+            // The open channel follows the renamed file, so it is only swapped for the new one
+            // once that is open; a failed move or open leaves the journal writing where it was.
+            Files.move(journalFile, frozenFile, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel fresh;
+            try {
+                fresh = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                try {
+                    Files.move(frozenFile, journalFile, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException undo) {
+                    // Appending to the frozen tail would mix it up with the next rotation.
+                    e.addSuppressed(undo);
+                    channel.close();
+                    channel = null;
+                }
+                throw e;
+            }
+            FileChannel frozen = channel;
+            channel = fresh;
+            frozen.close();
+        }
+        journalRecords = 0;
+        unsyncedRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    // Writes all as the new snapshot (temp file + atomic rename) and deletes the frozen tail.
+    // Does not hold the journal's lock, so appends go on while the file is written.
+    void writeSnapshot(Iterable<Message> all) throws IOException {
+        synchronized (snapshotLock) {
+            Gson gson = snapshotGson();
+            WriteBehindPersister.writeAtomically(snapshotFile, out -> {
+                JsonWriter writer = gson.newJsonWriter(out);
+                writer.beginArray();
+                for (Message m : all) {
+                    gson.toJson(m, Message.class, writer);
+                }
+                writer.endArray();
+                writer.flush();
+            });
+            Files.deleteIfExists(frozenFile);
+        }
+    }
+
+    // The snapshot's recipient dictionary lives for one pass over the file, so each load and
+    // compaction gets a fresh adapter. Journal records stay self-contained.
+    private Gson snapshotGson() {
+        return snapshotGson.newBuilder().registerTypeAdapter(Message.class, MessageJsonAdapter.forSnapshot()).create();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        sync();
+        channel.close();
+        channel = null;
+    }
+}
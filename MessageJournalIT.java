@@ -0,0 +1,196 @@
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageJournalIT {
+
+    @TempDir
+    Path dir;
+
+    private Path snapshotFile;
+    private Path journalFile;
+
+    @BeforeEach
+    public void setUp() {
+        snapshotFile = dir.resolve("messages.json");
+        journalFile = dir.resolve("messages.journal");
+    }
+
+    private MessageJournal open(MessageStore store) throws IOException {
+        MessageJournal journal = new MessageJournal(snapshotFile, journalFile, new Gson(), 100);
+        journal.load(store, JsonStreamLoader.NO_PROGRESS);
+        return journal;
+    }
+
+    private MessageStore reload() throws IOException {
+        MessageStore store = new HeapMessageStore();
+        open(store).close();
+        return store;
+    }
+
+    private static List<Message> messages(String prefix, int n) {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < n; i++) batch.add(new Message("+27831234567", prefix + " " + i));
+        return batch;
+    }
+
+    private static List<String> hashes(Iterable<Message> all) {
+        List<String> found = new ArrayList<>();
+        for (Message m : all) found.add(m.getMessageHash());
+        return found;
+    }
+
+    /**
+     * Test of load method, of class MessageJournal: the snapshot is read, then the tail
+     * appended after it, tombstones included.
+     */
+    @Test
+    public void testReplaysSnapshotThenTail() throws IOException {
+        MessageStore store = new HeapMessageStore();
+        List<Message> expected = new ArrayList<>();
+        try (MessageJournal journal = open(store)) {
+            List<Message> first = messages("Snapshot", 3);
+            journal.append(first);
+            store.addAll(first);
+            journal.compact(store);
+            assertTrue(Files.exists(snapshotFile));
+            assertEquals(0, Files.size(journalFile));
+            List<Message> tail = messages("Tail", 2);
+            journal.append(tail);
+            journal.appendDelete(first.get(1));
+            expected.add(first.get(0));
+            expected.add(first.get(2));
+            expected.addAll(tail);
+        }
+        assertEquals(hashes(expected), hashes(reload()));
+    }
+
+    /**
+     * Test of appendDelete method, of class MessageJournal: a deleted message stays deleted
+     * after a reload, and a message added again after its tombstone comes back.
+     */
+    @Test
+    public void testTombstones() throws IOException {
+        MessageStore store = new HeapMessageStore();
+        List<Message> batch = messages("Deleted", 3);
+        try (MessageJournal journal = open(store)) {
+            journal.append(batch);
+            journal.appendDelete(batch.get(0));
+            journal.appendDelete(batch.get(2));
+            journal.append(List.of(batch.get(2)));
+        }
+        MessageStore reloaded = reload();
+        assertNull(reloaded.findByHash(batch.get(0).getMessageHash()));
+        assertEquals(hashes(List.of(batch.get(1), batch.get(2))), hashes(reloaded));
+    }
+
+    /**
+     * Test of load method, of class MessageJournal: a record cut off part way is dropped and
+     * the file truncated back to the last whole record, so new appends follow it.
+     */
+    @Test
+    public void testTruncatesTornTail() throws IOException {
+        List<Message> batch = messages("Torn", 3);
+        try (MessageJournal journal = open(new HeapMessageStore())) {
+            journal.append(batch.subList(0, 2));
+        }
+        long good = Files.size(journalFile);
+        try (MessageJournal journal = open(new HeapMessageStore())) {
+            journal.append(batch.subList(2, 3));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile.toFile(), "rw")) {
+            file.setLength(file.length() - 7);
+        }
+        MessageStore store = new HeapMessageStore();
+        try (MessageJournal journal = open(store)) {
+            assertEquals(good, Files.size(journalFile));
+            assertEquals(hashes(batch.subList(0, 2)), hashes(store));
+            journal.append(batch.subList(2, 3));
+        }
+        assertEquals(hashes(batch), hashes(reload()));
+    }
+
+    /**
+     * Test of load method, of class MessageJournal: a record whose checksum does not match
+     * ends the replay, and everything from it on is truncated.
+     */
+    @Test
+    public void testTruncatesCorruptRecord() throws IOException {
+        List<Message> batch = messages("Corrupt", 3);
+        try (MessageJournal journal = open(new HeapMessageStore())) {
+            journal.append(batch.subList(0, 1));
+        }
+        long good = Files.size(journalFile);
+        try (MessageJournal journal = open(new HeapMessageStore())) {
+            journal.append(batch.subList(1, 3));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile.toFile(), "rw")) {
+            file.seek(good + 10);
+            int b = file.read();
+            file.seek(good + 10);
+            file.write(b ^ 0x01);
+        }
+        MessageStore store = new HeapMessageStore();
+        open(store).close();
+        assertEquals(hashes(batch.subList(0, 1)), hashes(store));
+        assertEquals(good, Files.size(journalFile));
+    }
+
+    /**
+     * Test of needsCompaction and compact methods, of class MessageJournal.
+     */
+    @Test
+    public void testCompaction() throws IOException {
+        MessageStore store = new HeapMessageStore();
+        try (MessageJournal journal = open(store)) {
+            List<Message> batch = messages("Compact", 150);
+            journal.append(batch.subList(0, 99));
+            store.addAll(batch.subList(0, 99));
+            assertFalse(journal.needsCompaction(store.size()));
+            journal.append(batch.subList(99, 150));
+            store.addAll(batch.subList(99, 150));
+            assertFalse(journal.needsCompaction(store.size() + 1), "shorter than the store");
+            assertTrue(journal.needsCompaction(store.size()));
+            journal.compact(store);
+            assertFalse(journal.needsCompaction(store.size()));
+            assertEquals(0, Files.size(journalFile));
+        }
+        assertEquals(hashes(store), hashes(reload()));
+    }
+
+    /**
+     * Test of rotate and load methods, of class MessageJournal: when the process stops between
+     * rotating the journal and writing the snapshot, the frozen tail is replayed once and then
+     * compacted away.
+     */
+    @Test
+    public void testRecoversUnfinishedCompaction() throws IOException {
+        MessageStore store = new HeapMessageStore();
+        List<Message> frozen = messages("Frozen", 3);
+        List<Message> after = messages("After", 2);
+        try (MessageJournal journal = open(store)) {
+            journal.append(frozen);
+            store.addAll(frozen);
+            journal.compact(store);
+            journal.append(after);
+            journal.rotate();
+            journal.appendDelete(frozen.get(0));
+        }
+        Path frozenFile = dir.resolve("messages.journal.old");
+        assertTrue(Files.exists(frozenFile));
+        MessageStore reloaded = reload();
+        assertFalse(Files.exists(frozenFile));
+        List<Message> expected = new ArrayList<>(frozen.subList(1, 3));
+        expected.addAll(after);
+        assertEquals(hashes(expected), hashes(reloaded));
+        assertEquals(hashes(expected), hashes(reload()));
+    }
+}
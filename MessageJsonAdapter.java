@@ -0,0 +1,108 @@
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps the persisted and wire form of a Message as the six string fields it always had,
+// independent of how Message packs them in memory.
+//
+// A snapshot adapter (one per file written or read) dictionary-encodes recipients: each
+// distinct recipient is written in full the first time and as "recipientRef": n, its
+// order of first appearance in the file, after that. Reading accepts both forms, so older
+// snapshots still load, and repeats share one String.
+final class MessageJsonAdapter extends TypeAdapter<Message> {
+    private final Map<String, Integer> refs;
+    private final List<String> recipients;
+
+    MessageJsonAdapter() {
+        this(false);
+    }
+
+    private MessageJsonAdapter(boolean dictionary) {
+        refs = dictionary ? new HashMap<>() : null;
+        recipients = dictionary ? new ArrayList<>() : null;
+    }
+
+    static MessageJsonAdapter forSnapshot() {
+        return new MessageJsonAdapter(true);
+    }
+
+    @Override
+    public void write(JsonWriter out, Message m) throws IOException {
+        if (m == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("messageID").value(m.getMessageID());
+        writeRecipient(out, m.getRecipient());
+        out.name("messageText").value(m.getMessageText());
+        out.name("messageHash").value(m.getMessageHash());
+        out.name("date").value(m.getDate());
+        out.name("time").value(m.getTime());
+        out.endObject();
+    }
+
+    @Override
+    public Message read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String messageID = null, recipient = null, messageText = null, messageHash = null, date = null, time = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "messageID": messageID = in.nextString(); break;
+                case "recipient": recipient = readRecipient(in.nextString()); break;
+                case "recipientRef": recipient = recipientAt(in.nextInt()); break;
+                case "messageText": messageText = in.nextString(); break;
+                case "messageHash": messageHash = in.nextString(); break;
+                case "date": date = in.nextString(); break;
+                case "time": time = in.nextString(); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return Message.restore(messageID, recipient, messageText, messageHash, date, time);
+    }
+
+    private void writeRecipient(JsonWriter out, String recipient) throws IOException {
+        if (refs != null && recipient != null) {
+            Integer ref = refs.get(recipient);
+            if (ref != null) {
+                out.name("recipientRef").value(ref);
+                return;
+            }
+            refs.put(recipient, refs.size());
+        }
+        out.name("recipient").value(recipient);
+    }
+
+    private String readRecipient(String recipient) {
+        if (refs == null) return recipient;
+        Integer ref = refs.get(recipient);
+        if (ref != null) return recipients.get(ref);
+        refs.put(recipient, recipients.size());
+        recipients.add(recipient);
+        return recipient;
+    }
+
+    private String recipientAt(int ref) {
+        if (recipients == null || ref < 0 || ref >= recipients.size()) {
+            throw new JsonParseException("Unknown recipientRef " + ref);
+        }
+        return recipients.get(ref);
+    }
+}
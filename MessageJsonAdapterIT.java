@@ -0,0 +1,52 @@
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageJsonAdapterIT {
+
+    private static Gson snapshotGson() {
+        return new GsonBuilder().registerTypeAdapter(Message.class, MessageJsonAdapter.forSnapshot()).create();
+    }
+
+    /**
+     * Test of forSnapshot method, of class MessageJsonAdapter: repeated recipients are written
+     * once and read back from their references.
+     */
+    @Test
+    public void testSnapshotRecipientRefs() throws Exception {
+        List<Message> messages = List.of(
+                Message.restore("0000000001", "+27831234567", "a", "00000000000a", "2025-06-17", "10:00:00"),
+                Message.restore("0000000002", "+27838884567", "b", "00000000000b", "2025-06-17", "11:00:00"),
+                Message.restore("0000000003", "+27831234567", "c", "00000000000c", "2025-06-17", "12:00:00"));
+        Gson writer = snapshotGson();
+        StringBuilder json = new StringBuilder("[");
+        for (Message m : messages) {
+            if (json.length() > 1) json.append(',');
+            json.append(writer.toJson(m, Message.class));
+        }
+        json.append(']');
+        assertEquals(2, json.toString().split("\\+27831234567", -1).length);
+        assertTrue(json.toString().contains("\"recipientRef\":0"));
+
+        List<Message> read = new ArrayList<>();
+        JsonStreamLoader.load(new StringReader(json.toString()), snapshotGson(), Message.class, read::add, JsonStreamLoader.NO_PROGRESS);
+        assertEquals(3, read.size());
+        assertEquals("+27831234567", read.get(2).getRecipient());
+        assertEquals("0000000003", read.get(2).getMessageID());
+    }
+
+    /**
+     * Test of read method, of class MessageJsonAdapter, with an unknown recipient reference.
+     */
+    @Test
+    public void testUnknownRecipientRef() {
+        String json = "[{\"messageID\":\"0000000001\",\"recipientRef\":3,\"messageText\":\"a\"}]";
+        assertThrows(IOException.class, () -> JsonStreamLoader.load(new StringReader(json), snapshotGson(),
+                Message.class, m -> { }, JsonStreamLoader.NO_PROGRESS));
+    }
+}
@@ -0,0 +1,251 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Headless HTTP front end over the same user and message stores as the GUI.
+//
+//   POST /register  {"username", "password", "cellNumber"}
+//   POST /login     {"username", "password"}            -> {"token"}
+//   POST /logout[?all=true]                                         (Authorization: Bearer <token>)
+//   POST /send      {"messages": [{"recipient", "messageText", "sendAt"?}]}   (Authorization: Bearer <token>)
+//   GET  /messages?offset=0&limit=100                               (Authorization: Bearer <token>)
+//   GET  /search?q=<query>&limit=100                                (Authorization: Bearer <token>)
+//   GET  /stats?top=10                                              (Authorization: Bearer <token>)
+//   GET  /metrics[?format=text]                                     (Metrics snapshot, no login)
+//
+// sendAt is an optional local "yyyy-MM-ddTHH:mm[:ss]"; the message is stored at once and
+// handed to delivery at that time. A repeat of a recent send (same recipient and text) is
+// answered with the earlier message and "duplicate": true, so a client can retry safely.
+// A token stays valid until /logout (all=true ends every session of the user), or until the
+// session expires (-Dmainapp.sessionIdleMinutes, -Dmainapp.sessionMaxHours).
+//
+// Each exchange runs on its own virtual thread where the JDK has them, and carries its
+// session (see SessionCache) instead of MainApp's single static currentUser.
+final class MessageServer {
+    static final int DEFAULT_PORT = 8080;
+    private static final int MAX_PAGE = 1000;
+
+    private static final class Credentials {
+        String username;
+        String password;
+        String cellNumber;
+    }
+
+    private static final class SendRequest {
+        List<MessageBatch.Item> messages;
+    }
+
+    private final Gson gson = new Gson();
+    private final SessionCache sessions = SessionCache.fromProperty();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    MessageServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        executor = threadPerRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/register", ex -> handle(ex, "POST", false, this::register));
+        server.createContext("/login", ex -> handle(ex, "POST", false, this::login));
+        server.createContext("/logout", ex -> handle(ex, "POST", true, this::logout));
+        server.createContext("/send", ex -> handle(ex, "POST", true, this::send));
+        server.createContext("/messages", ex -> handle(ex, "GET", true, this::list));
+        server.createContext("/search", ex -> handle(ex, "GET", true, this::search));
+        server.createContext("/stats", ex -> handle(ex, "GET", true, this::stats));
+        server.createContext("/metrics", ex -> handle(ex, "GET", false, this::metrics));
+        Metrics.gauge("sessions.active", sessions::size);
+        Metrics.gauge("sessions.hits", sessions::hits);
+        Metrics.gauge("sessions.misses", sessions::misses);
+        Metrics.gauge("sessions.hitRatioPercent", sessions::hitRatioPercent);
+        Metrics.gauge("sessions.evicted", sessions::evicted);
+    }
+
+    // Virtual threads need Java 21; on older runtimes fall back to a cached platform pool.
+    private static ExecutorService threadPerRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Handler {
+        Object handle(HttpExchange ex, SessionCache.Session session) throws IOException, HttpError;
+    }
+
+    private void handle(HttpExchange ex, String method, boolean needsSession, Handler handler) throws IOException {
+        int status = 200;
+        Object body;
+        try {
+            if (!ex.getRequestMethod().equals(method)) throw new HttpError(405, method + " required");
+            SessionCache.Session session = needsSession ? session(ex) : null;
+            body = handler.handle(ex, session);
+        } catch (HttpError e) {
+            status = e.status;
+            body = Map.of("error", e.getMessage());
+        } catch (JsonParseException e) {
+            status = 400;
+            body = Map.of("error", "Malformed JSON: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            status = 500;
+            body = Map.of("error", String.valueOf(e.getMessage()));
+        }
+        boolean text = body instanceof CharSequence;
+        byte[] bytes = (text ? body.toString() : gson.toJson(body)).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", (text ? "text/plain" : "application/json") + "; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private SessionCache.Session session(HttpExchange ex) throws HttpError {
+        String header = ex.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) throw new HttpError(401, "Login required");
+        SessionCache.Session session = sessions.validate(header.substring("Bearer ".length()).trim());
+        if (session == null) throw new HttpError(401, "Session expired or unknown");
+        return session;
+    }
+
+    private <T> T read(HttpExchange ex, Class<T> type) throws IOException, HttpError {
+        try (Reader reader = new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)) {
+            T value = gson.fromJson(reader, type);
+            if (value == null) throw new HttpError(400, "Request body required");
+            return value;
+        }
+    }
+
+    private Object register(HttpExchange ex, SessionCache.Session none) throws IOException, HttpError {
+        Credentials c = read(ex, Credentials.class);
+        if (c.username == null || !User.isValidUsername(c.username)) {
+            throw new HttpError(400, "Username is not correctly formatted, please ensure that your username contains an underscore and is no more than five characters in length.");
+        }
+        if (c.password == null || !User.isValidPassword(c.password)) {
+            throw new HttpError(400, "Password is not correctly formatted; please ensure that the password contains at least eight characters, a capital letter, a number, and a special character.");
+        }
+        if (c.cellNumber == null || !User.isValidCellNumber(c.cellNumber)) {
+            throw new HttpError(400, "Cell number is incorrectly formatted or does not contain international code, please correct the number and try again.");
+        }
+        if (!MainApp.addUser(new User(c.username, c.password, c.cellNumber))) {
+            throw new HttpError(409, "Username already exists. Please choose another.");
+        }
+        return Map.of("username", c.username);
+    }
+
+    private Object login(HttpExchange ex, SessionCache.Session none) throws IOException, HttpError {
+        Credentials c = read(ex, Credentials.class);
+        User user = MainApp.authenticate(c.username, c.password);
+        if (user == null) throw new HttpError(401, "Username or password incorrect, please try again.");
+        SessionCache.Session session = sessions.issue(user);
+        return Map.of("token", session.getToken(), "username", user.getUsername());
+    }
+
+    private Object logout(HttpExchange ex, SessionCache.Session session) {
+        int revoked = "true".equals(query(ex).get("all"))
+                ? sessions.revokeUser(session.getUser().getUsername())
+                : sessions.revoke(session.getToken()) ? 1 : 0;
+        return Map.of("revoked", revoked);
+    }
+
+    private Object send(HttpExchange ex, SessionCache.Session session) throws IOException, HttpError {
+        SendRequest request = read(ex, SendRequest.class);
+        if (request.messages == null || request.messages.isEmpty()) throw new HttpError(400, "No messages to send");
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (MessageBatch.Result r : MainApp.sendBatch(request.messages)) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("index", r.getIndex());
+            if (r.isSent()) item.put("message", r.getMessage());
+            else item.put("error", r.getError());
+            if (r.isDuplicate()) item.put("duplicate", true);
+            out.add(item);
+        }
+        return Map.of("results", out, "totalMessages", Message.getMessageCount());
+    }
+
+    private Object list(HttpExchange ex, SessionCache.Session session) throws HttpError {
+        Map<String, String> query = query(ex);
+        int offset, limit;
+        try {
+            offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+            limit = Math.min(Integer.parseInt(query.getOrDefault("limit", "100")), MAX_PAGE);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "offset and limit must be numbers");
+        }
+        if (offset < 0 || limit < 0) throw new HttpError(400, "offset and limit must not be negative");
+        return Map.of("offset", offset, "total", MainApp.messageTotal(), "messages", MainApp.messagesPage(offset, limit));
+    }
+
+    private Object search(HttpExchange ex, SessionCache.Session session) throws HttpError {
+        Map<String, String> query = query(ex);
+        int limit;
+        try {
+            limit = Math.min(Integer.parseInt(query.getOrDefault("limit", "100")), MAX_PAGE);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "limit must be a number");
+        }
+        if (limit < 0) throw new HttpError(400, "limit must not be negative");
+        try {
+            return Map.of("messages", MainApp.searchMessages(query.getOrDefault("q", ""), limit));
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, e.getMessage());
+        }
+    }
+
+    private Object stats(HttpExchange ex, SessionCache.Session session) throws HttpError {
+        int top;
+        try {
+            top = Integer.parseInt(query(ex).getOrDefault("top", "10"));
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "top must be a number");
+        }
+        if (top < 0 || top > MessageStatistics.TOP_CAPACITY) {
+            throw new HttpError(400, "top must be between 0 and " + MessageStatistics.TOP_CAPACITY);
+        }
+        return MainApp.statisticsSummary(top);
+    }
+
+    // The server only listens on localhost, so the snapshot is served without a session.
+    private Object metrics(HttpExchange ex, SessionCache.Session none) {
+        return "text".equals(query(ex).get("format")) ? Metrics.snapshotText() : Metrics.snapshot();
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> params = new LinkedHashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+}
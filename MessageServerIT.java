@@ -0,0 +1,164 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageServerIT {
+
+    private static final String ALICE = "{\"username\":\"al_ce\",\"password\":\"Passw0rd!\",\"cellNumber\":\"+27831234567\"}";
+
+    @TempDir
+    Path dir;
+
+    private Process server;
+    private String base;
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = startServer(dir);
+        base = "http://localhost:" + readPort(server, dir);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        server.destroyForcibly().waitFor();
+    }
+
+    private HttpResponse<String> call(String method, String path, String token, String body) throws IOException, InterruptedException {
+        return request(http, method, base + path, token, body);
+    }
+
+    private String login() throws IOException, InterruptedException {
+        assertEquals(200, call("POST", "/register", null, ALICE).statusCode());
+        HttpResponse<String> response = call("POST", "/login", null, "{\"username\":\"al_ce\",\"password\":\"Passw0rd!\"}");
+        assertEquals(200, response.statusCode(), response.body());
+        return json(response).get("token").getAsString();
+    }
+
+    private static JsonObject json(HttpResponse<String> response) {
+        return JsonParser.parseString(response.body()).getAsJsonObject();
+    }
+
+    /**
+     * Test of the /login and /logout endpoints, of class MessageServer: a token opens a session
+     * that works until it is logged out.
+     */
+    @Test
+    public void testSessionLogin() throws Exception {
+        String token = login();
+        String other = json(call("POST", "/login", null, "{\"username\":\"al_ce\",\"password\":\"Passw0rd!\"}")).get("token").getAsString();
+        assertNotEquals(token, other);
+        assertEquals(200, call("GET", "/messages", token, null).statusCode());
+        assertEquals(1, json(call("POST", "/logout", token, "")).get("revoked").getAsInt());
+        assertEquals(401, call("GET", "/messages", token, null).statusCode());
+        assertEquals(200, call("GET", "/messages", other, null).statusCode());
+        assertEquals(1, json(call("POST", "/logout?all=true", other, "")).get("revoked").getAsInt());
+        assertEquals(401, call("GET", "/messages", other, null).statusCode());
+    }
+
+    /**
+     * Test of the session check, of class MessageServer: no token, an unknown token and a
+     * wrong password are all refused with 401.
+     */
+    @Test
+    public void testAuthRejected() throws Exception {
+        login();
+        assertEquals("Login required", json(call("GET", "/messages", null, null)).get("error").getAsString());
+        assertEquals(401, call("GET", "/messages", null, null).statusCode());
+        assertEquals(401, call("POST", "/send", "not-a-token", "{\"messages\":[]}").statusCode());
+        assertEquals(401, call("GET", "/stats", "not-a-token", null).statusCode());
+        assertEquals(401, call("POST", "/login", null, "{\"username\":\"al_ce\",\"password\":\"Wr0ngPass!\"}").statusCode());
+        assertEquals(200, call("GET", "/metrics", null, null).statusCode());
+    }
+
+    /**
+     * Test of the /send endpoint, of class MessageServer: per-item results, and the sent
+     * messages are listed by /messages.
+     */
+    @Test
+    public void testSend() throws Exception {
+        String token = login();
+        HttpResponse<String> response = call("POST", "/send", token, "{\"messages\":["
+                + "{\"recipient\":\"+27831234567\",\"messageText\":\"Hi Mike\"},"
+                + "{\"recipient\":\"083\",\"messageText\":\"Bad number\"},"
+                + "{\"recipient\":\"+27831234567\",\"messageText\":\"Later\",\"sendAt\":\"2099-01-01T08:00\"}]}");
+        assertEquals(200, response.statusCode(), response.body());
+        JsonObject sent = json(response);
+        assertEquals(3, sent.getAsJsonArray("results").size());
+        JsonObject first = sent.getAsJsonArray("results").get(0).getAsJsonObject();
+        assertEquals("Hi Mike", first.getAsJsonObject("message").get("messageText").getAsString());
+        assertEquals(MessageBatch.INVALID_RECIPIENT, sent.getAsJsonArray("results").get(1).getAsJsonObject().get("error").getAsString());
+        JsonObject page = json(call("GET", "/messages?offset=0&limit=10", token, null));
+        assertEquals(2, page.get("total").getAsInt());
+        assertEquals(first.getAsJsonObject("message").get("messageID"),
+                page.getAsJsonArray("messages").get(0).getAsJsonObject().get("messageID"));
+        assertEquals(1, json(call("GET", "/search?q=later", token, null)).getAsJsonArray("messages").size());
+    }
+
+    /**
+     * Test of the error statuses, of class MessageServer: wrong method, malformed or invalid
+     * input, a taken username and bad query parameters.
+     */
+    @Test
+    public void testErrorStatuses() throws Exception {
+        String token = login();
+        assertEquals(405, call("GET", "/send", token, null).statusCode());
+        assertEquals(405, call("POST", "/messages", token, "").statusCode());
+        assertEquals(400, call("POST", "/send", token, "{\"messages\": [").statusCode());
+        assertEquals(400, call("POST", "/send", token, "{\"messages\":[]}").statusCode());
+        assertEquals(400, call("POST", "/register", null, "").statusCode());
+        assertEquals(400, call("POST", "/register", null, "{\"username\":\"alice\",\"password\":\"Passw0rd!\",\"cellNumber\":\"+27831234567\"}").statusCode());
+        assertEquals(409, call("POST", "/register", null, ALICE).statusCode());
+        assertEquals(400, call("GET", "/messages?limit=ten", token, null).statusCode());
+        assertEquals(400, call("GET", "/messages?offset=-1", token, null).statusCode());
+        assertEquals(400, call("GET", "/stats?top=100000", token, null).statusCode());
+        assertEquals(404, call("GET", "/nowhere", token, null).statusCode());
+    }
+
+    // Runs MainApp --server on an ephemeral port with dir as its working directory and
+    // server.log there as its output.
+    static Process startServer(Path dir) throws IOException, URISyntaxException {
+        String classPath = Path.of(MainApp.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                + File.pathSeparator + Path.of(Gson.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        return new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", classPath, "MainApp", "--server", "0")
+                .directory(dir.toFile()).redirectErrorStream(true).redirectOutput(dir.resolve("server.log").toFile()).start();
+    }
+
+    // Waits for the "Listening on http://localhost:<port>" line.
+    static int readPort(Process server, Path dir) throws IOException, InterruptedException {
+        Path log = dir.resolve("server.log");
+        for (int i = 0; i < 300 && server.isAlive(); i++) {
+            for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+                if (line.startsWith("Listening on ")) return URI.create(line.substring("Listening on ".length())).getPort();
+            }
+            Thread.sleep(100);
+        }
+        fail("Server did not start: " + Files.readString(log, StandardCharsets.UTF_8));
+        return -1;
+    }
+
+    static HttpResponse<String> request(HttpClient http, String method, String url, String token, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(10))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) request.header("Authorization", "Bearer " + token);
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,295 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Message aggregates kept up to date on every add and remove, so reports read them instead
+// of rescanning the store: counts per recipient, per day and per hour of day, a histogram
+// of text lengths and the longest messages.
+//
+// Recipients are ranked by count in one array, each recipient's block of equal counts kept
+// contiguous, so a +1 or -1 is a binary search and a swap and the top k are the first k
+// entries. The longest messages are kept in a set of at most TOP_CAPACITY; removing from it
+// can leave fewer than a report asks for, and only then is the store scanned again.
+//
+// Like MessageTextIndex, the statistics are built from the store on the first read and
+// maintained after that.
+final class MessageStatistics {
+    static final int TOP_CAPACITY = 100;
+    static final int LENGTH_BUCKET_CHARS = 10;
+    // 0-9 .. 240-249 characters, then 250 and longer (only seen in imported messages).
+    static final int LENGTH_BUCKETS = 26;
+
+    private static final class Entry {
+        final int length;
+        final Message message;
+
+        Entry(int length, Message message) {
+            this.length = length;
+            this.message = message;
+        }
+    }
+
+    private static final Comparator<String> NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+    private static final Comparator<Entry> LONGEST_FIRST = Comparator.<Entry>comparingInt(e -> -e.length)
+            .thenComparing(e -> e.message.getMessageID(), NULLS_FIRST)
+            .thenComparing(e -> e.message.getMessageHash(), NULLS_FIRST);
+
+    private long total;
+    private long totalChars;
+    private long undated;
+    private final long[] byHour = new long[24];
+    private final long[] byLength = new long[LENGTH_BUCKETS];
+    private final TreeMap<Long, Long> byDay = new TreeMap<>();
+
+    private final Map<String, Integer> recipientCodes = new HashMap<>();
+    private String[] recipients = new String[64];
+    private int[] counts = new int[64];
+    private int[] ranked = new int[64];
+    private int[] rankOf = new int[64];
+
+    private final TreeSet<Entry> longest = new TreeSet<>(LONGEST_FIRST);
+    private boolean longestComplete = true;
+    private boolean built = false;
+
+    // Drops everything; the next report rebuilds from the store.
+    synchronized void invalidate() {
+        total = totalChars = undated = 0;
+        Arrays.fill(byHour, 0);
+        Arrays.fill(byLength, 0);
+        byDay.clear();
+        recipientCodes.clear();
+        Arrays.fill(recipients, null);
+        longest.clear();
+        longestComplete = true;
+        built = false;
+    }
+
+    synchronized void add(Message m) {
+        if (built) count(m, 1);
+    }
+
+    synchronized void addAll(Collection<Message> messages) {
+        if (!built) return;
+        for (Message m : messages) count(m, 1);
+    }
+
+    synchronized void remove(Message m) {
+        if (built) count(m, -1);
+    }
+
+    private void build(MessageStore store) {
+        if (built) return;
+        for (Message m : store) count(m, 1);
+        built = true;
+    }
+
+    private void count(Message m, int delta) {
+        String text = m.getMessageText();
+        int length = text == null ? 0 : text.length();
+        total += delta;
+        totalChars += (long) delta * length;
+        byLength[Math.min(length / LENGTH_BUCKET_CHARS, LENGTH_BUCKETS - 1)] += delta;
+        long t = m.timestampBits();
+        if (t == MessageCodec.NONE) {
+            undated += delta;
+        } else {
+            byHour[Math.floorMod(t, 86400) / 3600] += delta;
+            byDay.merge(Math.floorDiv(t, 86400), (long) delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+        if (delta > 0) {
+            increment(recipientCode(m.getRecipient()));
+            offerLongest(new Entry(length, m));
+        } else {
+            Integer code = recipientCodes.get(m.getRecipient());
+            if (code != null && counts[code] > 0) decrement(code);
+            longest.remove(new Entry(length, m));
+        }
+    }
+
+    private int recipientCode(String recipient) {
+        Integer code = recipientCodes.get(recipient);
+        if (code != null) return code;
+        int next = recipientCodes.size();
+        if (next == recipients.length) {
+            int capacity = next * 2;
+            recipients = Arrays.copyOf(recipients, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            ranked = Arrays.copyOf(ranked, capacity);
+            rankOf = Arrays.copyOf(rankOf, capacity);
+        }
+        recipientCodes.put(recipient, next);
+        recipients[next] = recipient;
+        counts[next] = 0;
+        ranked[next] = next;
+        rankOf[next] = next;
+        return next;
+    }
+
+    // Moves code to the front of its block of equal counts, then counts it once more.
+    private void increment(int code) {
+        int c = counts[code], lo = 0, hi = rankOf[code];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (counts[ranked[mid]] > c) lo = mid + 1;
+            else hi = mid;
+        }
+        swap(lo, rankOf[code]);
+        counts[code]++;
+    }
+
+    // Moves code to the back of its block of equal counts, then counts it once less.
+    private void decrement(int code) {
+        int c = counts[code], lo = rankOf[code], hi = recipientCodes.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (counts[ranked[mid]] < c) hi = mid - 1;
+            else lo = mid;
+        }
+        swap(lo, rankOf[code]);
+        counts[code]--;
+    }
+
+    private void swap(int i, int j) {
+        int a = ranked[i], b = ranked[j];
+        ranked[i] = b;
+        ranked[j] = a;
+        rankOf[b] = i;
+        rankOf[a] = j;
+    }
+
+    // While the set is complete it holds every message; once something has been evicted it
+    // holds the longest ones, and shorter newcomers are left out.
+    private void offerLongest(Entry e) {
+        if (!longestComplete && (longest.isEmpty() || LONGEST_FIRST.compare(e, longest.last()) > 0)) return;
+        longest.add(e);
+        if (longest.size() > TOP_CAPACITY) {
+            longest.pollLast();
+            longestComplete = false;
+        }
+    }
+
+    // The k recipients with the most messages, most first; ties in no particular order.
+    synchronized Map<String, Integer> topRecipients(MessageStore store, int k) {
+        build(store);
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(k, recipientCodes.size()) && counts[ranked[i]] > 0; i++) {
+            out.put(recipients[ranked[i]], counts[ranked[i]]);
+        }
+        return out;
+    }
+
+    // The k longest messages, longest first (k at most TOP_CAPACITY).
+    synchronized List<Message> longest(MessageStore store, int k) {
+        build(store);
+        k = Math.min(k, TOP_CAPACITY);
+        if (longest.size() < k && !longestComplete) {
+            longest.clear();
+            longestComplete = true;
+            for (Message m : store) {
+                String text = m.getMessageText();
+                offerLongest(new Entry(text == null ? 0 : text.length(), m));
+            }
+        }
+        List<Message> out = new ArrayList<>(k);
+        for (Entry e : longest) {
+            if (out.size() == k) break;
+            out.add(e.message);
+        }
+        return out;
+    }
+
+    // Message counts by day ("yyyy-MM-dd"), oldest first.
+    synchronized Map<String, Long> byDay(MessageStore store) {
+        build(store);
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> e : byDay.entrySet()) out.put(LocalDate.ofEpochDay(e.getKey()).toString(), e.getValue());
+        return out;
+    }
+
+    synchronized long[] byHour(MessageStore store) {
+        build(store);
+        return byHour.clone();
+    }
+
+    // Counts per LENGTH_BUCKET_CHARS-wide band of text length; the last band is open-ended.
+    synchronized long[] byLength(MessageStore store) {
+        build(store);
+        return byLength.clone();
+    }
+
+    // Everything above in one map, for the server and the report dialog.
+    synchronized Map<String, Object> summary(MessageStore store, int k) {
+        build(store);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("messages", total);
+        out.put("recipients", recipientCodes.size() - trailingZeroCounts());
+        out.put("averageLength", total == 0 ? 0.0 : Math.round(totalChars * 10.0 / total) / 10.0);
+        out.put("undated", undated);
+        out.put("byDay", byDay(store));
+        out.put("byHour", byHour.clone());
+        out.put("byLength", byLength.clone());
+        out.put("topRecipients", topRecipients(store, k));
+        List<Map<String, Object>> top = new ArrayList<>();
+        for (Message m : longest(store, k)) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("messageID", m.getMessageID());
+            item.put("recipient", m.getRecipient());
+            item.put("length", m.getMessageText() == null ? 0 : m.getMessageText().length());
+            item.put("messageText", m.getMessageText());
+            top.add(item);
+        }
+        out.put("longest", top);
+        return out;
+    }
+
+    // Recipients whose messages have all been removed sit at the end of the ranking.
+    private int trailingZeroCounts() {
+        int n = 0;
+        for (int i = recipientCodes.size() - 1; i >= 0 && counts[ranked[i]] == 0; i--) n++;
+        return n;
+    }
+
+    // A plain-text rendering of summary() for the report dialog.
+    @SuppressWarnings("unchecked")
+    synchronized String report(MessageStore store, int k) {
+        Map<String, Object> s = summary(store, k);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Messages: ").append(s.get("messages")).append("\n");
+        sb.append("Recipients: ").append(s.get("recipients")).append("\n");
+        sb.append("Average length: ").append(s.get("averageLength")).append(" characters\n");
+        sb.append("\nTop recipients:\n");
+        for (Map.Entry<String, Integer> e : ((Map<String, Integer>) s.get("topRecipients")).entrySet()) {
+            sb.append("  ").append(e.getKey()).append("  ").append(e.getValue()).append("\n");
+        }
+        sb.append("\nLongest messages:\n");
+        for (Map<String, Object> m : (List<Map<String, Object>>) s.get("longest")) {
+            sb.append("  ").append(m.get("messageID")).append(" to ").append(m.get("recipient"))
+                    .append(" (").append(m.get("length")).append("): ").append(m.get("messageText")).append("\n");
+        }
+        sb.append("\nMessages per day:\n");
+        for (Map.Entry<String, Long> e : ((Map<String, Long>) s.get("byDay")).entrySet()) {
+            sb.append("  ").append(e.getKey()).append("  ").append(e.getValue()).append("\n");
+        }
+        if (undated > 0) sb.append("  (no date)  ").append(undated).append("\n");
+        sb.append("\nMessages per hour of day:\n");
+        for (int h = 0; h < byHour.length; h++) {
+            if (byHour[h] > 0) sb.append(String.format("  %02d:00  %d", h, byHour[h])).append("\n");
+        }
+        sb.append("\nMessage lengths:\n");
+        for (int b = 0; b < byLength.length; b++) {
+            if (byLength[b] == 0) continue;
+            int lo = b * LENGTH_BUCKET_CHARS;
+            String band = b == LENGTH_BUCKETS - 1 ? lo + "+" : lo + "-" + (lo + LENGTH_BUCKET_CHARS - 1);
+            sb.append("  ").append(band).append("  ").append(byLength[b]).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageStatisticsIT {
+
+    private MessageStore store;
+    private MessageStatistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        store = new HeapMessageStore();
+        statistics = new MessageStatistics();
+        store.add(Message.restore("0000000001", "+27831234567", "Where are you? You are late!", "00000000000a", "2025-06-17", "10:00:00"));
+        store.add(Message.restore("0000000002", "+27838884567", "Yohoooo, I am at your gate.", "00000000000b", "2025-06-18", "11:00:00"));
+        store.add(Message.restore("0000000003", "+27834484567", "It is dinner time!", "00000000000c", "2025-06-18", "11:30:00"));
+        store.add(Message.restore("0000000004", "+27838884567", "Ok, I am leaving without you.", "00000000000d", "2025-06-20", "13:00:00"));
+    }
+
+    /**
+     * Test of summary method, of class MessageStatistics, built from the store.
+     */
+    @Test
+    public void testSummary() {
+        Map<String, Object> summary = statistics.summary(store, 2);
+        assertEquals(4L, summary.get("messages"));
+        assertEquals(3, summary.get("recipients"));
+        assertEquals(Map.of("2025-06-17", 1L, "2025-06-18", 2L, "2025-06-20", 1L), summary.get("byDay"));
+        assertEquals(2, statistics.byHour(store)[11]);
+        assertEquals(1, statistics.byLength(store)[1]);
+        assertEquals(3, statistics.byLength(store)[2]);
+        assertEquals(2, statistics.topRecipients(store, 1).get("+27838884567"));
+    }
+
+    /**
+     * Test of add and remove methods, of class MessageStatistics, after the statistics are built.
+     */
+    @Test
+    public void testKeptUpToDate() {
+        assertEquals("0000000004", statistics.longest(store, 1).get(0).getMessageID());
+        Message longer = Message.restore("0000000005", "+27831234567", "A much longer message than any of the others.", "00000000000e", "2025-06-21", "14:00:00");
+        store.add(longer);
+        statistics.add(longer);
+        store.add(Message.restore("0000000006", "+27831234567", "Again.", "00000000000f", "2025-06-21", "14:00:00"));
+        statistics.add(store.findById("0000000006"));
+        assertEquals(List.of("+27831234567"), List.copyOf(statistics.topRecipients(store, 1).keySet()));
+        assertEquals("0000000005", statistics.longest(store, 1).get(0).getMessageID());
+        store.remove(longer);
+        statistics.remove(longer);
+        assertEquals("0000000004", statistics.longest(store, 1).get(0).getMessageID());
+        assertEquals(2, statistics.topRecipients(store, 3).get("+27831234567"));
+        assertEquals(1L, statistics.byDay(store).get("2025-06-21"));
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+// The message operations MainApp needs: append, delete, ordered paging and indexed lookups.
+// Iteration is in insertion order. Implementations are safe for concurrent use, except that
+// iterating while another thread mutates the store needs external locking.
+interface MessageStore extends Iterable<Message> {
+    void add(Message m);
+
+    default void addAll(Collection<Message> messages) {
+        for (Message m : messages) add(m);
+    }
+
+    // Removes the stored message with the same hash and ID; false if there is none.
+    boolean remove(Message m);
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Up to limit messages starting at offset, in insertion order.
+    List<Message> page(int offset, int limit);
+
+    Message findById(String messageID);
+
+    Message findByHash(String messageHash);
+
+    List<Message> findByRecipient(String recipient);
+
+    // Number of stored messages to recipient, without materializing them where the store can.
+    default int countByRecipient(String recipient) {
+        return findByRecipient(recipient).size();
+    }
+
+    // Messages sent between from and to, both inclusive, in send-time order.
+    List<Message> findBetween(LocalDateTime from, LocalDateTime to);
+
+    // Largest packed message ID in the store, or 0 when it is empty.
+    default long maxId() {
+        long max = 0;
+        for (Message m : this) max = Math.max(max, m.idBits());
+        return max;
+    }
+
+    // True if the store keeps its own files; MainApp then skips the messages.json journal.
+    default boolean isDurable() {
+        return false;
+    }
+
+    // Flushes what a durable store has written so far to disk; nothing to do otherwise.
+    default void sync() throws IOException {
+    }
+
+    // Syncs a durable store and releases its files; nothing may use the store afterwards.
+    default void close() throws IOException {
+        sync();
+    }
+
+    // Store named by -Dmainapp.store: "heap" (default), "columnar", "mapped", "sharded" or
+    // "tiered". The mapped store keeps its segments in the directory named by
+    // -Dmainapp.segments; the sharded and tiered ones are configured as described in
+    // ShardedMessageStore and TieredMessageStore.
+    static MessageStore fromProperty() throws IOException {
+        String configured = System.getProperty("mainapp.store", "heap");
+        switch (configured.toLowerCase()) {
+            case "heap":
+                return new HeapMessageStore();
+            case "columnar":
+                return new ColumnarMessageStore();
+            case "mapped":
+                return new MappedMessageStore(Paths.get(System.getProperty("mainapp.segments", "messages.segments")));
+            case "sharded":
+                return ShardedMessageStore.fromProperty();
+            case "tiered":
+                return TieredMessageStore.fromProperty();
+            default:
+                throw new IllegalArgumentException("Unknown mainapp.store: " + configured);
+        }
+    }
+
+    // The store fromProperty() opens and where it keeps its files, e.g. "mapped messages.segments".
+    static String describeProperty() {
+        String configured = System.getProperty("mainapp.store", "heap").toLowerCase();
+        switch (configured) {
+            case "mapped":
+                return configured + " " + System.getProperty("mainapp.segments", "messages.segments");
+            case "sharded":
+                return configured + " " + System.getProperty("mainapp.shards", "4").trim();
+            case "tiered":
+                return configured + " " + System.getProperty("mainapp.tiered", "messages.tiered");
+            default:
+                return configured;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+
+// TableModel over a MessageView. JTable only asks for the rows it paints, and those are
+// fetched a block at a time, with the most recently used blocks kept.
+final class MessageTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    static final int BLOCK_SIZE = 100;
+    private static final int CACHED_BLOCKS = 16;
+
+    private MessageView view;
+    private final Map<Integer, List<Message>> blocks = new LinkedHashMap<Integer, List<Message>>(CACHED_BLOCKS, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Message>> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    MessageTableModel(MessageView view) {
+        this.view = view;
+    }
+
+    MessageView getView() {
+        return view;
+    }
+
+    void setView(MessageView view) {
+        this.view = view;
+        blocks.clear();
+        fireTableDataChanged();
+    }
+
+    MessageView.Column column(int index) {
+        return MessageView.Column.values()[index];
+    }
+
+    @Override
+    public int getRowCount() {
+        return view.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return MessageView.Column.values().length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return column(column).title;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        List<Message> block = blocks.computeIfAbsent(row / BLOCK_SIZE, b -> view.page(b * BLOCK_SIZE, BLOCK_SIZE));
+        int at = row % BLOCK_SIZE;
+        Message m = at < block.size() ? block.get(at) : null;
+        return m == null ? "(deleted)" : column(column).valueOf(m);
+    }
+}
@@ -0,0 +1,417 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+// Inverted index over message text for keyword search. Each indexed message gets a doc
+// number in insertion order; each term keeps one growable byte array of postings,
+// [varint doc delta][varint count][varint position deltas...], so phrases can be matched
+// without going back to the text. Per-doc ID and time are kept as longs and the recipient
+// as a RecipientDictionary code, so filters never touch the store and a recipient-only
+// query walks that recipient's docs; only the matches that are returned are looked up.
+//
+// The index is built from the store on the first search and kept up to date by add and
+// remove after that. Deleted docs are masked until enough pile up to rebuild.
+final class MessageTextIndex {
+    private static final int INITIAL_DOCS = 1024;
+
+    // Words are ANDed, OR separates alternatives and "quoted words" must appear in order.
+    // recipient:+27..., from:yyyy-MM-dd and to:yyyy-MM-dd (or full yyyy-MM-ddTHH:mm:ss)
+    // narrow the matches; a query of only filters matches every message that passes them.
+    static final class Query {
+        private final List<List<String[]>> groups = new ArrayList<>();
+        private String recipient;
+        private LocalDateTime from;
+        private LocalDateTime to;
+
+        static Query parse(String text) {
+            Query q = new Query();
+            List<String[]> group = new ArrayList<>();
+            for (String word : words(text)) {
+                if (word.equals("OR")) {
+                    if (!group.isEmpty()) q.groups.add(group);
+                    group = new ArrayList<>();
+                } else if (word.startsWith("recipient:")) {
+                    q.recipient = word.substring("recipient:".length());
+                } else if (word.startsWith("from:")) {
+                    q.from = dateTime(word.substring("from:".length()), LocalTime.MIN);
+                } else if (word.startsWith("to:")) {
+                    q.to = dateTime(word.substring("to:".length()), LocalTime.of(23, 59, 59));
+                } else {
+                    List<String> terms = tokenize(word);
+                    if (!terms.isEmpty()) group.add(terms.toArray(new String[0]));
+                }
+            }
+            if (!group.isEmpty()) q.groups.add(group);
+            if (q.groups.isEmpty() && q.recipient == null && q.from == null && q.to == null) {
+                throw new IllegalArgumentException("Enter at least one word or filter to search for.");
+            }
+            return q;
+        }
+
+        // Whitespace-separated words, with "quoted text" kept together as one word.
+        private static List<String> words(String text) {
+            List<String> out = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (Character.isWhitespace(c) && !quoted) {
+                    if (sb.length() > 0) out.add(sb.toString());
+                    sb.setLength(0);
+                } else {
+                    sb.append(c);
+                }
+            }
+            if (sb.length() > 0) out.add(sb.toString());
+            return out;
+        }
+
+        private static LocalDateTime dateTime(String s, LocalTime timeOfDay) {
+            try {
+                return s.indexOf('T') >= 0 ? LocalDateTime.parse(s) : LocalDate.parse(s).atTime(timeOfDay);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Dates must be yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss: " + s);
+            }
+        }
+    }
+
+    private static final class Postings {
+        byte[] data = new byte[16];
+        int length;
+        int lastDoc = -1;
+        int docs;
+
+        // positions[0] is the number of positions that follow it.
+        void add(int doc, int[] positions) {
+            writeVarint(doc - lastDoc);
+            writeVarint(positions[0]);
+            int previous = 0;
+            for (int i = 1; i <= positions[0]; i++) {
+                writeVarint(positions[i] - previous);
+                previous = positions[i];
+            }
+            lastDoc = doc;
+            docs++;
+        }
+
+        private void writeVarint(int v) {
+            if (length + 5 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            while ((v & ~0x7f) != 0) {
+                data[length++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            data[length++] = (byte) v;
+        }
+    }
+
+    // Forward-only walk over one term's postings.
+    private static final class Cursor {
+        private final Postings postings;
+        private int at;
+        private int positionsAt;
+        int doc = -1;
+        int count;
+
+        Cursor(Postings postings) {
+            this.postings = postings;
+        }
+
+        boolean next() {
+            if (at >= postings.length) {
+                doc = Integer.MAX_VALUE;
+                return false;
+            }
+            doc += readVarint();
+            count = readVarint();
+            positionsAt = at;
+            for (int i = 0; i < count; i++) readVarint();
+            return true;
+        }
+
+        // Moves to the first doc at or after target; true if that doc is target.
+        boolean advanceTo(int target) {
+            while (doc < target) {
+                if (!next()) return false;
+            }
+            return doc == target;
+        }
+
+        int[] positions() {
+            int saved = at;
+            at = positionsAt;
+            int[] out = new int[count];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                position += readVarint();
+                out[i] = position;
+            }
+            at = saved;
+            return out;
+        }
+
+        private int readVarint() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = postings.data[at++];
+                v |= (b & 0x7f) << shift;
+                if (b >= 0) return v;
+            }
+        }
+    }
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private long[] ids = new long[INITIAL_DOCS];
+    private int[] recipients = new int[INITIAL_DOCS];
+    private RecipientDictionary dictionary = new RecipientDictionary(INITIAL_DOCS);
+    private long[] timestamps = new long[INITIAL_DOCS];
+    private int docs = 0;
+    private final BitSet deleted = new BitSet();
+    private int deletedDocs = 0;
+    private LongIntHashMap docById = new LongIntHashMap(INITIAL_DOCS);
+    private final Map<Integer, Message> irregular = new HashMap<>();
+    private boolean built = false;
+
+    // Lowercased runs of letters and digits.
+    static List<String> tokenize(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isLetterOrDigit(cp)) {
+                sb.appendCodePoint(Character.toLowerCase(cp));
+            } else if (sb.length() > 0) {
+                out.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        if (sb.length() > 0) out.add(sb.toString());
+        return out;
+    }
+
+    // Drops the index; the next search rebuilds it from the store.
+    synchronized void invalidate() {
+        postings.clear();
+        docs = 0;
+        deleted.clear();
+        deletedDocs = 0;
+        docById = new LongIntHashMap(INITIAL_DOCS);
+        dictionary = new RecipientDictionary(INITIAL_DOCS);
+        irregular.clear();
+        built = false;
+    }
+
+    synchronized void add(Message m) {
+        if (built) index(m);
+    }
+
+    synchronized void addAll(Collection<Message> messages) {
+        if (!built) return;
+        for (Message m : messages) index(m);
+    }
+
+    synchronized void remove(Message m) {
+        if (!built) return;
+        int doc = docOf(m);
+        if (doc < 0) return;
+        deleted.set(doc);
+        deletedDocs++;
+        if (irregular.remove(doc) == null) {
+            docById.remove(ids[doc]);
+            dictionary.removed(recipients[doc]);
+        }
+        if (deletedDocs > INITIAL_DOCS && deletedDocs > docs / 2) invalidate();
+    }
+
+    private int docOf(Message m) {
+        if (m.verbatim() == null) return docById.get(m.idBits());
+        for (Map.Entry<Integer, Message> e : irregular.entrySet()) {
+            Message indexed = e.getValue();
+            if (Objects.equals(indexed.getMessageID(), m.getMessageID())
+                    && Objects.equals(indexed.getMessageHash(), m.getMessageHash())) {
+                return e.getKey();
+            }
+        }
+        return -1;
+    }
+
+    private void index(Message m) {
+        if (docs == ids.length) {
+            ids = Arrays.copyOf(ids, docs * 2);
+            recipients = Arrays.copyOf(recipients, docs * 2);
+            timestamps = Arrays.copyOf(timestamps, docs * 2);
+        }
+        int doc = docs++;
+        if (m.verbatim() == null) {
+            ids[doc] = m.idBits();
+            recipients[doc] = dictionary.add(m.recipientBits(), doc);
+            timestamps[doc] = m.timestampBits();
+            docById.put(ids[doc], doc);
+        } else {
+            ids[doc] = timestamps[doc] = MessageCodec.NONE;
+            recipients[doc] = RecipientDictionary.UNKNOWN;
+            irregular.put(doc, m);
+        }
+        List<String> terms = tokenize(m.getMessageText());
+        Map<String, int[]> positions = new HashMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            int[] found = positions.get(terms.get(i));
+            if (found == null) {
+                found = new int[2];
+                positions.put(terms.get(i), found);
+            } else if (found[0] + 1 == found.length) {
+                found = Arrays.copyOf(found, found.length * 2);
+                positions.put(terms.get(i), found);
+            }
+            found[++found[0]] = i;
+        }
+        for (Map.Entry<String, int[]> e : positions.entrySet()) {
+            postings.computeIfAbsent(e.getKey(), k -> new Postings()).add(doc, e.getValue());
+        }
+    }
+
+    // Up to limit matching messages from store, in insertion order.
+    List<Message> search(MessageStore store, Query q, int limit) {
+        List<Message> out = new ArrayList<>();
+        if (limit > 0) forEachMatch(store, q, m -> out.add(m) && out.size() < limit);
+        return out;
+    }
+
+    // Hands each matching message to sink in insertion order until sink returns false.
+    synchronized void forEachMatch(MessageStore store, Query q, Predicate<Message> sink) {
+        if (!built) {
+            for (Message m : store) index(m);
+            built = true;
+        }
+        int[] matches = null;
+        for (List<String[]> group : q.groups) {
+            matches = union(matches, matchAll(group));
+        }
+        int recipient = q.recipient == null ? RecipientDictionary.UNKNOWN : dictionary.codeOf(q.recipient);
+        if (matches == null && q.recipient != null) matches = docsOf(recipient);
+        long from = q.from == null ? Long.MIN_VALUE : MessageCodec.packDateTime(q.from);
+        long to = q.to == null ? Long.MAX_VALUE : MessageCodec.packDateTime(q.to);
+        boolean timed = q.from != null || q.to != null;
+        int n = matches == null ? docs : matches.length;
+        for (int i = 0; i < n; i++) {
+            int doc = matches == null ? i : matches[i];
+            if (deleted.get(doc)) continue;
+            Message m = irregular.get(doc);
+            if (m != null) {
+                if (timed || (q.recipient != null && !q.recipient.equals(m.getRecipient()))) continue;
+            } else {
+                if (q.recipient != null && recipients[doc] != recipient) continue;
+                if (timestamps[doc] < from || timestamps[doc] > to) continue;
+                m = store.findById(MessageCodec.formatId(ids[doc]));
+                if (m == null) continue;
+            }
+            if (!sink.test(m)) return;
+        }
+    }
+
+    // The recipient's docs plus every irregular doc, which are checked by recipient string.
+    private int[] docsOf(int recipient) {
+        int[] out = new int[dictionary.liveCount(recipient) + irregular.size()];
+        int[] n = {0};
+        dictionary.forEachRow(recipient, doc -> {
+            if (!deleted.get(doc)) out[n[0]++] = doc;
+        });
+        for (int doc : irregular.keySet()) out[n[0]++] = doc;
+        Arrays.sort(out, 0, n[0]);
+        return Arrays.copyOf(out, n[0]);
+    }
+
+    // Docs matching every clause; the rarest clause is decoded first and the others only filter it.
+    private int[] matchAll(List<String[]> clauses) {
+        List<String[]> ordered = new ArrayList<>(clauses);
+        ordered.sort((a, b) -> Integer.compare(rarest(a), rarest(b)));
+        int[] candidates = null;
+        for (String[] clause : ordered) {
+            candidates = filter(candidates, clause);
+            if (candidates.length == 0) break;
+        }
+        return candidates;
+    }
+
+    private int rarest(String[] clause) {
+        int min = Integer.MAX_VALUE;
+        for (String term : clause) {
+            Postings p = postings.get(term);
+            min = Math.min(min, p == null ? 0 : p.docs);
+        }
+        return min;
+    }
+
+    // The candidates (every doc when null) that contain the clause's terms in order.
+    private int[] filter(int[] candidates, String[] clause) {
+        Cursor[] cursors = new Cursor[clause.length];
+        Postings seed = null;
+        for (int i = 0; i < clause.length; i++) {
+            Postings p = postings.get(clause[i]);
+            if (p == null) return new int[0];
+            cursors[i] = new Cursor(p);
+            if (seed == null || p.docs < seed.docs) seed = p;
+        }
+        if (candidates == null) {
+            candidates = new int[seed.docs];
+            Cursor c = new Cursor(seed);
+            for (int i = 0; c.next(); i++) candidates[i] = c.doc;
+        }
+        int[] out = new int[candidates.length];
+        int kept = 0;
+        for (int doc : candidates) {
+            boolean present = true;
+            for (Cursor c : cursors) {
+                if (!c.advanceTo(doc)) {
+                    present = false;
+                    break;
+                }
+            }
+            if (present && (cursors.length == 1 || inSequence(cursors))) out[kept++] = doc;
+        }
+        return Arrays.copyOf(out, kept);
+    }
+
+    private static boolean inSequence(Cursor[] cursors) {
+        int[][] positions = new int[cursors.length][];
+        for (int i = 0; i < cursors.length; i++) positions[i] = cursors[i].positions();
+        for (int start : positions[0]) {
+            boolean match = true;
+            for (int i = 1; i < positions.length && match; i++) {
+                match = Arrays.binarySearch(positions[i], start + i) >= 0;
+            }
+            if (match) return true;
+        }
+        return false;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a == null) return b;
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j >= b.length || (i < a.length && a[i] < b[j])) next = a[i++];
+            else if (i >= a.length || b[j] < a[i]) next = b[j++];
+            else {
+                next = a[i++];
+                j++;
+            }
+            out[n++] = next;
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageTextIndexIT {
+
+    private MessageStore store;
+    private MessageTextIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        store = new HeapMessageStore();
+        index = new MessageTextIndex();
+        store.add(Message.restore("0000000001", "+27831234567", "Where are you? You are late!", "00000000000a", "2025-06-17", "10:00:00"));
+        store.add(Message.restore("0000000002", "+27838884567", "Yohoooo, I am at your gate.", "00000000000b", "2025-06-18", "11:00:00"));
+        store.add(Message.restore("0000000003", "+27834484567", "It is dinner time!", "00000000000c", "2025-06-19", "12:00:00"));
+        store.add(Message.restore("0000000004", "+27838884567", "Ok, I am leaving without you.", "00000000000d", "2025-06-20", "13:00:00"));
+    }
+
+    private List<String> search(String query) {
+        List<String> ids = new ArrayList<>();
+        for (Message m : index.search(store, MessageTextIndex.Query.parse(query), 100)) ids.add(m.getMessageID());
+        return ids;
+    }
+
+    /**
+     * Test of tokenize method, of class MessageTextIndex.
+     */
+    @Test
+    public void testTokenize() {
+        assertEquals(List.of("yohoooo", "i", "am", "at", "your", "gate"), MessageTextIndex.tokenize("Yohoooo, I am at your gate."));
+    }
+
+    /**
+     * Test of search method, of class MessageTextIndex, with AND, OR and phrase queries.
+     */
+    @Test
+    public void testQueries() {
+        assertEquals(List.of("0000000002", "0000000004"), search("i AM"));
+        assertEquals(List.of("0000000001", "0000000004"), search("you"));
+        assertEquals(List.of("0000000002"), search("\"am at\""));
+        assertEquals(List.of(), search("\"at am\""));
+        assertEquals(List.of("0000000001", "0000000003"), search("late OR dinner"));
+        assertEquals(List.of(), search("missing"));
+    }
+
+    /**
+     * Test of search method, of class MessageTextIndex, with recipient and date filters.
+     */
+    @Test
+    public void testFilters() {
+        assertEquals(List.of("0000000004"), search("am recipient:+27838884567 from:2025-06-19"));
+        assertEquals(List.of("0000000001", "0000000002"), search("to:2025-06-18"));
+        assertThrows(IllegalArgumentException.class, () -> MessageTextIndex.Query.parse("from:yesterday"));
+        assertThrows(IllegalArgumentException.class, () -> MessageTextIndex.Query.parse("  "));
+    }
+
+    /**
+     * Test of add and remove methods, of class MessageTextIndex, after the index is built.
+     */
+    @Test
+    public void testKeptUpToDate() {
+        assertEquals(List.of("0000000003"), search("dinner"));
+        Message late = Message.restore("0000000005", "+27831234567", "Dinner is cold.", "00000000000e", "2025-06-21", "14:00:00");
+        store.add(late);
+        index.add(late);
+        assertEquals(List.of("0000000003", "0000000005"), search("dinner"));
+        Message first = store.findById("0000000003");
+        store.remove(first);
+        index.remove(first);
+        assertEquals(List.of("0000000005"), search("dinner"));
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// An ordered, read-only window onto the message store for browsing and export; rows are
+// only materialized a page at a time. Every view, the plain one included, keeps one long per
+// row: the packed ID, looked up again when the row is shown, or -1 - i for the i-th message
+// whose ID did not pack. Views are snapshots: messages added later are not in them, deleted
+// ones read as null, and the rows never shift under an open table.
+final class MessageView {
+    enum Column {
+        ID("Message ID", true),
+        RECIPIENT("Recipient", true),
+        TEXT("Message", false),
+        HASH("Hash", true),
+        DATE("Date", true),
+        TIME("Time", true);
+
+        final String title;
+        final boolean sortable;
+
+        Column(String title, boolean sortable) {
+            this.title = title;
+            this.sortable = sortable;
+        }
+
+        String valueOf(Message m) {
+            switch (this) {
+                case ID: return m.getMessageID();
+                case RECIPIENT: return m.getRecipient();
+                case TEXT: return m.getMessageText();
+                case HASH: return m.getMessageHash();
+                case DATE: return m.getDate();
+                default: return m.getTime();
+            }
+        }
+
+        // Packed fields order the same way as their text; unpacked ones (NONE) sort first.
+        long sortKey(Message m) {
+            switch (this) {
+                case ID: return m.idBits();
+                case RECIPIENT: return m.recipientBits();
+                case HASH: return m.hashBits();
+                case DATE:
+                case TIME: return m.timestampBits();
+                default: throw new IllegalArgumentException(title + " is not sortable");
+            }
+        }
+    }
+
+    static final int EXPORT_PAGE_SIZE = 1000;
+
+    private final MessageStore store;
+    private final long[] rows;
+    private final int size;
+    private final List<Message> irregular;
+
+    private MessageView(MessageStore store, long[] rows, int size, List<Message> irregular) {
+        this.store = store;
+        this.rows = rows;
+        this.size = size;
+        this.irregular = irregular;
+    }
+
+    // Matches of filter (MessageTextIndex.Query syntax; blank for all) ordered by sortBy (null for insertion order).
+    static MessageView of(MessageStore store, MessageTextIndex index, String filter, Column sortBy, boolean descending) {
+        boolean filtered = filter != null && !filter.trim().isEmpty();
+        if (sortBy != null && !sortBy.sortable) throw new IllegalArgumentException(sortBy.title + " is not sortable");
+        Builder builder = new Builder(sortBy);
+        if (filtered) {
+            index.forEachMatch(store, MessageTextIndex.Query.parse(filter), builder::add);
+        } else {
+            for (Message m : store) builder.add(m);
+        }
+        if (sortBy != null) builder.sort(descending);
+        return new MessageView(store, builder.rows, builder.size, builder.irregular);
+    }
+
+    private static final class Builder {
+        private final Column sortBy;
+        long[] rows = new long[1024];
+        long[] keys;
+        int size;
+        final List<Message> irregular = new ArrayList<>();
+
+        Builder(Column sortBy) {
+            this.sortBy = sortBy;
+            if (sortBy != null) keys = new long[rows.length];
+        }
+
+        boolean add(Message m) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                if (keys != null) keys = Arrays.copyOf(keys, size * 2);
+            }
+            if (m.verbatim() == null) {
+                rows[size] = m.idBits();
+            } else {
+                irregular.add(m);
+                rows[size] = -irregular.size();
+            }
+            if (keys != null) keys[size] = sortBy.sortKey(m);
+            size++;
+            return true;
+        }
+
+        // Stable merge sort of rows by keys, on primitive arrays.
+        void sort(boolean descending) {
+            long[] rowBuf = new long[size], keyBuf = new long[size];
+            for (int width = 1; width < size; width *= 2) {
+                for (int lo = 0; lo < size; lo += 2 * width) {
+                    int mid = Math.min(lo + width, size), hi = Math.min(lo + 2 * width, size);
+                    int i = lo, j = mid, k = lo;
+                    while (i < mid || j < hi) {
+                        boolean left = j >= hi || (i < mid && (descending ? keys[i] >= keys[j] : keys[i] <= keys[j]));
+                        int from = left ? i++ : j++;
+                        rowBuf[k] = rows[from];
+                        keyBuf[k++] = keys[from];
+                    }
+                }
+                long[] t = rows;
+                rows = rowBuf;
+                rowBuf = t;
+                t = keys;
+                keys = keyBuf;
+                keyBuf = t;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Rows offset .. offset + limit - 1; a message deleted since the view was built is null.
+    List<Message> page(int offset, int limit) {
+        int end = (int) Math.min((long) offset + limit, size);
+        List<Message> out = new ArrayList<>(Math.max(0, end - offset));
+        for (int row = offset; row < end; row++) {
+            long key = rows[row];
+            out.add(key < 0 ? irregular.get((int) (-key - 1)) : store.findById(MessageCodec.formatId(key)));
+        }
+        return out;
+    }
+
+    // Writes the view as CSV, one page in memory at a time.
+    long export(Writer out, JsonStreamLoader.Progress progress) throws IOException {
+        long start = System.nanoTime();
+        Column[] columns = Column.values();
+        for (int c = 0; c < columns.length; c++) {
+            if (c > 0) out.write(',');
+            writeCsv(out, columns[c].title);
+        }
+        out.write("\r\n");
+        long written = 0;
+        for (int offset = 0; offset < size; offset += EXPORT_PAGE_SIZE) {
+            for (Message m : page(offset, EXPORT_PAGE_SIZE)) {
+                if (m == null) continue;
+                for (int c = 0; c < columns.length; c++) {
+                    if (c > 0) out.write(',');
+                    writeCsv(out, columns[c].valueOf(m));
+                }
+                out.write("\r\n");
+                written++;
+            }
+            progress.report(written, written * 1e9 / Math.max(1, System.nanoTime() - start), false);
+        }
+        out.flush();
+        progress.report(written, written * 1e9 / Math.max(1, System.nanoTime() - start), true);
+        return written;
+    }
+
+    private static void writeCsv(Writer out, String value) throws IOException {
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageViewIT {
+
+    private MessageStore store;
+    private MessageTextIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        store = new HeapMessageStore();
+        index = new MessageTextIndex();
+        store.add(Message.restore("0000000002", "+27838884567", "Yohoooo, I am at your gate.", "00000000000b", "2025-06-18", "11:00:00"));
+        store.add(Message.restore("0000000001", "+27831234567", "Where are you? You are late!", "00000000000a", "2025-06-17", "10:00:00"));
+        store.add(Message.restore("0000000003", "+27834484567", "It is dinner time!", "00000000000c", "2025-06-19", "12:00:00"));
+    }
+
+    private static List<String> ids(MessageView view) {
+        List<String> ids = new ArrayList<>();
+        for (Message m : view.page(0, view.size())) ids.add(m == null ? null : m.getMessageID());
+        return ids;
+    }
+
+    /**
+     * Test of of method, of class MessageView, sorting without a filter.
+     */
+    @Test
+    public void testSort() {
+        assertEquals(List.of("0000000002", "0000000001", "0000000003"), ids(MessageView.of(store, index, null, null, false)));
+        assertEquals(List.of("0000000001", "0000000002", "0000000003"), ids(MessageView.of(store, index, "", MessageView.Column.DATE, false)));
+        assertEquals(List.of("0000000002", "0000000003", "0000000001"), ids(MessageView.of(store, index, "", MessageView.Column.RECIPIENT, true)));
+        assertThrows(IllegalArgumentException.class, () -> MessageView.of(store, index, "", MessageView.Column.TEXT, false));
+    }
+
+    /**
+     * Test of of method, of class MessageView, with a filter and a message deleted afterwards.
+     */
+    @Test
+    public void testFilterAndDelete() {
+        MessageView view = MessageView.of(store, index, "gate OR late OR dinner", MessageView.Column.ID, true);
+        assertEquals(List.of("0000000003", "0000000002", "0000000001"), ids(view));
+        store.remove(store.findById("0000000002"));
+        assertEquals(Arrays.asList("0000000003", null, "0000000001"), ids(view));
+    }
+
+    /**
+     * Test of of method, of class MessageView, the plain view with messages added and deleted afterwards.
+     */
+    @Test
+    public void testPlainViewIsSnapshot() {
+        MessageView view = MessageView.of(store, index, null, null, false);
+        store.remove(store.findById("0000000002"));
+        store.add(Message.restore("0000000004", "+27838884567", "Leaving now.", "00000000000d", "2025-06-20", "13:00:00"));
+        assertEquals(3, view.size());
+        assertEquals(Arrays.asList(null, "0000000001", "0000000003"), ids(view));
+    }
+
+    /**
+     * Test of export method, of class MessageView.
+     */
+    @Test
+    public void testExportCsv() throws IOException {
+        StringWriter out = new StringWriter();
+        assertEquals(1, MessageView.of(store, index, "gate", null, false).export(out, JsonStreamLoader.NO_PROGRESS));
+        assertEquals("Message ID,Recipient,Message,Hash,Date,Time\r\n"
+                + "0000000002,+27838884567,\"Yohoooo, I am at your gate.\",00000000000b,2025-06-18,11:00:00\r\n", out.toString());
+    }
+}
@@ -0,0 +1,164 @@
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+
+// Message browser: a JTable over a MessageTableModel, so only the visible rows are read
+// from the store. Clicking a column header sorts by it (again to reverse), the filter box
+// takes MessageTextIndex.Query syntax, and Export writes the current view to a CSV file.
+// Views are built and exported on SwingWorker threads so the EDT stays responsive.
+final class MessageViewer {
+    private static final String ASCENDING = " \u25b2";
+    private static final String DESCENDING = " \u25bc";
+
+    private final MessageTableModel model;
+    private final JTable table;
+    private final JTextField filter = new JTextField(30);
+    private final JButton apply = new JButton("Apply");
+    private final JButton export = new JButton("Export...");
+    private final JLabel status = new JLabel();
+    private final JPanel panel = new JPanel(new BorderLayout(0, 6));
+    private MessageView.Column sortBy;
+    private boolean descending;
+
+    private MessageViewer(MessageView view) {
+        model = new MessageTableModel(view);
+        table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(MessageView.Column.TEXT.ordinal()).setPreferredWidth(320);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.convertColumnIndexToModel(table.columnAtPoint(e.getPoint()));
+                if (column >= 0 && table.getTableHeader().isEnabled()) sort(model.column(column));
+            }
+        });
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("Filter:"));
+        top.add(filter);
+        top.add(apply);
+        filter.addActionListener(e -> reload());
+        apply.addActionListener(e -> reload());
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(status, BorderLayout.CENTER);
+        bottom.add(export, BorderLayout.EAST);
+        export.addActionListener(e -> export());
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(900, 450));
+        panel.add(top, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
+        panel.add(bottom, BorderLayout.SOUTH);
+        showCount();
+    }
+
+    static void show(MessageView view) {
+        MessageViewer viewer = new MessageViewer(view);
+        JOptionPane.showMessageDialog(null, viewer.panel, "All Messages", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    private void sort(MessageView.Column column) {
+        if (!column.sortable) {
+            status.setText(column.title + " cannot be sorted.");
+            return;
+        }
+        descending = column == sortBy && !descending;
+        sortBy = column;
+        for (MessageView.Column c : MessageView.Column.values()) {
+            String arrow = c == sortBy ? (descending ? DESCENDING : ASCENDING) : "";
+            table.getColumnModel().getColumn(table.convertColumnIndexToView(c.ordinal())).setHeaderValue(c.title + arrow);
+        }
+        table.getTableHeader().repaint();
+        reload();
+    }
+
+    private void reload() {
+        String query = filter.getText();
+        MessageView.Column column = sortBy;
+        boolean reverse = descending;
+        setBusy(true, "Loading...");
+        new SwingWorker<MessageView, Void>() {
+            @Override
+            protected MessageView doInBackground() {
+                return MainApp.messageView(query, column, reverse);
+            }
+
+            @Override
+            protected void done() {
+                setBusy(false, null);
+                try {
+                    model.setView(get());
+                    showCount();
+                } catch (ExecutionException e) {
+                    status.setText(String.valueOf(e.getCause().getMessage()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+
+    private void export() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("messages.csv"));
+        if (chooser.showSaveDialog(panel) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        MessageView view = model.getView();
+        setBusy(true, "Exporting...");
+        new SwingWorker<Long, Long>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                try (Writer writer = Files.newBufferedWriter(file.toPath())) {
+                    return view.export(writer, (records, rate, done) -> publish(records));
+                }
+            }
+
+            @Override
+            protected void process(List<Long> chunks) {
+                status.setText("Exported " + chunks.get(chunks.size() - 1) + " of " + view.size() + "...");
+            }
+
+            @Override
+            protected void done() {
+                setBusy(false, null);
+                try {
+                    status.setText("Exported " + get() + " message(s) to " + file + ".");
+                } catch (ExecutionException e) {
+                    status.setText("Error exporting messages: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+
+    private void setBusy(boolean busy, String message) {
+        filter.setEnabled(!busy);
+        apply.setEnabled(!busy);
+        export.setEnabled(!busy);
+        table.getTableHeader().setEnabled(!busy);
+        if (message != null) status.setText(message);
+    }
+
+    private void showCount() {
+        String order = sortBy == null ? "in the order sent" : "by " + sortBy.title + (descending ? ", descending" : "");
+        status.setText(model.getRowCount() + " message(s), " + order + ".");
+    }
+}
@@ -0,0 +1,249 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+// Always-on instrumentation. Each Timer keeps a log-linear latency histogram (8 buckets per
+// power of two, so percentiles are within 12.5%) plus record and byte counters, all in
+// LongAdders and an AtomicLongArray. Each timed operation is also a JFR event, and gauges are
+// emitted as periodic JFR events, both only while a recording has them enabled.
+// snapshot() / snapshotText() are the pull side; -Dmainapp.metrics=false turns it all off.
+final class Metrics {
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("mainapp.metrics"));
+
+    private static final List<Timer> TIMERS = new CopyOnWriteArrayList<>();
+    private static final Map<String, LongSupplier> GAUGES = new LinkedHashMap<>();
+    private static final long STARTED = System.nanoTime();
+
+    static final Timer LOGIN = new Timer("login");
+    static final Timer REGISTER = new Timer("register");
+    static final Timer VALIDATE = new Timer("validate");
+    static final Timer HASH = new Timer("hash");
+    static final Timer SEND = new Timer("send");
+    static final Timer SAVE_MESSAGES = new Timer("saveMessages");
+    static final Timer LOAD_MESSAGES = new Timer("loadMessages");
+    static final Timer SAVE_USERS = new Timer("saveUsers");
+    static final Timer LOAD_USERS = new Timer("loadUsers");
+
+    @Name("mainapp.Operation")
+    @Label("MainApp Operation")
+    @Category("MainApp")
+    static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+
+        @Label("Records")
+        long records;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("mainapp.Gauge")
+    @Label("MainApp Gauge")
+    @Category("MainApp")
+    @Period("1 s")
+    static final class GaugeEvent extends Event {
+        @Label("Gauge")
+        String gauge;
+
+        @Label("Value")
+        long value;
+    }
+
+    static {
+        if (ENABLED) {
+            FlightRecorder.addPeriodicEvent(GaugeEvent.class, () -> {
+                for (Map.Entry<String, LongSupplier> g : gauges().entrySet()) {
+                    GaugeEvent event = new GaugeEvent();
+                    event.gauge = g.getKey();
+                    event.value = g.getValue().getAsLong();
+                    event.commit();
+                }
+            });
+        }
+    }
+
+    private Metrics() { }
+
+    static final class Timer {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(64 << SUB_BITS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder records = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        Timer(String name) {
+            this(name, true);
+        }
+
+        // An unregistered timer is left out of snapshot(), e.g. for a load test's own figures.
+        Timer(String name, boolean registered) {
+            this.name = name;
+            if (registered) TIMERS.add(this);
+        }
+
+        long start() {
+            return ENABLED ? System.nanoTime() : 0L;
+        }
+
+        void stop(long start) {
+            stop(start, 0, 0);
+        }
+
+        void stop(long start, long recordCount, long byteCount) {
+            if (ENABLED) record(Math.max(0, System.nanoTime() - start), recordCount, byteCount);
+        }
+
+        void record(long nanos, long recordCount, long byteCount) {
+            buckets.incrementAndGet(bucket(nanos));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (recordCount != 0) records.add(recordCount);
+            if (byteCount != 0) bytes.add(byteCount);
+            OperationEvent event = new OperationEvent();
+            if (event.isEnabled()) {
+                event.operation = name;
+                event.latency = nanos;
+                event.records = recordCount;
+                event.bytes = byteCount;
+                event.commit();
+            }
+        }
+
+        static int bucket(long nanos) {
+            if (nanos < SUB_BUCKETS) return (int) nanos;
+            int msb = 63 - Long.numberOfLeadingZeros(nanos);
+            return ((msb - SUB_BITS + 1) << SUB_BITS) | (int) ((nanos >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1));
+        }
+
+        // Largest value that falls in bucket i.
+        static long bucketLimit(int i) {
+            if (i < SUB_BUCKETS) return i;
+            int shift = (i >>> SUB_BITS) - 1;
+            long mantissa = SUB_BUCKETS | (i & (SUB_BUCKETS - 1));
+            return ((mantissa + 1) << shift) - 1;
+        }
+
+        String name() {
+            return name;
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        // Approximate latency at quantile q (0..1), in nanoseconds.
+        long percentile(double q) {
+            long total = 0;
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(bucketLimit(i), maxNanos.get());
+            }
+            return maxNanos.get();
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            long n = count.sum(), nanos = totalNanos.sum();
+            out.put("count", n);
+            out.put("meanMicros", n == 0 ? 0.0 : micros(nanos / n));
+            out.put("p50Micros", micros(percentile(0.50)));
+            out.put("p99Micros", micros(percentile(0.99)));
+            out.put("p999Micros", micros(percentile(0.999)));
+            out.put("maxMicros", micros(maxNanos.get()));
+            long r = records.sum(), b = bytes.sum();
+            if (r != 0 || b != 0) {
+                out.put("records", r);
+                out.put("bytes", b);
+                out.put("recordsPerSecond", Math.round(r * 1e9 / Math.max(1, nanos)));
+                out.put("bytesPerSecond", Math.round(b * 1e9 / Math.max(1, nanos)));
+            }
+            return out;
+        }
+
+        private static double micros(long nanos) {
+            return Math.round(nanos / 100.0) / 10.0;
+        }
+    }
+
+    static void gauge(String name, LongSupplier value) {
+        synchronized (GAUGES) {
+            GAUGES.put(name, value);
+        }
+    }
+
+    private static Map<String, LongSupplier> gauges() {
+        synchronized (GAUGES) {
+            return new LinkedHashMap<>(GAUGES);
+        }
+    }
+
+    static Map<String, Object> snapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", ENABLED);
+        out.put("uptimeSeconds", (System.nanoTime() - STARTED) / 1_000_000_000L);
+        Map<String, Object> timers = new LinkedHashMap<>();
+        for (Timer t : TIMERS) timers.put(t.name, t.snapshot());
+        out.put("timers", timers);
+        Map<String, Object> gauges = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> g : gauges().entrySet()) gauges.put(g.getKey(), g.getValue().getAsLong());
+        out.put("gauges", gauges);
+        return out;
+    }
+
+    // One "name value" line per figure, e.g. "login.p99Micros 41.0".
+    @SuppressWarnings("unchecked")
+    static String snapshotText() {
+        Map<String, Object> snapshot = snapshot();
+        List<String> lines = new ArrayList<>();
+        lines.add("enabled " + snapshot.get("enabled"));
+        lines.add("uptimeSeconds " + snapshot.get("uptimeSeconds"));
+        for (Map.Entry<String, Object> t : ((Map<String, Object>) snapshot.get("timers")).entrySet()) {
+            for (Map.Entry<String, Object> v : ((Map<String, Object>) t.getValue()).entrySet()) {
+                lines.add(t.getKey() + "." + v.getKey() + " " + format(v.getValue()));
+            }
+        }
+        for (Map.Entry<String, Object> g : ((Map<String, Object>) snapshot.get("gauges")).entrySet()) {
+            lines.add(g.getKey() + " " + g.getValue());
+        }
+        return String.join("\n", lines) + "\n";
+    }
+
+    private static String format(Object value) {
+        return value instanceof Double ? String.format(Locale.ROOT, "%.1f", (Double) value) : String.valueOf(value);
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsIT {
+
+    /**
+     * Test of bucket and bucketLimit methods, of class Metrics.Timer.
+     */
+    @Test
+    public void testBuckets() {
+        for (long nanos : new long[] {0, 1, 7, 8, 9, 15, 16, 1000, 123_456_789L, Long.MAX_VALUE / 3}) {
+            int bucket = Metrics.Timer.bucket(nanos);
+            assertTrue(nanos <= Metrics.Timer.bucketLimit(bucket), "upper bound of " + nanos);
+            assertTrue(bucket == 0 || nanos > Metrics.Timer.bucketLimit(bucket - 1), "lower bound of " + nanos);
+        }
+        assertEquals(Metrics.Timer.bucket(1000), Metrics.Timer.bucket(1020));
+        assertNotEquals(Metrics.Timer.bucket(1000), Metrics.Timer.bucket(1200));
+    }
+
+    /**
+     * Test of record and percentile methods, of class Metrics.Timer, within the histogram's 12.5% resolution.
+     */
+    @Test
+    public void testPercentile() {
+        Metrics.Timer timer = new Metrics.Timer("test");
+        for (int i = 1; i <= 1000; i++) {
+            timer.record(i * 1000L, 0, 0);
+        }
+        assertEquals(1000, timer.count());
+        long p50 = timer.percentile(0.50);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.25, "p50 " + p50);
+        long p99 = timer.percentile(0.99);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 1.25, "p99 " + p99);
+    }
+
+    /**
+     * Test of snapshot and snapshotText methods, of class Metrics.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSnapshot() {
+        Metrics.gauge("test.answer", () -> 42);
+        Metrics.LOGIN.stop(Metrics.LOGIN.start());
+        Map<String, Object> snapshot = Metrics.snapshot();
+        Map<String, Object> timers = (Map<String, Object>) snapshot.get("timers");
+        assertTrue(timers.containsKey("login") && timers.containsKey("saveMessages"));
+        assertTrue((Long) ((Map<String, Object>) timers.get("login")).get("count") >= 1);
+        assertEquals(42L, ((Map<String, Object>) snapshot.get("gauges")).get("test.answer"));
+        String text = Metrics.snapshotText();
+        assertTrue(text.contains("\nlogin.p99Micros "));
+        assertTrue(text.contains("\ntest.answer 42\n"));
+    }
+}
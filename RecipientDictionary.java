@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Dictionary encoding for recipients. Each distinct packed number gets a dense int code in
+// order of first appearance, and the rows sent to it are kept in a per-code int list with a
+// live count, so per-recipient lookups and counts index arrays instead of hashing strings.
+// A store keeps one code per row (4 bytes) instead of the 8-byte packed number. Used by the
+// columnar and mapped stores; HeapMessageStore's MessageIndex still keys recipients by
+// String.
+final class RecipientDictionary {
+    static final int UNKNOWN = -1;
+
+    private final LongIntHashMap codes;
+    private long[] recipients;
+    private int[][] rows;
+    private int[] rowCounts;
+    private int[] liveCounts;
+    private int size = 0;
+
+    RecipientDictionary(int expectedRecipients) {
+        int capacity = Math.max(16, expectedRecipients);
+        codes = new LongIntHashMap(capacity);
+        recipients = new long[capacity];
+        rows = new int[capacity][];
+        rowCounts = new int[capacity];
+        liveCounts = new int[capacity];
+    }
+
+    // Code of a packed recipient, assigning the next one if it is new.
+    int intern(long recipient) {
+        int code = codes.get(recipient);
+        if (code != LongIntHashMap.MISSING) return code;
+        code = size++;
+        if (code == recipients.length) {
+            int capacity = code * 2;
+            recipients = Arrays.copyOf(recipients, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+            rowCounts = Arrays.copyOf(rowCounts, capacity);
+            liveCounts = Arrays.copyOf(liveCounts, capacity);
+        }
+        recipients[code] = recipient;
+        codes.put(recipient, code);
+        return code;
+    }
+
+    // Interns the recipient and appends row to its list; returns the code.
+    int add(long recipient, int row) {
+        int code = intern(recipient);
+        int n = rowCounts[code];
+        if (rows[code] == null) rows[code] = new int[4];
+        else if (n == rows[code].length) rows[code] = Arrays.copyOf(rows[code], n * 2);
+        rows[code][n] = row;
+        rowCounts[code] = n + 1;
+        liveCounts[code]++;
+        return code;
+    }
+
+    // A row added under code was deleted; its entry stays in the list but no longer counts.
+    void removed(int code) {
+        liveCounts[code]--;
+    }
+
+    int codeOf(long recipient) {
+        int code = codes.get(recipient);
+        return code == LongIntHashMap.MISSING ? UNKNOWN : code;
+    }
+
+    int codeOf(String recipient) {
+        long packed = MessageCodec.packRecipient(recipient);
+        return packed == MessageCodec.NONE ? UNKNOWN : codeOf(packed);
+    }
+
+    long recipient(int code) {
+        return recipients[code];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Rows added under code and not since removed.
+    int liveCount(int code) {
+        return code == UNKNOWN ? 0 : liveCounts[code];
+    }
+
+    // Every row ever added under code, deleted ones included, in insertion order.
+    void forEachRow(int code, IntConsumer action) {
+        if (code == UNKNOWN) return;
+        int[] found = rows[code];
+        for (int i = 0; i < rowCounts[code]; i++) action.accept(found[i]);
+    }
+}
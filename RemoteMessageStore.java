@@ -0,0 +1,168 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// A shard held by another MainApp process (--shard-server, see ShardServer), used through
+// the MessageStore interface. Every call is one HTTP request; iteration reads PAGE messages
+// per request. Failures surface as UncheckedIOException, as MessageStore methods do not
+// throw checked exceptions, and a shard that does not answer within REQUEST_TIMEOUT
+// (-Dmainapp.shardTimeoutSeconds, default 30) fails the call the same way. The remote
+// process persists what it is sent, so the store counts as durable and sync() asks it to
+// checkpoint.
+final class RemoteMessageStore implements MessageStore {
+    static final int PAGE = 5000;
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(Long.getLong("mainapp.shardTimeoutSeconds", 30));
+    private static final Type MESSAGES = new TypeToken<List<Message>>() { }.getType();
+
+    private final URI base;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5)).build();
+    private final Gson gson = new Gson();
+
+    RemoteMessageStore(URI base) {
+        this.base = base;
+    }
+
+    private <T> T get(String path, Type type) {
+        return send(HttpRequest.newBuilder(base.resolve(path)).timeout(REQUEST_TIMEOUT).GET().build(), type);
+    }
+
+    private <T> T post(String path, Object body, Type type) {
+        return send(HttpRequest.newBuilder(base.resolve(path)).timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body), StandardCharsets.UTF_8)).build(), type);
+    }
+
+    private <T> T send(HttpRequest request, Type type) {
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            if (response.statusCode() != 200) {
+                throw new IOException(request.uri() + " returned " + response.statusCode() + ": " + response.body());
+            }
+            return gson.fromJson(response.body(), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted calling " + request.uri()));
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void add(Message m) {
+        addAll(List.of(m));
+    }
+
+    @Override
+    public void addAll(Collection<Message> messages) {
+        post("/shard/add", messages, JsonObject.class);
+    }
+
+    @Override
+    public boolean remove(Message m) {
+        JsonObject result = post("/shard/remove", m, JsonObject.class);
+        return result.get("removed").getAsBoolean();
+    }
+
+    @Override
+    public int size() {
+        JsonObject result = get("/shard/size", JsonObject.class);
+        return result.get("size").getAsInt();
+    }
+
+    @Override
+    public List<Message> page(int offset, int limit) {
+        return get("/shard/page?offset=" + offset + "&limit=" + limit, MESSAGES);
+    }
+
+    @Override
+    public Message findById(String messageID) {
+        return get("/shard/id?value=" + encode(messageID), Message.class);
+    }
+
+    @Override
+    public Message findByHash(String messageHash) {
+        return get("/shard/hash?value=" + encode(messageHash), Message.class);
+    }
+
+    @Override
+    public List<Message> findByRecipient(String recipient) {
+        return get("/shard/recipient?value=" + encode(recipient), MESSAGES);
+    }
+
+    @Override
+    public int countByRecipient(String recipient) {
+        JsonObject result = get("/shard/recipient?count=true&value=" + encode(recipient), JsonObject.class);
+        return result.get("count").getAsInt();
+    }
+
+    @Override
+    public List<Message> findBetween(LocalDateTime from, LocalDateTime to) {
+        return get("/shard/between?from=" + encode(from.toString()) + "&to=" + encode(to.toString()), MESSAGES);
+    }
+
+    @Override
+    public long maxId() {
+        JsonObject result = get("/shard/size", JsonObject.class);
+        return result.get("maxId").getAsLong();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        try {
+            post("/shard/sync", List.of(), JsonObject.class);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Iterator<Message> iterator() {
+        return new Iterator<Message>() {
+            private List<Message> page = page(0, PAGE);
+            private int offset = 0;
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (i < page.size()) return true;
+                if (page.size() < PAGE) return false;
+                offset += page.size();
+                page = page(offset, PAGE);
+                i = 0;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.get(i++);
+            }
+        };
+    }
+}
@@ -0,0 +1,154 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Sessions of logged-in API clients, by opaque random token. The credential check runs once,
+// at issue(); every later request is a single map lookup in validate(). A session ends when
+// it has been idle for idleMillis, when it is maxAgeMillis old, when it is revoked, or when
+// it is the oldest one and maxSessions newer ones have been issued since.
+//
+// A queue of sessions in issue order gives the eviction order; revoked and expired sessions
+// are only dropped from it when it grows past twice maxSessions, which keeps every operation
+// amortized O(1).
+final class SessionCache {
+    static final class Session {
+        private final String token;
+        private final User user;
+        private final long issuedAt;
+        private volatile long lastUsed;
+
+        Session(String token, User user, long issuedAt) {
+            this.token = token;
+            this.user = user;
+            this.issuedAt = issuedAt;
+            this.lastUsed = issuedAt;
+        }
+
+        String getToken() { return token; }
+        User getUser() { return user; }
+    }
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Queue<Session> issued = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final SecureRandom random = new SecureRandom();
+    private final int maxSessions;
+    private final long idleMillis;
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    SessionCache(int maxSessions, long idleMillis, long maxAgeMillis, LongSupplier clock) {
+        if (maxSessions < 1 || idleMillis < 1 || maxAgeMillis < 1) {
+            throw new IllegalArgumentException("maxSessions, idleMillis and maxAgeMillis must be positive");
+        }
+        this.maxSessions = maxSessions;
+        this.idleMillis = idleMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+    }
+
+    // -Dmainapp.maxSessions (100000), -Dmainapp.sessionIdleMinutes (30) and
+    // -Dmainapp.sessionMaxHours (24).
+    static SessionCache fromProperty() {
+        return new SessionCache(Integer.getInteger("mainapp.maxSessions", 100_000),
+                Long.getLong("mainapp.sessionIdleMinutes", 30) * 60_000L,
+                Long.getLong("mainapp.sessionMaxHours", 24) * 3600_000L, System::currentTimeMillis);
+    }
+
+    // Starts a session for a user whose credentials have just been checked.
+    Session issue(User user) {
+        byte[] raw = new byte[24];
+        random.nextBytes(raw);
+        Session session = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(raw), user, clock.getAsLong());
+        sessions.put(session.token, session);
+        issued.add(session);
+        if (queued.incrementAndGet() > 2 * maxSessions || sessions.size() > maxSessions) trim();
+        return session;
+    }
+
+    // The live session for token, or null if it is unknown, expired or revoked.
+    Session validate(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        if (session != null) {
+            long now = clock.getAsLong();
+            if (!expired(session, now)) {
+                session.lastUsed = now;
+                hits.increment();
+                return session;
+            }
+            sessions.remove(token, session);
+        }
+        misses.increment();
+        return null;
+    }
+
+    private boolean expired(Session session, long now) {
+        return now - session.lastUsed > idleMillis || now - session.issuedAt > maxAgeMillis;
+    }
+
+    // Ends the session; false if it had already ended.
+    boolean revoke(String token) {
+        return token != null && sessions.remove(token) != null;
+    }
+
+    // Ends every session of the user, e.g. on "log out everywhere"; returns how many.
+    int revokeUser(String username) {
+        int revoked = 0;
+        for (Session session : sessions.values()) {
+            if (session.user.getUsername().equals(username) && sessions.remove(session.token, session)) revoked++;
+        }
+        return revoked;
+    }
+
+    private synchronized void trim() {
+        long now = clock.getAsLong();
+        if (queued.get() > 2 * maxSessions) {
+            for (Iterator<Session> it = issued.iterator(); it.hasNext(); ) {
+                Session s = it.next();
+                if (sessions.get(s.token) != s || expired(s, now)) {
+                    sessions.remove(s.token, s);
+                    it.remove();
+                    queued.decrementAndGet();
+                }
+            }
+        }
+        while (sessions.size() > maxSessions) {
+            Session oldest = issued.poll();
+            if (oldest == null) break;
+            queued.decrementAndGet();
+            if (sessions.remove(oldest.token, oldest) && !expired(oldest, now)) evicted.increment();
+        }
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    // Percentage of validations that found a live session.
+    long hitRatioPercent() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : h * 100 / total;
+    }
+
+    // Live sessions ended early to stay within maxSessions.
+    long evicted() {
+        return evicted.sum();
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionCacheIT {
+
+    private final long[] clock = {1_750_000_000_000L};
+    private final User alice = new User("al_ce", "Passw0rd!", "+27831234567");
+    private final User bob = new User("bo_b", "Passw0rd!", "+27837654321");
+
+    /**
+     * Test of issue and validate methods, of class SessionCache: a session lives while it is
+     * used, ends after the idle time and after the maximum age, and the hit ratio counts both.
+     */
+    @Test
+    public void testExpiry() {
+        SessionCache cache = new SessionCache(10, 60_000, 180_000, () -> clock[0]);
+        SessionCache.Session session = cache.issue(alice);
+        assertNotEquals(cache.issue(alice).getToken(), session.getToken());
+        for (int i = 0; i < 3; i++) {
+            clock[0] += 50_000;
+            assertSame(session, cache.validate(session.getToken()));
+        }
+        clock[0] += 50_000;
+        assertNull(cache.validate(session.getToken()), "past the maximum age");
+        SessionCache.Session idle = cache.issue(bob);
+        clock[0] += 61_000;
+        assertNull(cache.validate(idle.getToken()), "idle too long");
+        assertNull(cache.validate("no-such-token"));
+        assertEquals(3, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(50, cache.hitRatioPercent());
+    }
+
+    /**
+     * Test of revoke and revokeUser methods, of class SessionCache.
+     */
+    @Test
+    public void testRevoke() {
+        SessionCache cache = new SessionCache(10, 60_000, 180_000, () -> clock[0]);
+        SessionCache.Session first = cache.issue(alice);
+        SessionCache.Session second = cache.issue(alice);
+        SessionCache.Session other = cache.issue(bob);
+        assertTrue(cache.revoke(first.getToken()));
+        assertFalse(cache.revoke(first.getToken()));
+        assertNull(cache.validate(first.getToken()));
+        assertSame(second, cache.validate(second.getToken()));
+        assertEquals(1, cache.revokeUser("al_ce"));
+        assertNull(cache.validate(second.getToken()));
+        assertSame(other, cache.validate(other.getToken()));
+    }
+
+    /**
+     * Test of issue method, of class SessionCache: beyond maxSessions the oldest sessions are
+     * evicted, and revoked ones do not pile up.
+     */
+    @Test
+    public void testBounded() {
+        SessionCache cache = new SessionCache(100, 60_000, 180_000, () -> clock[0]);
+        SessionCache.Session oldest = cache.issue(alice);
+        SessionCache.Session newest = null;
+        for (int i = 0; i < 1000; i++) {
+            newest = cache.issue(bob);
+            if (i % 2 == 0) cache.revoke(newest.getToken());
+        }
+        assertTrue(cache.size() <= 100);
+        assertNull(cache.validate(oldest.getToken()));
+        assertSame(newest, cache.validate(newest.getToken()));
+        assertTrue(cache.evicted() > 0);
+    }
+}
@@ -0,0 +1,177 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Serves one MessageStore as a shard of another process's ShardedMessageStore (see
+// RemoteMessageStore), on localhost only and without sessions:
+//
+//   GET  /shard/size                                -> {"size", "maxId"}
+//   GET  /shard/page?offset=0&limit=5000            -> [message]
+//   GET  /shard/id?value=<id>, /shard/hash?value=   -> message or null
+//   GET  /shard/recipient?value=<cell>[&count=true] -> [message] or {"count"}
+//   GET  /shard/between?from=<ISO>&to=<ISO>         -> [message]
+//   POST /shard/add     [message]                   -> {"added"}
+//   POST /shard/remove  message                     -> {"removed"}
+//   POST /shard/sync                                -> {}
+final class ShardServer {
+    static final int MAX_PAGE = 50_000;
+    private static final Type MESSAGES = new TypeToken<List<Message>>() { }.getType();
+
+    // The JDK server leaves Nagle on by default, which with the client's delayed ACK adds about
+    // 40ms to every small response; it reads the setting once, before its first server starts.
+    static {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final MessageStore store;
+    private final Gson gson = new Gson();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    ShardServer(int port, MessageStore store) throws IOException {
+        this.store = store;
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/shard/size", ex -> handle(ex, "GET", this::size));
+        server.createContext("/shard/page", ex -> handle(ex, "GET", this::page));
+        server.createContext("/shard/id", ex -> handle(ex, "GET", e -> store.findById(param(e, "value"))));
+        server.createContext("/shard/hash", ex -> handle(ex, "GET", e -> store.findByHash(param(e, "value"))));
+        server.createContext("/shard/recipient", ex -> handle(ex, "GET", this::recipient));
+        server.createContext("/shard/between", ex -> handle(ex, "GET", this::between));
+        server.createContext("/shard/add", ex -> handle(ex, "POST", this::add));
+        server.createContext("/shard/remove", ex -> handle(ex, "POST", this::remove));
+        server.createContext("/shard/sync", ex -> handle(ex, "POST", this::sync));
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Handler {
+        Object handle(HttpExchange ex) throws IOException, HttpError;
+    }
+
+    private void handle(HttpExchange ex, String method, Handler handler) throws IOException {
+        int status = 200;
+        Object body;
+        try {
+            if (!ex.getRequestMethod().equals(method)) throw new HttpError(405, method + " required");
+            body = handler.handle(ex);
+        } catch (HttpError e) {
+            status = e.status;
+            body = Map.of("error", e.getMessage());
+        } catch (JsonParseException e) {
+            status = 400;
+            body = Map.of("error", "Malformed JSON: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            status = 500;
+            body = Map.of("error", String.valueOf(e.getMessage()));
+        }
+        byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Object size(HttpExchange ex) {
+        return Map.of("size", store.size(), "maxId", store.maxId());
+    }
+
+    private Object page(HttpExchange ex) throws HttpError {
+        int offset = number(ex, "offset", 0);
+        int limit = Math.min(number(ex, "limit", RemoteMessageStore.PAGE), MAX_PAGE);
+        if (offset < 0 || limit < 0) throw new HttpError(400, "offset and limit must not be negative");
+        return store.page(offset, limit);
+    }
+
+    private Object recipient(HttpExchange ex) throws HttpError {
+        String recipient = param(ex, "value");
+        if (recipient == null) throw new HttpError(400, "value required");
+        if ("true".equals(param(ex, "count"))) return Map.of("count", store.countByRecipient(recipient));
+        return store.findByRecipient(recipient);
+    }
+
+    private Object between(HttpExchange ex) throws HttpError {
+        try {
+            return store.findBetween(LocalDateTime.parse(String.valueOf(param(ex, "from"))),
+                    LocalDateTime.parse(String.valueOf(param(ex, "to"))));
+        } catch (DateTimeParseException e) {
+            throw new HttpError(400, "from and to must be ISO date-times");
+        }
+    }
+
+    private Object add(HttpExchange ex) throws IOException, HttpError {
+        List<Message> batch = read(ex, MESSAGES);
+        store.addAll(batch);
+        return Map.of("added", batch.size());
+    }
+
+    private Object remove(HttpExchange ex) throws IOException, HttpError {
+        Message m = read(ex, Message.class);
+        return Map.of("removed", store.remove(m));
+    }
+
+    private Object sync(HttpExchange ex) throws IOException {
+        store.sync();
+        return Map.of();
+    }
+
+    private <T> T read(HttpExchange ex, Type type) throws IOException, HttpError {
+        try (Reader reader = new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)) {
+            T value = gson.fromJson(reader, type);
+            if (value == null) throw new HttpError(400, "Request body required");
+            return value;
+        }
+    }
+
+    private static int number(HttpExchange ex, String name, int fallback) throws HttpError {
+        String value = param(ex, name);
+        try {
+            return value == null ? fallback : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, name + " must be a number");
+        }
+    }
+
+    private static String param(HttpExchange ex, String name) {
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return null;
+        Map<String, String> params = new LinkedHashMap<>();
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params.get(name);
+    }
+}
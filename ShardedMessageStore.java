@@ -0,0 +1,390 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// Message store partitioned by recipient over several shard stores. Recipients are placed on
+// a consistent-hash ring with VIRTUAL_NODES points per shard, keyed by the shard's name, so
+// adding a shard only takes over about 1/n of the recipients and rebalance() moves just
+// those messages. Everything sent to one recipient lives on one shard: by-recipient lookups
+// and counts go to that shard alone. By-ID and by-hash lookups, time ranges and sizes fan out
+// to every shard in parallel and the results are merged.
+//
+// Each shard keeps its own files: a MappedMessageStore in its own directory, or another
+// MainApp process (--shard-server) reached through RemoteMessageStore, which journals its
+// share like a standalone MainApp. Fan-out queries run on the store's own daemon threads, so
+// a slow shard (bounded by RemoteMessageStore's request timeout) cannot tie up the common
+// pool. Iteration and paging merge the shards in message ID order, which for generated IDs is
+// the order they were sent in. page() merges per-shard pages from the nearest checkpoint of
+// how far each shard had got, recorded every CHECKPOINT_EVERY messages of earlier calls, so
+// paging through the store costs about the pages read rather than their offsets. Adding or
+// removing through this store drops the checkpoints.
+final class ShardedMessageStore implements MessageStore {
+    static final int VIRTUAL_NODES = 128;
+    static final int CHECKPOINT_EVERY = 1024;
+
+    private final List<String> names;
+    private final List<MessageStore> shards;
+    private final long[] points;
+    private final int[] owners;
+    private final ExecutorService fanOutPool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "shard-fan-out");
+        t.setDaemon(true);
+        return t;
+    });
+    // Bumped after every change made through this store; page() checkpoints are only good
+    // for the version they were taken at.
+    private final AtomicLong version = new AtomicLong();
+    private final TreeMap<Integer, int[]> checkpoints = new TreeMap<>();
+    private long checkpointsVersion = -1;
+
+    ShardedMessageStore(List<String> names, List<MessageStore> shards) {
+        if (names.isEmpty() || names.size() != shards.size()) throw new IllegalArgumentException("One name per shard required");
+        if (names.stream().distinct().count() != names.size()) throw new IllegalArgumentException("Shard names must be distinct");
+        this.names = List.copyOf(names);
+        this.shards = List.copyOf(shards);
+        int n = names.size() * VIRTUAL_NODES;
+        long[] keyed = new long[n];
+        for (int s = 0; s < names.size(); s++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) keyed[s * VIRTUAL_NODES + v] = hash(names.get(s) + "#" + v);
+        }
+        // Sort ring points and carry their owners along; ties go to the lower shard index.
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> keyed[i]).thenComparingInt(i -> i));
+        points = new long[n];
+        owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = keyed[order[i]];
+            owners[i] = order[i] / VIRTUAL_NODES;
+        }
+    }
+
+    // -Dmainapp.shards: a shard count for that many mapped shards under messages.shards/,
+    // or a comma-separated list of shard directories and http:// URLs of --shard-server
+    // processes. A shard's name on the ring is the entry as written.
+    static ShardedMessageStore fromProperty() throws IOException {
+        String configured = System.getProperty("mainapp.shards", "4").trim();
+        List<String> names = new ArrayList<>();
+        if (configured.matches("\\d+")) {
+            for (int i = 0; i < Integer.parseInt(configured); i++) names.add("messages.shards/shard-" + i);
+        } else {
+            for (String entry : configured.split(",")) {
+                if (!entry.isBlank()) names.add(entry.trim());
+            }
+        }
+        List<MessageStore> shards = new ArrayList<>(names.size());
+        for (String name : names) {
+            shards.add(name.startsWith("http://") || name.startsWith("https://")
+                    ? new RemoteMessageStore(URI.create(name)) : new MappedMessageStore(Paths.get(name)));
+        }
+        return new ShardedMessageStore(names, shards);
+    }
+
+    // 64-bit FNV-1a, finished with the SplitMix64 mixer so nearby inputs land far apart.
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Index of the shard that owns recipient: the first ring point at or after its hash.
+    int shardOf(String recipient) {
+        long packed = recipient == null ? MessageCodec.NONE : MessageCodec.packRecipient(recipient);
+        long h = packed == MessageCodec.NONE ? hash(String.valueOf(recipient)) : mix(packed);
+        int i = Arrays.binarySearch(points, h);
+        if (i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
+
+    List<String> shardNames() {
+        return names;
+    }
+
+    MessageStore shard(int index) {
+        return shards.get(index);
+    }
+
+    // Runs query on every shard at once and returns the results in shard order.
+    private <T> List<T> fanOut(Function<MessageStore, T> query) {
+        return fanOutByIndex(s -> query.apply(shards.get(s)));
+    }
+
+    private <T> List<T> fanOutByIndex(IntFunction<T> query) {
+        if (shards.size() == 1) return Collections.singletonList(query.apply(0));
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            int shard = s;
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), fanOutPool));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        try {
+            for (CompletableFuture<T> f : futures) results.add(f.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+        return results;
+    }
+
+    @Override
+    public void add(Message m) {
+        shards.get(shardOf(m.getRecipient())).add(m);
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void addAll(Collection<Message> messages) {
+        List<List<Message>> routed = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) routed.add(new ArrayList<>());
+        for (Message m : messages) routed.get(shardOf(m.getRecipient())).add(m);
+        for (int s = 0; s < shards.size(); s++) {
+            if (!routed.get(s).isEmpty()) shards.get(s).addAll(routed.get(s));
+        }
+        version.incrementAndGet();
+    }
+
+    // Looks on the other shards too, for a message left behind by a rebalance not yet run.
+    @Override
+    public boolean remove(Message m) {
+        int owner = shardOf(m.getRecipient());
+        boolean removed = shards.get(owner).remove(m);
+        for (int s = 0; s < shards.size() && !removed; s++) {
+            if (s != owner) removed = shards.get(s).remove(m);
+        }
+        if (removed) version.incrementAndGet();
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        int total = 0;
+        for (int size : fanOut(MessageStore::size)) total += size;
+        return total;
+    }
+
+    @Override
+    public List<Message> page(int offset, int limit) {
+        synchronized (checkpoints) {
+            long current = version.get();
+            if (current != checkpointsVersion) {
+                checkpoints.clear();
+                checkpoints.put(0, new int[shards.size()]);
+                checkpointsVersion = current;
+            }
+            Map.Entry<Integer, int[]> start = checkpoints.floorEntry(offset);
+            int at = start.getKey();
+            int[] consumed = start.getValue().clone();
+            while (at < offset) {
+                int step = Math.min(CHECKPOINT_EVERY - at % CHECKPOINT_EVERY, offset - at);
+                int merged = merge(consumed, step, null);
+                if (merged == 0) return new ArrayList<>();
+                at += merged;
+                if (at % CHECKPOINT_EVERY == 0) checkpoints.put(at, consumed.clone());
+            }
+            List<Message> out = new ArrayList<>(Math.min(limit, 1024));
+            merge(consumed, limit, out);
+            return out;
+        }
+    }
+
+    // Takes up to n messages in merge order, starting each shard where consumed says and
+    // moving that on; adds them to out unless it is null. Returns how many were taken.
+    private int merge(int[] consumed, int n, List<Message> out) {
+        if (n <= 0) return 0;
+        List<List<Message>> pages = fanOutByIndex(s -> shards.get(s).page(consumed[s], n));
+        int[] next = new int[pages.size()];
+        int taken = 0;
+        for (; taken < n; taken++) {
+            int best = -1;
+            for (int s = 0; s < pages.size(); s++) {
+                if (next[s] == pages.get(s).size()) continue;
+                if (best < 0 || pages.get(s).get(next[s]).idBits() < pages.get(best).get(next[best]).idBits()) best = s;
+            }
+            if (best < 0) break;
+            Message m = pages.get(best).get(next[best]++);
+            if (out != null) out.add(m);
+        }
+        for (int s = 0; s < pages.size(); s++) consumed[s] += next[s];
+        return taken;
+    }
+
+    @Override
+    public Message findById(String messageID) {
+        for (Message m : fanOut(shard -> shard.findById(messageID))) {
+            if (m != null) return m;
+        }
+        return null;
+    }
+
+    @Override
+    public Message findByHash(String messageHash) {
+        for (Message m : fanOut(shard -> shard.findByHash(messageHash))) {
+            if (m != null) return m;
+        }
+        return null;
+    }
+
+    @Override
+    public List<Message> findByRecipient(String recipient) {
+        return shards.get(shardOf(recipient)).findByRecipient(recipient);
+    }
+
+    @Override
+    public int countByRecipient(String recipient) {
+        return shards.get(shardOf(recipient)).countByRecipient(recipient);
+    }
+
+    // Each shard's answer is already in send-time order; the sort merges those runs.
+    @Override
+    public List<Message> findBetween(LocalDateTime from, LocalDateTime to) {
+        List<Message> out = new ArrayList<>();
+        for (List<Message> found : fanOut(shard -> shard.findBetween(from, to))) out.addAll(found);
+        out.sort(Comparator.comparingLong(Message::timestampBits));
+        return out;
+    }
+
+    @Override
+    public long maxId() {
+        long max = 0;
+        for (long id : fanOut(MessageStore::maxId)) max = Math.max(max, id);
+        return max;
+    }
+
+    @Override
+    public boolean isDurable() {
+        for (MessageStore shard : shards) {
+            if (!shard.isDurable()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        try {
+            fanOut(shard -> {
+                try {
+                    shard.sync();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Closes every shard, even after one of them fails.
+    @Override
+    public void close() throws IOException {
+        fanOutPool.shutdown();
+        IOException failure = null;
+        for (MessageStore shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException | UncheckedIOException e) {
+                IOException cause = e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e;
+                if (failure == null) failure = cause;
+                else failure.addSuppressed(cause);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    // Moves every message that sits on a shard other than its recipient's owner, e.g. after
+    // a shard was added or renamed; returns how many moved. A message is added to its new
+    // shard before it is removed from the old one, so an interrupted rebalance leaves a
+    // duplicate rather than a gap, and running it again finishes the job.
+    int rebalance() {
+        int moved = 0;
+        for (int s = 0; s < shards.size(); s++) {
+            List<List<Message>> misplaced = new ArrayList<>(shards.size());
+            for (int t = 0; t < shards.size(); t++) misplaced.add(new ArrayList<>());
+            for (Message m : shards.get(s)) {
+                int owner = shardOf(m.getRecipient());
+                if (owner != s) misplaced.get(owner).add(m);
+            }
+            for (int t = 0; t < shards.size(); t++) {
+                List<Message> batch = misplaced.get(t);
+                if (batch.isEmpty()) continue;
+                for (Message m : batch) {
+                    if (shards.get(t).findByHash(m.getMessageHash()) == null) shards.get(t).add(m);
+                }
+                for (Message m : batch) shards.get(s).remove(m);
+                moved += batch.size();
+                version.incrementAndGet();
+            }
+        }
+        return moved;
+    }
+
+    // K-way merge of the shards' iterators by message ID.
+    @Override
+    public Iterator<Message> iterator() {
+        final class Head {
+            final Iterator<Message> source;
+            final int shard;
+            Message next;
+
+            Head(Iterator<Message> source, int shard) {
+                this.source = source;
+                this.shard = shard;
+                this.next = source.next();
+            }
+        }
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, shards.size()),
+                Comparator.<Head>comparingLong(h -> h.next.idBits()).thenComparingInt(h -> h.shard));
+        for (int s = 0; s < shards.size(); s++) {
+            Iterator<Message> it = shards.get(s).iterator();
+            if (it.hasNext()) heads.add(new Head(it, s));
+        }
+        return new Iterator<Message>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Message next() {
+                Head head = heads.poll();
+                if (head == null) throw new NoSuchElementException();
+                Message m = head.next;
+                if (head.source.hasNext()) {
+                    head.next = head.source.next();
+                    heads.add(head);
+                }
+                return m;
+            }
+        };
+    }
+}
@@ -0,0 +1,161 @@
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedMessageStoreIT {
+
+    private static ShardedMessageStore heapShards(int n) {
+        List<String> names = new ArrayList<>();
+        List<MessageStore> shards = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            names.add("shard-" + i);
+            shards.add(new HeapMessageStore());
+        }
+        return new ShardedMessageStore(names, shards);
+    }
+
+    private static List<Message> messages(int n) {
+        List<Message> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) out.add(new Message(String.format("+2783%07d", i % 500), "Message " + i));
+        return out;
+    }
+
+    /**
+     * Test of addAll, findByRecipient and countByRecipient methods, of class ShardedMessageStore:
+     * each recipient's messages live on one shard, and every shard gets a share.
+     */
+    @Test
+    public void testRoutesByRecipient() {
+        ShardedMessageStore store = heapShards(4);
+        List<Message> sent = messages(5000);
+        store.addAll(sent);
+        assertEquals(5000, store.size());
+        for (int s = 0; s < 4; s++) {
+            assertTrue(store.shard(s).size() > 500, "shard " + s + " holds " + store.shard(s).size());
+        }
+        String recipient = sent.get(7).getRecipient();
+        int owner = store.shardOf(recipient);
+        assertEquals(10, store.findByRecipient(recipient).size());
+        assertEquals(10, store.countByRecipient(recipient));
+        assertEquals(10, store.shard(owner).countByRecipient(recipient));
+    }
+
+    /**
+     * Test of iterator, page, findById, findBetween and remove methods, of class ShardedMessageStore,
+     * against a single store holding the same messages.
+     */
+    @Test
+    public void testFanOutMatchesSingleStore() {
+        ShardedMessageStore store = heapShards(3);
+        HeapMessageStore single = new HeapMessageStore();
+        List<Message> sent = messages(2000);
+        store.addAll(sent);
+        single.addAll(sent);
+        List<String> merged = new ArrayList<>();
+        for (Message m : store) merged.add(m.getMessageID());
+        List<String> expected = new ArrayList<>();
+        for (Message m : single) expected.add(m.getMessageID());
+        assertEquals(expected, merged);
+        assertEquals(single.page(1500, 100).get(0).getMessageID(), store.page(1500, 100).get(0).getMessageID());
+        Message probe = sent.get(1234);
+        assertSame(probe, store.findById(probe.getMessageID()));
+        assertSame(probe, store.findByHash(probe.getMessageHash()));
+        LocalDateTime from = LocalDateTime.now().minusDays(1), to = LocalDateTime.now().plusDays(1);
+        assertEquals(single.findBetween(from, to).size(), store.findBetween(from, to).size());
+        assertTrue(store.remove(probe));
+        assertNull(store.findById(probe.getMessageID()));
+        assertEquals(single.maxId(), store.maxId());
+    }
+
+    /**
+     * Test of page method, of class ShardedMessageStore: pages read forwards, backwards and
+     * after a change match the merged iteration order.
+     */
+    @Test
+    public void testPageMatchesIteration() {
+        ShardedMessageStore store = heapShards(3);
+        List<Message> sent = messages(5000);
+        store.addAll(sent);
+        List<String> merged = ids(store);
+        for (int offset : new int[] {0, 1023, 1024, 2500, 4990, 700, 3000, 5000}) {
+            int end = Math.min(merged.size(), offset + 50);
+            assertEquals(merged.subList(offset, end), ids(store.page(offset, 50)), "offset " + offset);
+        }
+        assertTrue(store.remove(sent.get(10)));
+        assertTrue(store.remove(sent.get(3000)));
+        merged = ids(store);
+        assertEquals(merged.subList(2990, 3040), ids(store.page(2990, 50)));
+        assertEquals(merged.subList(0, 20), ids(store.page(0, 20)));
+    }
+
+    private static List<String> ids(Iterable<Message> all) {
+        List<String> out = new ArrayList<>();
+        for (Message m : all) out.add(m.getMessageID());
+        return out;
+    }
+
+    /**
+     * Test of rebalance method, of class ShardedMessageStore, after a shard is added.
+     */
+    @Test
+    public void testRebalanceMovesOnlyReassignedRecipients() {
+        ShardedMessageStore before = heapShards(4);
+        before.addAll(messages(8000));
+        List<String> names = new ArrayList<>(before.shardNames());
+        List<MessageStore> shards = new ArrayList<>();
+        for (int s = 0; s < 4; s++) shards.add(before.shard(s));
+        names.add("shard-4");
+        shards.add(new HeapMessageStore());
+        ShardedMessageStore after = new ShardedMessageStore(names, shards);
+        int moved = after.rebalance();
+        // A fifth shard should take about a fifth of the messages, all from the others.
+        assertTrue(moved > 8000 / 10 && moved < 8000 * 3 / 10, "moved " + moved);
+        assertEquals(moved, after.shard(4).size());
+        assertEquals(8000, after.size());
+        assertEquals(0, after.rebalance());
+        for (Message m : after) assertEquals(after.shardOf(m.getRecipient()), shardHolding(after, m));
+    }
+
+    private static int shardHolding(ShardedMessageStore store, Message m) {
+        for (int s = 0; s < store.shardNames().size(); s++) {
+            if (store.shard(s).findById(m.getMessageID()) != null) return s;
+        }
+        return -1;
+    }
+
+    /**
+     * Test of the RemoteMessageStore and ShardServer classes, with a shard served over HTTP.
+     */
+    @Test
+    public void testRemoteShard() throws Exception {
+        HeapMessageStore backing = new HeapMessageStore();
+        ShardServer server = new ShardServer(0, backing);
+        server.start();
+        try {
+            RemoteMessageStore remote = new RemoteMessageStore(URI.create("http://localhost:" + server.getPort()));
+            ShardedMessageStore store = new ShardedMessageStore(List.of("local", "remote"),
+                    List.of(new HeapMessageStore(), remote));
+            List<Message> sent = messages(12_000);
+            store.addAll(sent);
+            assertTrue(backing.size() > 0);
+            assertEquals(backing.size(), remote.size());
+            assertEquals(12_000, store.size());
+            int seen = 0;
+            for (Message m : store) seen++;
+            assertEquals(12_000, seen);
+            Message onRemote = backing.iterator().next();
+            Message found = store.findById(onRemote.getMessageID());
+            assertEquals(onRemote.getMessageHash(), found.getMessageHash());
+            assertEquals(onRemote.getRecipient(), found.getRecipient());
+            assertEquals(backing.countByRecipient(onRemote.getRecipient()), store.countByRecipient(onRemote.getRecipient()));
+            assertTrue(store.remove(found));
+            assertNull(backing.findById(onRemote.getMessageID()));
+            assertEquals(backing.maxId(), remote.maxId());
+        } finally {
+            server.stop();
+        }
+    }
+}
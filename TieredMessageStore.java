@@ -0,0 +1,323 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// Message store with bounded heap: the newest messages sit in an open batch (at most
+// sealBatch, also written to open.log), older ones in a MessageArchive of compressed day
+// segments, and a MessageCache holds the hot messages - new ones and whatever is read again
+// - for ID and hash lookups. The open batch is sealed into the archive once it is full, or
+// at a sync() once it is SEAL_MILLIS old. The open batch keeps every message it is given,
+// in order, and indexes them with a MessageIndex, so legacy messages sharing an ID are all
+// kept and sealed.
+//
+// Retention: cache entries idle for hotIdleMillis age out on the next call, and with
+// archiveDays > 0 segments older than that many days are deleted when a batch is sealed.
+//
+// Iteration and paging run in day order (then the open batch), not strictly insertion
+// order: messages imported for an earlier day come out with that day. Lookups that the
+// cache cannot answer, by recipient and by time, read the archive; by-recipient lookups
+// inflate every segment whose filter may hold the recipient.
+final class TieredMessageStore implements MessageStore {
+    static final int DEFAULT_HOT_MESSAGES = 100_000;
+    static final int DEFAULT_SEAL_BATCH = 10_000;
+    private static final long SEAL_MILLIS = 10 * 60 * 1000;
+    private static final byte ADD = 1, DELETE = 2;
+    private static final String OPEN_LOG = "open.log";
+
+    private final Path openLog;
+    private final MessageArchive archive;
+    private final MessageCache hot;
+    private final int sealBatch;
+    private final int archiveDays;
+    private final LongSupplier clock;
+    private final LinkedHashSet<Message> open = new LinkedHashSet<>();
+    private final MessageIndex openIndex = new MessageIndex();
+    private long openedAt;
+    private FileChannel openChannel;
+    private DataOutputStream openOut;
+
+    TieredMessageStore(Path directory, int hotMessages, long hotIdleMillis, int sealBatch, int archiveDays,
+            LongSupplier clock) throws IOException {
+        if (sealBatch < 1 || archiveDays < 0) throw new IllegalArgumentException("sealBatch must be positive, archiveDays not negative");
+        this.archive = new MessageArchive(directory.resolve("archive"), sealBatch);
+        this.hot = new MessageCache(hotMessages, hotIdleMillis);
+        this.sealBatch = sealBatch;
+        this.archiveDays = archiveDays;
+        this.clock = clock;
+        this.openLog = directory.resolve(OPEN_LOG);
+        replayOpenLog();
+    }
+
+    // -Dmainapp.tiered (directory, default messages.tiered), -Dmainapp.hotMessages (cache size),
+    // -Dmainapp.hotIdleHours (72) and -Dmainapp.archiveDays (0 keeps everything).
+    static TieredMessageStore fromProperty() throws IOException {
+        return new TieredMessageStore(Paths.get(System.getProperty("mainapp.tiered", "messages.tiered")),
+                Integer.getInteger("mainapp.hotMessages", DEFAULT_HOT_MESSAGES),
+                Long.getLong("mainapp.hotIdleHours", 72) * 3600_000L, DEFAULT_SEAL_BATCH,
+                Integer.getInteger("mainapp.archiveDays", 0), System::currentTimeMillis);
+    }
+
+    // Reloads the open batch, drops anything a crash left both here and sealed in the
+    // archive, and rewrites the log without the deleted records.
+    private void replayOpenLog() throws IOException {
+        if (Files.exists(openLog)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(openLog)))) {
+                while (true) {
+                    try {
+                        byte op = in.readByte();
+                        if (op == ADD) {
+                            Message m = MessageArchive.readRecord(in);
+                            openAdd(m);
+                        } else if (op == DELETE) {
+                            String id = in.readUTF();
+                            Message m = openIndex.find(in.readUTF(), id);
+                            if (m != null) openRemove(m);
+                        } else {
+                            break;
+                        }
+                    } catch (EOFException e) {
+                        // A record torn by a crash ends the log.
+                        break;
+                    }
+                }
+            }
+            for (Message m : new ArrayList<>(open)) {
+                if (archive.contains(m)) openRemove(m);
+            }
+        }
+        Path temp = openLog.resolveSibling(OPEN_LOG + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (Message m : open) {
+                out.writeByte(ADD);
+                MessageArchive.writeRecord(out, m);
+            }
+        }
+        Files.move(temp, openLog, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        openChannel = FileChannel.open(openLog, StandardOpenOption.WRITE);
+        openChannel.position(openChannel.size());
+        openOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(openChannel), 1 << 16));
+        openedAt = clock.getAsLong();
+    }
+
+    private void openAdd(Message m) {
+        open.add(m);
+        openIndex.add(m);
+    }
+
+    private void openRemove(Message m) {
+        open.remove(m);
+        openIndex.remove(m);
+    }
+
+    @Override
+    public void add(Message m) {
+        addAll(List.of(m));
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Message> messages) {
+        long now = clock.getAsLong();
+        hot.expire(now);
+        try {
+            for (Message m : messages) {
+                if (open.isEmpty()) openedAt = now;
+                openOut.writeByte(ADD);
+                MessageArchive.writeRecord(openOut, m);
+                openAdd(m);
+                hot.put(m, now);
+                if (open.size() >= sealBatch) {
+                    openOut.flush();
+                    seal();
+                }
+            }
+            openOut.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Moves the open batch into the archive and starts an empty log.
+    private void seal() throws IOException {
+        if (open.isEmpty()) return;
+        openOut.flush();
+        archive.write(new ArrayList<>(open));
+        open.clear();
+        openIndex.clear();
+        openChannel.truncate(0);
+        openChannel.force(true);
+        if (archiveDays > 0) {
+            LocalDateTime now = LocalDateTime.ofInstant(Instant.ofEpochMilli(clock.getAsLong()), ZoneId.systemDefault());
+            archive.dropBefore(Math.floorDiv(MessageCodec.packDateTime(now), 86400) - archiveDays);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(Message m) {
+        Message stored = openIndex.find(m.getMessageHash(), m.getMessageID());
+        try {
+            if (stored != null) {
+                openRemove(stored);
+                openOut.writeByte(DELETE);
+                openOut.writeUTF(m.getMessageID());
+                openOut.writeUTF(m.getMessageHash());
+                openOut.flush();
+                hot.remove(stored);
+                return true;
+            }
+            if (!archive.remove(m)) return false;
+            hot.remove(m);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return archive.size() + open.size();
+    }
+
+    @Override
+    public synchronized List<Message> page(int offset, int limit) {
+        int archived = archive.size();
+        List<Message> out = offset < archived ? archive.page(offset, limit) : new ArrayList<>();
+        int skip = Math.max(0, offset - archived);
+        for (Message m : open) {
+            if (out.size() >= limit) break;
+            if (skip > 0) skip--;
+            else out.add(m);
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized Message findById(String messageID) {
+        long now = clock.getAsLong();
+        hot.expire(now);
+        Message m = hot.get(messageID, now);
+        if (m != null) return m;
+        m = openIndex.findById(messageID);
+        if (m == null) m = archive.findById(messageID);
+        if (m != null) hot.put(m, now);
+        return m;
+    }
+
+    @Override
+    public synchronized Message findByHash(String messageHash) {
+        long now = clock.getAsLong();
+        hot.expire(now);
+        Message m = hot.getByHash(messageHash, now);
+        if (m != null) return m;
+        m = openIndex.findByHash(messageHash);
+        if (m == null) m = archive.findByHash(messageHash);
+        if (m != null) hot.put(m, now);
+        return m;
+    }
+
+    @Override
+    public synchronized List<Message> findByRecipient(String recipient) {
+        List<Message> out = archive.findByRecipient(recipient);
+        out.addAll(openIndex.findByRecipient(recipient));
+        return out;
+    }
+
+    @Override
+    public synchronized List<Message> findBetween(LocalDateTime from, LocalDateTime to) {
+        long lo = MessageCodec.packDateTime(from), hi = MessageCodec.packDateTime(to);
+        List<Message> out = archive.findBetween(lo, hi);
+        for (Message m : open) {
+            long t = m.timestampBits();
+            if (t != MessageCodec.NONE && t >= lo && t <= hi) out.add(m);
+        }
+        out.sort(Comparator.comparingLong(Message::timestampBits));
+        return out;
+    }
+
+    @Override
+    public synchronized long maxId() {
+        long max = archive.maxId();
+        for (Message m : open) max = Math.max(max, m.idBits());
+        return max;
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    // Forces the open log and tombstones to disk, and seals a batch that has been open too long.
+    @Override
+    public synchronized void sync() throws IOException {
+        hot.expire(clock.getAsLong());
+        if (!open.isEmpty() && clock.getAsLong() - openedAt >= SEAL_MILLIS) seal();
+        openOut.flush();
+        openChannel.force(false);
+        archive.sync();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        openOut.close();
+        archive.close();
+    }
+
+    synchronized int hotSize() {
+        return hot.size();
+    }
+
+    synchronized long hotHits() {
+        return hot.hits();
+    }
+
+    synchronized long hotMisses() {
+        return hot.misses();
+    }
+
+    synchronized int segmentCount() {
+        return archive.segmentCount();
+    }
+
+    // Archived messages first, then a snapshot of the open batch.
+    @Override
+    public synchronized Iterator<Message> iterator() {
+        Iterator<Message> archived = archive.iterator();
+        Iterator<Message> recent = new ArrayList<>(open).iterator();
+        return new Iterator<Message>() {
+            @Override
+            public boolean hasNext() {
+                synchronized (TieredMessageStore.this) {
+                    return archived.hasNext() || recent.hasNext();
+                }
+            }
+
+            @Override
+            public Message next() {
+                synchronized (TieredMessageStore.this) {
+                    return archived.hasNext() ? archived.next() : recent.next();
+                }
+            }
+        };
+    }
+}
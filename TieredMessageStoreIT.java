@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TieredMessageStoreIT {
+
+    @TempDir
+    Path dir;
+
+    private final long[] clock = {1_750_000_000_000L};
+
+    private TieredMessageStore open(int hot, int sealBatch, int archiveDays) throws IOException {
+        return new TieredMessageStore(dir, hot, 3_600_000, sealBatch, archiveDays, () -> clock[0]);
+    }
+
+    // n messages spread over days consecutive days starting at first, to 500 recipients.
+    private static List<Message> messages(int n, LocalDate first, int days) {
+        List<Message> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(Message.restore(String.valueOf(1_000_000_000L + i), String.format("+2783%07d", i % 500), "Message " + i,
+                    String.format("%012x", 0xabc000000L + i), first.plusDays(i % days).toString(), "10:15:00"));
+        }
+        return out;
+    }
+
+    /**
+     * Test of addAll, findById, findByHash, findByRecipient and findBetween methods, of class
+     * TieredMessageStore, with most messages sealed into archive segments.
+     */
+    @Test
+    public void testLookupsReachArchive() throws IOException {
+        TieredMessageStore store = open(100, 500, 0);
+        List<Message> sent = messages(3000, LocalDate.of(2025, 3, 1), 10);
+        store.addAll(sent);
+        assertEquals(3000, store.size());
+        assertEquals(10, store.segmentCount());
+        assertTrue(store.hotSize() <= 100);
+        Message probe = sent.get(17);
+        assertEquals(probe.getMessageHash(), store.findById(probe.getMessageID()).getMessageHash());
+        assertEquals(probe.getMessageID(), store.findByHash(probe.getMessageHash()).getMessageID());
+        assertEquals(6, store.findByRecipient(probe.getRecipient()).size());
+        assertEquals(300, store.findBetween(LocalDateTime.of(2025, 3, 4, 0, 0), LocalDateTime.of(2025, 3, 4, 23, 59)).size());
+        assertNull(store.findById("999"));
+        assertEquals(1_000_002_999L, store.maxId());
+        // A second read is answered by the hot cache.
+        long hits = store.hotHits();
+        store.findById(probe.getMessageID());
+        assertEquals(hits + 1, store.hotHits());
+    }
+
+    /**
+     * Test of remove and sync methods, of class TieredMessageStore: deletes from the open batch
+     * and from sealed segments survive a reopen, as does the open batch itself.
+     */
+    @Test
+    public void testReopenKeepsOpenBatchAndDeletes() throws IOException {
+        TieredMessageStore store = open(100, 1000, 0);
+        List<Message> sent = messages(2500, LocalDate.of(2025, 3, 1), 5);
+        store.addAll(sent);
+        assertTrue(store.remove(sent.get(3)));
+        assertTrue(store.remove(sent.get(2400)));
+        assertFalse(store.remove(sent.get(3)));
+        store.sync();
+
+        TieredMessageStore reopened = open(100, 1000, 0);
+        assertEquals(2498, reopened.size());
+        assertNull(reopened.findById(sent.get(3).getMessageID()));
+        assertNull(reopened.findById(sent.get(2400).getMessageID()));
+        assertNotNull(reopened.findById(sent.get(2499).getMessageID()));
+        List<String> ids = new ArrayList<>();
+        for (Message m : reopened) ids.add(m.getMessageID());
+        assertEquals(2498, ids.size());
+        assertEquals(ids.subList(1200, 1250), reopened.page(1200, 50).stream().map(Message::getMessageID).toList());
+    }
+
+    /**
+     * Test of addAll and remove methods, of class TieredMessageStore, with legacy messages that
+     * share an ID: both are counted and sealed, and deleting one, open or archived, leaves the
+     * other.
+     */
+    @Test
+    public void testDuplicateIds() throws IOException {
+        TieredMessageStore store = open(100, 4, 0);
+        Message a = Message.restore("1000000001", "+27831234567", "A", "00000000000a", "2025-03-01", "10:15:00");
+        Message b = Message.restore("1000000001", "+27831234567", "B", "00000000000b", "2025-03-01", "10:16:00");
+        Message c = Message.restore("1000000002", "+27831234567", "C", "00000000000c", "2025-03-01", "10:17:00");
+        Message d = Message.restore("1000000002", "+27831234567", "D", "00000000000d", "2025-03-01", "10:18:00");
+        store.addAll(List.of(a, b));
+        assertEquals(2, store.size());
+        assertTrue(store.remove(a));
+        assertEquals("B", store.findById("1000000001").getMessageText());
+        store.addAll(List.of(c, d, a));
+        assertEquals(4, store.size());
+        assertEquals(1, store.segmentCount());
+
+        TieredMessageStore reopened = open(100, 4, 0);
+        List<String> texts = new ArrayList<>();
+        for (Message m : reopened) texts.add(m.getMessageText());
+        assertEquals(List.of("B", "C", "D", "A"), texts);
+        assertTrue(reopened.remove(c));
+        assertFalse(reopened.remove(c));
+        assertEquals("D", reopened.findById("1000000002").getMessageText());
+        assertTrue(reopened.remove(a));
+        assertEquals("B", reopened.findById("1000000001").getMessageText());
+        reopened.sync();
+
+        reopened = open(100, 4, 0);
+        assertEquals(2, reopened.size());
+        assertEquals("B", reopened.findByHash("00000000000b").getMessageText());
+        assertEquals("D", reopened.findById("1000000002").getMessageText());
+        assertNull(reopened.findByHash("00000000000a"));
+    }
+
+    /**
+     * Test of the archiveDays retention, of class TieredMessageStore: sealing drops the days
+     * older than the retention period.
+     */
+    @Test
+    public void testRetentionDropsOldDays() throws IOException {
+        LocalDate today = LocalDate.now();
+        clock[0] = System.currentTimeMillis();
+        TieredMessageStore store = open(100, 100, 7);
+        store.addAll(messages(100, today.minusDays(30), 1));
+        store.addAll(messages(100, today.minusDays(1), 1));
+        assertEquals(100, store.size());
+        assertEquals(1, store.segmentCount());
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel: LEVELS wheels of 64 slots each, level l slot s covering ticks
+// whose base-64 digit l is s. An entry is linked into the lowest level whose higher digits
+// match the current tick, so add is O(1). When the level-0 digit wraps, the next level's
+// current slot is cascaded down (higher levels first), and each tick fires one level-0 slot,
+// so a fire is O(1) per entry however many are pending. Deadlines beyond the top level wait
+// in it and are re-placed each time it comes round. Entries are counted per level, so ticks
+// on which nothing can cascade or fire are skipped in one step rather than walked.
+//
+// Entries live in parallel arrays threaded into per-slot lists by index, with a free list,
+// so millions of pending items cost three array cells each and no node objects. Not
+// thread-safe; DeliveryScheduler guards it.
+final class TimingWheel<T> {
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 6;
+    private static final int NIL = -1;
+
+    private final long tickMillis;
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private final int[] levelCounts = new int[LEVELS];
+    private Object[] items;
+    private long[] ticks;
+    private int[] next;
+    private int free = NIL;
+    private int used = 0;
+    private int size = 0;
+    private long currentTick;
+
+    TimingWheel(long tickMillis, long nowMillis, int initialCapacity) {
+        if (tickMillis < 1) throw new IllegalArgumentException("tickMillis must be positive");
+        this.tickMillis = tickMillis;
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+        int capacity = Math.max(16, initialCapacity);
+        items = new Object[capacity];
+        ticks = new long[capacity];
+        next = new int[capacity];
+        Arrays.fill(heads, NIL);
+    }
+
+    // Queues item to fire at the first tick at or after deadlineMillis; anything already due
+    // fires on the next tick.
+    void add(T item, long deadlineMillis) {
+        long tick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick + 1);
+        int entry = allocate();
+        items[entry] = item;
+        ticks[entry] = tick;
+        link(entry);
+        size++;
+    }
+
+    private int allocate() {
+        if (free != NIL) {
+            int entry = free;
+            free = next[entry];
+            return entry;
+        }
+        if (used == items.length) {
+            int capacity = used * 2;
+            items = Arrays.copyOf(items, capacity);
+            ticks = Arrays.copyOf(ticks, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return used++;
+    }
+
+    private void link(int entry) {
+        long tick = ticks[entry];
+        int level = 0;
+        while (level < LEVELS - 1 && (tick >>> (SLOT_BITS * (level + 1))) != (currentTick >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        next[entry] = heads[slot];
+        heads[slot] = entry;
+        levelCounts[level]++;
+    }
+
+    // Advances to nowMillis, handing every item that came due to expired in deadline order
+    // (items due on the same tick in no particular order).
+    @SuppressWarnings("unchecked")
+    void advance(long nowMillis, Consumer<? super T> expired) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < target) {
+            // Levels below `empty` hold nothing, so the next tick that can do anything is the
+            // next multiple of 64^empty.
+            int empty = 0;
+            while (empty < LEVELS && levelCounts[empty] == 0) empty++;
+            if (empty == LEVELS) {
+                currentTick = target;
+                return;
+            }
+            if (empty > 0) {
+                long shift = SLOT_BITS * empty;
+                currentTick = Math.min(target, (((currentTick >>> shift) + 1) << shift) - 1);
+                if (currentTick == target) return;
+            }
+            currentTick++;
+            int wrapped = 0;
+            while (wrapped < LEVELS - 1 && ((currentTick >>> (SLOT_BITS * wrapped)) & (SLOTS - 1)) == 0) wrapped++;
+            for (int level = wrapped; level >= 1; level--) {
+                cascade(level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1)));
+            }
+            int slot = (int) (currentTick & (SLOTS - 1));
+            int entry = heads[slot];
+            heads[slot] = NIL;
+            while (entry != NIL) {
+                int following = next[entry];
+                levelCounts[0]--;
+                T item = (T) items[entry];
+                items[entry] = null;
+                next[entry] = free;
+                free = entry;
+                size--;
+                expired.accept(item);
+                entry = following;
+            }
+        }
+    }
+
+    private void cascade(int slot) {
+        int entry = heads[slot];
+        heads[slot] = NIL;
+        while (entry != NIL) {
+            int following = next[entry];
+            levelCounts[slot / SLOTS]--;
+            link(entry);
+            entry = following;
+        }
+    }
+
+    // Epoch millis of the first tick after the current one on which advance() has work: an
+    // entry fires, or a slot holding one cascades down (so it is no later than the earliest
+    // deadline). Long.MAX_VALUE when nothing is pending. At most one pass over each level's slots.
+    long nextTickMillis() {
+        for (int level = 0; level < LEVELS; level++) {
+            if (levelCounts[level] == 0) continue;
+            int shift = SLOT_BITS * level;
+            long base = currentTick >>> shift;
+            // Only the top level wraps round, so up to SLOTS steps reach its own slot again.
+            for (int step = 1; step <= SLOTS; step++) {
+                if (heads[level * SLOTS + (int) ((base + step) & (SLOTS - 1))] != NIL) return ((base + step) << shift) * tickMillis;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    int size() {
+        return size;
+    }
+}
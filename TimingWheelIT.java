@@ -0,0 +1,82 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelIT {
+
+    /**
+     * Test of add and advance methods, of class TimingWheel: nothing fires early and everything fires in deadline order.
+     */
+    @Test
+    public void testAdvanceFiresInOrder() {
+        long start = 1_700_000_000_000L;
+        TimingWheel<Long> wheel = new TimingWheel<>(10, start, 16);
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            // Up to about a year ahead, so entries start on every level and cascade down.
+            long deadline = start + (long) (random.nextDouble() * 400L * 86_400_000L);
+            wheel.add(deadline, deadline);
+        }
+        assertEquals(10_000, wheel.size());
+        List<Long> fired = new ArrayList<>();
+        long now = start;
+        while (wheel.size() > 0) {
+            now += 1 + random.nextInt(3_600_000);
+            long limit = now;
+            wheel.advance(now, deadline -> {
+                assertTrue(deadline <= limit, "fired early");
+                fired.add(deadline);
+            });
+        }
+        assertEquals(10_000, fired.size());
+        for (int i = 1; i < fired.size(); i++) {
+            assertTrue(fired.get(i - 1) / 10 <= (fired.get(i) + 9) / 10, "out of order at " + i);
+        }
+    }
+
+    /**
+     * Test of add method, of class TimingWheel, with deadlines already past and beyond the top level.
+     */
+    @Test
+    public void testAddPastAndFarDeadlines() {
+        TimingWheel<String> wheel = new TimingWheel<>(1, 1000, 16);
+        wheel.add("past", 0);
+        wheel.add("far", 1000 + (1L << 40));
+        List<String> fired = new ArrayList<>();
+        wheel.advance(1001, fired::add);
+        assertEquals(List.of("past"), fired);
+        wheel.advance(1000 + (1L << 40) - 1, fired::add);
+        assertEquals(List.of("past"), fired);
+        wheel.advance(1000 + (1L << 40), fired::add);
+        assertEquals(List.of("past", "far"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Test of nextTickMillis method, of class TimingWheel: jumping straight to it never skips a deadline.
+     */
+    @Test
+    public void testNextTickMillis() {
+        long start = 1_700_000_000_000L;
+        TimingWheel<Long> wheel = new TimingWheel<>(10, start, 16);
+        assertEquals(Long.MAX_VALUE, wheel.nextTickMillis());
+        Random random = new Random(11);
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = start + 1 + (long) (random.nextDouble() * 30L * 86_400_000L);
+            wheel.add(deadline, deadline);
+        }
+        int fired = 0;
+        while (wheel.size() > 0) {
+            long next = wheel.nextTickMillis();
+            wheel.advance(next - 1, deadline -> fail("fired before the next tick"));
+            List<Long> due = new ArrayList<>();
+            wheel.advance(next, due::add);
+            for (long deadline : due) assertEquals(next, (deadline + 9) / 10 * 10);
+            fired += due.size();
+        }
+        assertEquals(2_000, fired);
+        assertEquals(Long.MAX_VALUE, wheel.nextTickMillis());
+    }
+}
@@ -0,0 +1,17 @@
+import java.util.Collection;
+
+// Lookup and registration of users, keyed on username.
+interface UserStore {
+    User find(String username);
+
+    // Adds the user unless the username is already taken; returns false on a duplicate.
+    boolean registerIfAbsent(User user);
+
+    // Returns the user when the username exists and the password matches, otherwise null.
+    User authenticate(String username, String password);
+
+    int size();
+
+    // All users in registration order, for persisting to users.json.
+    Collection<User> all();
+}
@@ -0,0 +1,46 @@
+// Single-pass, allocation-free versions of the input checks behind User and Message.
+// Each method gives exactly the same answer as the regex it replaces (see ValidatorsIT).
+final class Validators {
+    private static final String PASSWORD_SPECIALS = "!@#$%^&*()_+-=[]{};':\"\\|,.<>/?";
+    private static final boolean[] IS_PASSWORD_SPECIAL = new boolean[128];
+
+    static {
+        for (int i = 0; i < PASSWORD_SPECIALS.length(); i++) {
+            IS_PASSWORD_SPECIAL[PASSWORD_SPECIALS.charAt(i)] = true;
+        }
+    }
+
+    private Validators() { }
+
+    // Same as length >= 8 plus matches(".*[A-Z].*"), ".*[0-9].*" and ".*[<specials>].*".
+    // '.' does not match line terminators, so any terminator fails all three regexes.
+    static boolean isValidPassword(CharSequence password) {
+        int len = password.length();
+        if (len < 8) return false;
+        boolean upper = false, digit = false, special = false;
+        for (int i = 0; i < len; i++) {
+            char c = password.charAt(i);
+            if (c >= 'A' && c <= 'Z') upper = true;
+            else if (c >= '0' && c <= '9') digit = true;
+            else if (c < 128) {
+                if (IS_PASSWORD_SPECIAL[c]) special = true;
+                else if (c == '\n' || c == '\r') return false;
+            } else if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+        }
+        return upper && digit && special;
+    }
+
+    // Same as matches("^\\+27\\d{9,10}$").
+    static boolean isValidCellNumber(CharSequence cell) {
+        int len = cell.length();
+        if (len != 12 && len != 13) return false;
+        if (cell.charAt(0) != '+' || cell.charAt(1) != '2' || cell.charAt(2) != '7') return false;
+        for (int i = 3; i < len; i++) {
+            char c = cell.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+}
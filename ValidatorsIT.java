@@ -0,0 +1,95 @@
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Checks the char-scanning validators against the regexes they replaced.
+public class ValidatorsIT {
+
+    private static final String SAMPLE_CHARS = "aZ7#\n\r\u0085\u2028\u2029 \u00e9\u0660+2-[]\\\"'^&?|~` \t";
+
+    private static boolean regexPassword(String password) {
+        if (password.length() < 8) return false;
+        if (!password.matches(".*[A-Z].*")) return false;
+        if (!password.matches(".*[0-9].*")) return false;
+        if (!password.matches(".*[!@#$%^&*()_+\\-=\\[\\]{};':\"\\\\|,.<>/?].*")) return false;
+        return true;
+    }
+
+    private static boolean regexCellNumber(String cell) {
+        return cell.matches("^\\+27\\d{9,10}$");
+    }
+
+    /**
+     * Test of isValidPassword method, of class Validators, over every string up to
+     * length 8 drawn from one character of each class plus a line terminator.
+     */
+    @Test
+    public void testIsValidPasswordExhaustive() {
+        char[] alphabet = {'a', 'Z', '7', '#', '\n'};
+        for (int len = 0; len <= 8; len++) {
+            char[] buf = new char[len];
+            int combinations = (int) Math.pow(alphabet.length, len);
+            for (int k = 0; k < combinations; k++) {
+                int x = k;
+                for (int i = 0; i < len; i++) {
+                    buf[i] = alphabet[x % alphabet.length];
+                    x /= alphabet.length;
+                }
+                String s = new String(buf);
+                assertEquals(regexPassword(s), Validators.isValidPassword(s), s);
+            }
+        }
+    }
+
+    /**
+     * Test of isValidPassword method, of class Validators, on random input.
+     */
+    @Test
+    public void testIsValidPasswordRandom() {
+        Random random = new Random(20250517);
+        for (int k = 0; k < 200000; k++) {
+            String s = randomString(random, random.nextInt(14));
+            assertEquals(regexPassword(s), Validators.isValidPassword(s), s);
+        }
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            String s = "Abcdef1" + c;
+            assertEquals(regexPassword(s), Validators.isValidPassword(s), s);
+        }
+    }
+
+    /**
+     * Test of isValidCellNumber method, of class Validators, on random input.
+     */
+    @Test
+    public void testIsValidCellNumberRandom() {
+        Random random = new Random(20250517);
+        for (int k = 0; k < 200000; k++) {
+            StringBuilder sb = new StringBuilder(random.nextInt(8) == 0 ? "+28" : "+27");
+            int digits = 8 + random.nextInt(4);
+            for (int i = 0; i < digits; i++) {
+                sb.append(random.nextInt(20) == 0
+                        ? SAMPLE_CHARS.charAt(random.nextInt(SAMPLE_CHARS.length()))
+                        : (char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextInt(10) == 0) sb.append('\n');
+            String cell = sb.toString();
+            assertEquals(regexCellNumber(cell), Validators.isValidCellNumber(cell), cell);
+            String other = randomString(random, random.nextInt(14));
+            assertEquals(regexCellNumber(other), Validators.isValidCellNumber(other), other);
+        }
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            String cell = "+2783123456" + c;
+            assertEquals(regexCellNumber(cell), Validators.isValidCellNumber(cell), cell);
+        }
+    }
+
+    private static String randomString(Random random, int len) {
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append(random.nextInt(3) == 0
+                    ? (char) random.nextInt(0x3000)
+                    : SAMPLE_CHARS.charAt(random.nextInt(SAMPLE_CHARS.length())));
+        }
+        return sb.toString();
+    }
+}
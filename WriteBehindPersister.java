@@ -0,0 +1,167 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Write-behind for state that is saved by rewriting a whole file. Callers mark the state
+// dirty and return at once; a background thread runs the save every intervalMillis, or as
+// soon as maxPending changes have built up, so a burst of changes costs one write.
+// flush() saves on the caller's thread; awaitDurable() waits until every change marked
+// before the call has been saved. A failed save leaves the state dirty and is retried.
+// hold() stops saves altogether, e.g. while the file on disk holds more than was loaded.
+final class WriteBehindPersister implements Closeable {
+    interface Save {
+        void save() throws IOException;
+    }
+
+    interface Body {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private final Save save;
+    private final int maxPending;
+    private final Consumer<IOException> onError;
+    private final ScheduledExecutorService scheduler;
+    private final Object saveLock = new Object();
+    private long marked;
+    private long saved;
+    private int pending;
+    private boolean flushQueued;
+    private IOException failure;
+    private IOException held;
+
+    WriteBehindPersister(String name, Save save, long intervalMillis, int maxPending, Consumer<IOException> onError) {
+        if (intervalMillis < 1 || maxPending < 1) throw new IllegalArgumentException("intervalMillis and maxPending must be positive");
+        this.save = save;
+        this.maxPending = maxPending;
+        this.onError = onError;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "write-behind-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushInBackground, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void markDirty() {
+        markDirty(1);
+    }
+
+    synchronized void markDirty(int changes) {
+        marked++;
+        pending += changes;
+        if (pending >= maxPending && !flushQueued) {
+            flushQueued = true;
+            scheduler.execute(this::flushInBackground);
+        }
+    }
+
+    synchronized boolean isDirty() {
+        return saved < marked;
+    }
+
+    // Until release(), every save fails with reason instead of running, so the file is left
+    // as it is and the changes stay dirty.
+    synchronized void hold(IOException reason) {
+        held = reason;
+    }
+
+    synchronized void release() {
+        held = null;
+    }
+
+    synchronized boolean isHeld() {
+        return held != null;
+    }
+
+    // Saves now if anything changed since the last save.
+    void flush() throws IOException {
+        synchronized (saveLock) {
+            long target;
+            synchronized (this) {
+                flushQueued = false;
+                if (saved == marked) return;
+                if (held != null) {
+                    failure = held;
+                    notifyAll();
+                    throw held;
+                }
+                target = marked;
+                pending = 0;
+            }
+            try {
+                save.save();
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                saved = Math.max(saved, target);
+                failure = null;
+                notifyAll();
+            }
+        }
+    }
+
+    // Blocks until the changes marked so far are saved; rethrows the save failure if there is one.
+    synchronized void awaitDurable() throws IOException, InterruptedException {
+        long target = marked;
+        if (saved >= target) return;
+        failure = null;
+        if (!flushQueued) {
+            flushQueued = true;
+            scheduler.execute(this::flushInBackground);
+        }
+        while (saved < target && failure == null) wait();
+        if (saved < target) throw failure;
+    }
+
+    private void flushInBackground() {
+        boolean wasFailing;
+        synchronized (this) {
+            wasFailing = failure != null;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            // Retried every interval; only the first failure in a row is reported.
+            if (!wasFailing) onError.accept(e);
+        }
+    }
+
+    // Stops the background thread and saves whatever is still dirty.
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    // Writes a file through a temp file in the same directory, forced to disk, then renamed
+    // over the target, so readers see either the old or the new contents in full.
+    static void writeAtomically(Path target, Body body) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            body.writeTo(writer);
+        }
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            fc.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,105 @@
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindPersisterIT {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Test of markDirty and flush methods, of class WriteBehindPersister: many changes, one save.
+     */
+    @Test
+    public void testCoalescesChanges() throws IOException {
+        AtomicInteger saves = new AtomicInteger();
+        try (WriteBehindPersister persister = new WriteBehindPersister("test", saves::incrementAndGet, 60_000, 1000, e -> { })) {
+            for (int i = 0; i < 100; i++) persister.markDirty();
+            assertEquals(0, saves.get());
+            persister.flush();
+            persister.flush();
+            assertEquals(1, saves.get());
+            assertFalse(persister.isDirty());
+        }
+    }
+
+    /**
+     * Test of awaitDurable method, of class WriteBehindPersister: returns once the background save ran.
+     */
+    @Test
+    public void testAwaitDurable() throws Exception {
+        AtomicInteger saves = new AtomicInteger();
+        try (WriteBehindPersister persister = new WriteBehindPersister("test", saves::incrementAndGet, 60_000, 1000, e -> { })) {
+            persister.markDirty();
+            persister.awaitDurable();
+            assertEquals(1, saves.get());
+            assertFalse(persister.isDirty());
+        }
+    }
+
+    /**
+     * Test of awaitDurable method, of class WriteBehindPersister, when the save fails.
+     */
+    @Test
+    public void testFailedSaveStaysDirty() throws Exception {
+        WriteBehindPersister persister = new WriteBehindPersister("test", () -> {
+            throw new IOException("disk full");
+        }, 60_000, 1000, e -> { });
+        persister.markDirty();
+        IOException e = assertThrows(IOException.class, persister::awaitDurable);
+        assertEquals("disk full", e.getMessage());
+        assertTrue(persister.isDirty());
+    }
+
+    /**
+     * Test of writeAtomically method, of class WriteBehindPersister.
+     */
+    @Test
+    public void testWriteAtomicallyReplacesFile() throws IOException {
+        Path file = dir.resolve("users.json");
+        Files.writeString(file, "old");
+        WriteBehindPersister.writeAtomically(file, writer -> writer.write("new"));
+        assertEquals("new", Files.readString(file));
+        assertFalse(Files.exists(dir.resolve("users.json.tmp")));
+    }
+
+    /**
+     * Test of hold and release methods, of class WriteBehindPersister: a users.json that failed
+     * to load part way is not overwritten with the users read before the error.
+     */
+    @Test
+    public void testHoldKeepsFileThatFailedToLoad() throws IOException {
+        Path file = dir.resolve("users.json");
+        String original = "[{\"username\":\"al_ce\",\"password\":\"Passw0rd!\",\"cellphone\":\"+27831234567\"},"
+                + "{\"username\":\"bo_b\",\"password\": oops";
+        Files.writeString(file, original);
+        Gson gson = new Gson();
+        UserStore users = new HashUserStore();
+        IOException loadError = assertThrows(IOException.class,
+                () -> JsonStreamLoader.load(file, gson, User.class, users::registerIfAbsent, JsonStreamLoader.NO_PROGRESS));
+        assertEquals(1, users.size());
+        AtomicInteger saves = new AtomicInteger();
+        try (WriteBehindPersister persister = new WriteBehindPersister("test", () -> {
+            saves.incrementAndGet();
+            WriteBehindPersister.writeAtomically(file, writer -> gson.toJson(users.all(), writer));
+        }, 60_000, 1000, e -> { })) {
+            persister.hold(loadError);
+            users.registerIfAbsent(new User("ch_ris", "Passw0rd!", "+27830000000"));
+            persister.markDirty();
+            assertSame(loadError, assertThrows(IOException.class, persister::flush));
+            assertEquals(0, saves.get());
+            assertEquals(original, Files.readString(file));
+            assertTrue(persister.isDirty());
+            persister.release();
+            persister.flush();
+            assertEquals(1, saves.get());
+            assertFalse(persister.isDirty());
+            assertTrue(Files.readString(file).contains("ch_ris"));
+        }
+    }
+}
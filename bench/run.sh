@@ -0,0 +1,38 @@
+#!/bin/sh
+# Builds and runs the JMH benchmarks; results are written to bench/results.json.
+#
+#   bench/run.sh                       all benchmarks
+#   bench/run.sh ValidationBenchmark   any JMH arguments, e.g. a benchmark regex or -p records=1000
+#
+# The app lives in the default package, which JMH cannot generate code for, so the
+# sources are copied into build/bench with a "package mainapp;" header added.
+set -e
+cd "$(dirname "$0")/.."
+
+JMH_VERSION=1.37
+GSON_VERSION=2.13.1
+MAVEN=https://repo1.maven.org/maven2
+BUILD=build/bench
+LIB=$BUILD/lib
+
+fetch() {
+    [ -f "$LIB/$2" ] || curl -sSfL -o "$LIB/$2" "$MAVEN/$1/$2"
+}
+
+mkdir -p "$LIB" "$BUILD/src/mainapp" "$BUILD/classes"
+fetch org/openjdk/jmh/jmh-core/$JMH_VERSION jmh-core-$JMH_VERSION.jar
+fetch org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION jmh-generator-annprocess-$JMH_VERSION.jar
+fetch net/sf/jopt-simple/jopt-simple/5.0.4 jopt-simple-5.0.4.jar
+fetch org/apache/commons/commons-math3/3.6.1 commons-math3-3.6.1.jar
+fetch com/google/code/gson/gson/$GSON_VERSION gson-$GSON_VERSION.jar
+
+rm -rf "$BUILD/src/mainapp"/* "$BUILD/classes"/*
+for f in *.java; do
+    case "$f" in *IT.java) continue ;; esac
+    { echo "package mainapp;"; cat "$f"; } > "$BUILD/src/mainapp/$f"
+done
+cp bench/src/mainapp/*.java "$BUILD/src/mainapp/"
+
+CP=$(ls "$LIB"/*.jar | tr '\n' ':')
+javac -encoding UTF-8 -cp "$CP" -processorpath "$CP" -d "$BUILD/classes" "$BUILD"/src/mainapp/*.java
+java -cp "$BUILD/classes:$CP" org.openjdk.jmh.Main -rf json -rff bench/results.json "$@"
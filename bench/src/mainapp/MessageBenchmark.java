@@ -0,0 +1,49 @@
+package mainapp;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Message construction (ID, date/time, hash) and createMessageHash on its own.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+
+    private static final String TEXT = "Hi Mike, can you join us for dinner tonight? We are meeting at the usual place at seven.";
+
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        message = new Message("+27718693002", TEXT);
+    }
+
+    @Benchmark
+    public Message construct() {
+        return new Message("+27718693002", TEXT);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Message constructContended() {
+        return new Message("+27718693002", TEXT);
+    }
+
+    @Benchmark
+    public String createMessageHash() {
+        return message.createMessageHash();
+    }
+}
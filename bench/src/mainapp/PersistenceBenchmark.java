@@ -0,0 +1,112 @@
+package mainapp;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// saveMessages (snapshot compaction), loadMessages (snapshot + journal replay) and a
+// journal append, at several store sizes, through the same MessageJournal MainApp uses.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int records;
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private Path dir;
+    private List<Message> messages;
+    private List<Message> oneMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mainapp-bench");
+        messages = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            messages.add(new Message(String.format("+2783%07d", i % 5000), "Benchmark message number " + i));
+        }
+        oneMessage = List.of(new Message("+27830000001", "One more"));
+        MessageJournal journal = journal();
+        journal.load(new HeapMessageStore(), JsonStreamLoader.NO_PROGRESS);
+        journal.compact(messages);
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private MessageJournal journal() {
+        return new MessageJournal(dir.resolve("messages.json"), dir.resolve("messages.journal"), gson, 10000);
+    }
+
+    @Benchmark
+    public void saveMessages() throws IOException {
+        MessageJournal journal = journal();
+        journal.load(new HeapMessageStore(), JsonStreamLoader.NO_PROGRESS);
+        journal.compact(messages);
+        journal.close();
+    }
+
+    @Benchmark
+    public MessageStore loadMessages() throws IOException {
+        MessageJournal journal = journal();
+        MessageStore loaded = MessageStore.fromProperty();
+        journal.load(loaded, JsonStreamLoader.NO_PROGRESS);
+        journal.close();
+        return loaded;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void appendOne(JournalState state) throws IOException {
+        state.journal.append(oneMessage);
+    }
+
+    @State(Scope.Thread)
+    public static class JournalState {
+        MessageJournal journal;
+
+        @Setup(Level.Iteration)
+        public void open(PersistenceBenchmark bench) throws IOException {
+            journal = bench.journal();
+            journal.load(new HeapMessageStore(), JsonStreamLoader.NO_PROGRESS);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close(PersistenceBenchmark bench) throws IOException {
+            journal.compact(bench.messages);
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package mainapp;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Login and duplicate-username checks against stores of different sizes.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class UserLookupBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int users;
+
+    private HashUserStore store;
+    private String[] usernames;
+
+    @Setup
+    public void setUp() {
+        store = new HashUserStore();
+        usernames = new String[users];
+        for (int i = 0; i < users; i++) {
+            usernames[i] = "u_" + i;
+            store.registerIfAbsent(new User(usernames[i], "Passw0rd!", "+27831234567"));
+        }
+    }
+
+    @Benchmark
+    public User login() {
+        return store.authenticate(usernames[ThreadLocalRandom.current().nextInt(users)], "Passw0rd!");
+    }
+
+    @Benchmark
+    public boolean registerDuplicate() {
+        String name = usernames[ThreadLocalRandom.current().nextInt(users)];
+        return store.registerIfAbsent(new User(name, "Passw0rd!", "+27831234567"));
+    }
+}
@@ -0,0 +1,54 @@
+package mainapp;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// User.isValid* on valid and invalid input.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+
+    @Param({"valid", "invalid"})
+    public String input;
+
+    private String username;
+    private String password;
+    private String cell;
+
+    @Setup
+    public void setUp() {
+        boolean valid = input.equals("valid");
+        username = valid ? "ky_1" : "kyle!!!!!!!";
+        password = valid ? "Ch&&sec@ke99!" : "password";
+        cell = valid ? "+27838968976" : "08966553";
+    }
+
+    @Benchmark
+    public boolean isValidUsername() {
+        return User.isValidUsername(username);
+    }
+
+    @Benchmark
+    public boolean isValidPassword() {
+        return User.isValidPassword(password);
+    }
+
+    @Benchmark
+    public boolean isValidCellNumber() {
+        return User.isValidCellNumber(cell);
+    }
+}